@@ -7,43 +7,24 @@ import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class ConsoleApp {
 
-    private static final Pattern RE_CREATE =
-            Pattern.compile("^CREATE\\s+TABLE\\s+(\\w+)\\s*\\((.+)\\)\\s*;?$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-
-    private static final Pattern RE_ALTER_ADD =
-            Pattern.compile("^ALTER\\s+TABLE\\s+(\\w+)\\s+ADD\\s+COLUMN\\s+(\\w+)\\s+(STRING|INTEGER|DOUBLE|BOOLEAN)(\\s+PRIMARY\\s+KEY)?\\s*;?$",
-                    Pattern.CASE_INSENSITIVE);
-
-    private static final Pattern RE_DROP =
-            Pattern.compile("^DROP\\s+TABLE\\s+(\\w+)\\s*;?$", Pattern.CASE_INSENSITIVE);
-
-    private static final Pattern RE_INSERT =
-            Pattern.compile("^INSERT\\s+INTO\\s+(\\w+)\\s*\\(([^)]+)\\)\\s*VALUES\\s*\\(([^)]+)\\)\\s*;?$",
-                    Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-
-    private static final Pattern RE_UPDATE =
-            Pattern.compile("^UPDATE\\s+(\\w+)\\s+SET\\s+(.+?)(?:\\s+WHERE\\s+(.+))?\\s*;?$",
-                    Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-
-    private static final Pattern RE_DELETE =
-            Pattern.compile("^DELETE\\s+FROM\\s+(\\w+)(?:\\s+WHERE\\s+(.+))?\\s*;?$",
-                    Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    // команды, которые разбирает SqlParser; остальное — HELP, EXIT и TABLES
+    private static final Set<String> STATEMENTS = Set.of("SELECT", "INSERT", "UPDATE", "DELETE", "CREATE",
+            "ALTER", "DROP", "BEGIN", "COMMIT", "ROLLBACK", "VACUUM", "SET", "OPEN", "SAVE", "CHECKPOINT",
+            "RESTORE", "LOAD", "JOIN", "AGG", "DESCRIBE");
 
     public static void main(String[] args) throws Exception {
         Database db = new Database();
-        QueryParser parser = new QueryParser();
+        QueryParser parser = QueryParser.shared();
         QueryExecutor executor = new QueryExecutor();
 
         System.out.println("MiniSQL console. Type HELP for commands.");
         BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
 
         while (true) {
-            System.out.print("> ");
+            System.out.print(db.inTransaction() ? "*> " : "> ");
             String line = in.readLine();
             if (line == null) break;
             line = line.trim();
@@ -54,11 +35,12 @@ public class ConsoleApp {
                             startsWithIgnoreCase(line, "UPDATE ") ||
                             startsWithIgnoreCase(line, "INSERT ") )) {
                 StringBuilder sb = new StringBuilder(line);
-                while (!sb.toString().trim().endsWith(";")) {
+                while (true) {
                     System.out.print("... ");
                     String more = in.readLine();
                     if (more == null) break;
                     sb.append(' ').append(more);
+                    if (more.trim().endsWith(";")) break;
                 }
                 line = sb.toString();
             }
@@ -73,31 +55,8 @@ public class ConsoleApp {
                     break;
                 } else if (upper.equals("TABLES")) {
                     db.listTables().forEach(System.out::println);
-                } else if (upper.startsWith("DESCRIBE ")) {
-                    String table = line.substring(9).trim().replaceAll(";$", "");
-                    describe(db, table);
-                } else if (upper.startsWith("LOAD ")) {
-                    handleLoad(db, line);
-                } else if (upper.startsWith("JOIN ")) {
-                    handleJoin(db, line);
-                } else if (upper.startsWith("AGG ")) {
-                    handleAgg(db, line);
-                } else if (upper.startsWith("CREATE TABLE")) {
-                    handleCreate(db, line);
-                } else if (upper.startsWith("ALTER TABLE")) {
-                    handleAlterAdd(db, line);
-                } else if (upper.startsWith("DROP TABLE")) {
-                    handleDrop(db, line);
-                } else if (upper.startsWith("INSERT INTO")) {
-                    handleInsert(db, line);
-                } else if (upper.startsWith("UPDATE ")) {
-                    handleUpdate(db, line);
-                } else if (upper.startsWith("DELETE FROM")) {
-                    handleDelete(db, line);
-                } else if (upper.startsWith("SELECT ")) {
-                    Query<Row> q = parser.parse(line, db);
-                    List<Row> rows = executor.execute(q);
-                    TablePrinter.print(q.getTable(), q.getSelectedColumns(), q.getLimit(), q.getOffset(), System.out);
+                } else if (STATEMENTS.contains(firstWord(upper))) {
+                    execute(db, parser.statement(line), parser, executor);
                 } else {
                     System.out.println("Unknown command. Type HELP.");
                 }
@@ -108,6 +67,8 @@ public class ConsoleApp {
                 e.printStackTrace(System.out);
             }
         }
+        if (db.inTransaction()) db.rollback();
+        db.close();
     }
 
     private static void printHelp() {
@@ -117,251 +78,233 @@ public class ConsoleApp {
                   EXIT | QUIT
                   TABLES
                   DESCRIBE <table>
+                  SET STORAGE ROW|COLUMNAR|OFF_HEAP             // storage for new tables
+                  SET MEMORY_LIMIT <n>[K|M|G]                   // per-table off-heap limit
+                  SET COMMIT_DELAY <ms>                         // write-ahead log group commit window
+                  SET SYNC_COMMIT ON|OFF                        // wait for fsync before returning
+                  SET VACUUM_THRESHOLD <0..1>                   // dead row ratio that triggers background rewrite
+                  SET PARALLELISM <n>                           // threads a query of this session may use
+                  OPEN '<dir>'                                  // load a saved database or bind a new directory
+                  SAVE ['<dir>']                                // write all tables to the database directory
+                  CHECKPOINT '<file>'                           // snapshot the whole database to one file in the background
+                  RESTORE '<file>'                              // replace all tables with a checkpoint
+                  VACUUM [<table>]                              // drop row versions no snapshot can see
                   LOAD <table> FROM '<path>'
                   LOAD <table> FROM '<path>' DELIM=','          // ',', ';' or '\\t'
                   -- DDL:
                   CREATE TABLE <name> (col TYPE [PRIMARY KEY], col2 TYPE, ...)
+                  CREATE INDEX <idx> ON <table>(col)
+                  CREATE BITMAP INDEX <idx> ON <table>(col)     // BOOLEAN / low-cardinality columns
                   ALTER TABLE <name> ADD COLUMN <col> <TYPE> [PRIMARY KEY]
                   DROP TABLE <name>
                   -- DML:
-                  INSERT INTO <name>(col, col2, ...) VALUES (v1, v2, ...)
+                  INSERT INTO <name>(col, col2, ...) VALUES (v1, v2, ...)[, (...)]
                   UPDATE <name> SET col=val[, col2=val2 ...] [WHERE ...]
                   DELETE FROM <name> [WHERE ...]
+                  BEGIN | COMMIT | ROLLBACK                     // statements in between see one snapshot
                   -- Query:
                   SELECT <cols> FROM <table> [WHERE ...] [ORDER BY ...] [LIMIT n [OFFSET m] | LIMIT m, n];
+                  -- WHERE:
+                  col = | != | <> | < | <= | > | >= value
+                  col [NOT] LIKE 'pat' | col [NOT] ILIKE 'pat'  // % any run, _ one char; ILIKE ignores case
+                  col [NOT] IN (v1, v2, ...)
+                  cond AND cond | cond OR cond | (cond)         // NULL matches only !=, <> and NOT IN
                   -- Utilities:
                   JOIN <left> <right> ON leftCol=rightCol [INNER|LEFT|RIGHT]
                   AGG <table> <FUNC(col|*)> [WHERE ...]         // COUNT, MIN, MAX, SUM, AVG
+                Names are letters, digits, _ and - written without spaces (order-id); strings and paths use '...'.
+                Parameters ? are supported only through the Java API (QueryParser.prepare).
                 """);
     }
 
-    private static void handleCreate(Database db, String line) {
-        Matcher m = RE_CREATE.matcher(line);
-        if (!m.matches()) {
-            System.out.println("Usage: CREATE TABLE <name> (col TYPE [PRIMARY KEY], ...);");
-            return;
-        }
-        String tableName = m.group(1);
-        String colsSpec = m.group(2).trim();
-        String[] defs = splitByCommaRespectQuotes(colsSpec);
-        List<Column> cols = new ArrayList<>();
-        for (String def : defs) {
-            String[] toks = def.trim().split("\\s+");
-            if (toks.length < 2) {
-                System.out.println("Bad column def: " + def);
-                return;
+    private static void execute(Database db, Statement st, QueryParser parser, QueryExecutor executor) throws Exception {
+        switch (st) {
+            case Statement.Select select -> {
+                Query<Row> q = parser.plan(select, db);
+                ReadView view = db.openView();
+                try {
+                    List<String> columns = q.getSelectedColumns().isEmpty()
+                            ? q.getTable().getColumns().stream().map(Column::getColumnName).toList()
+                            : q.getSelectedColumns();
+                    TablePrinter.print(columns, executor.execute(q), System.out);
+                } finally {
+                    view.close();
+                }
+            }
+            case Statement.Insert insert -> {
+                int n = executor.insert(db, insert);
+                System.out.println(n == 1 ? "1 row inserted into " + insert.table() : n + " rows inserted into " + insert.table());
+            }
+            case Statement.Update update -> System.out.println(executor.update(db, update) + " row(s) updated");
+            case Statement.Delete delete -> System.out.println(executor.delete(db, delete) + " row(s) deleted");
+            case Statement.CreateTable create -> {
+                db.createTable(create.table(), create.columns());
+                System.out.println("Table created: " + create.table());
+            }
+            case Statement.CreateIndex index -> handleCreateIndex(db, index);
+            case Statement.AddColumn add -> {
+                Column c = add.column();
+                db.getTable(add.table()).addColumn(c);
+                System.out.printf("Table %s: column %s %s added%s%n",
+                        add.table(), c.getColumnName(), c.getColumnType(), c.isPrimaryKey() ? " (PK)" : "");
+            }
+            case Statement.DropTable drop -> {
+                db.dropTable(drop.table());
+                System.out.println("Dropped table: " + drop.table());
+            }
+            case Statement.Begin b -> {
+                db.begin();
+                System.out.println("Transaction started");
             }
-            String colName = toks[0];
-            DataType type = parseType(toks[1]);
-            Column c = new Column(colName, type);
-            if (toks.length >= 3) {
-                String rest = String.join(" ", Arrays.copyOfRange(toks, 2, toks.length)).toUpperCase(Locale.ROOT);
-                if (rest.contains("PRIMARY KEY")) c.setPrimaryKey(true);
+            case Statement.Commit c -> {
+                db.commit();
+                System.out.println("Committed");
             }
-            cols.add(c);
+            case Statement.Rollback r -> {
+                db.rollback();
+                System.out.println("Rolled back");
+            }
+            case Statement.Vacuum v -> {
+                int removed = v.table() != null ? db.vacuum(v.table()) : db.vacuum();
+                System.out.println(removed + " old row version(s) removed");
+            }
+            case Statement.Setting set -> handleSet(db, executor, set);
+            case Statement.Open open -> {
+                db.open(Path.of(open.directory()));
+                System.out.printf("Database directory: %s, %d table(s)%n", db.getDirectory(), db.listTables().size());
+            }
+            case Statement.Save save -> {
+                if (save.directory() != null) db.save(Path.of(save.directory()));
+                else db.save();
+                System.out.printf("Saved %d table(s) to %s%n", db.listTables().size(), db.getDirectory());
+            }
+            case Statement.Checkpoint cp -> handleCheckpoint(db, cp.file());
+            case Statement.Restore restore -> {
+                long start = System.nanoTime();
+                db.restore(Path.of(restore.file()));
+                System.out.printf("Restored %d table(s) from %s in %d ms%n",
+                        db.listTables().size(), restore.file(), (System.nanoTime() - start) / 1_000_000);
+            }
+            case Statement.Load load -> {
+                CsvLoader.load(db, load.table(), Path.of(load.path()), load.delimiter());
+                System.out.printf("Loaded table '%s' from %s%n", load.table(), load.path());
+            }
+            case Statement.Join join -> handleJoin(db, join);
+            case Statement.Aggregate agg -> {
+                Query<Row> q = parser.where(db.getTable(agg.table()), agg.where());
+                System.out.printf("%s(%s) = %s%n", agg.function(), agg.column(),
+                        executor.aggregate(q, agg.function(), agg.column()));
+            }
+            case Statement.Describe d -> describe(db, d.table());
         }
-
-        db.createTable(tableName, cols);
-        System.out.println("Table created: " + tableName);
     }
 
-    private static void handleAlterAdd(Database db, String line) {
-        Matcher m = RE_ALTER_ADD.matcher(line);
-        if (!m.matches()) {
-            System.out.println("Usage: ALTER TABLE <name> ADD COLUMN <col> <TYPE> [PRIMARY KEY];");
+    private static void handleCreateIndex(Database db, Statement.CreateIndex st) {
+        Table t = db.getTable(st.table());
+        if (st.bitmap()) {
+            BitmapIndex idx = t.createBitmapIndex(st.name(), st.column());
+            System.out.printf("Bitmap index %s created on %s(%s), %d distinct values%n",
+                    idx.getName(), t.getTableName(), st.column(), idx.distinctValues());
             return;
         }
-        String tableName = m.group(1);
-        String col = m.group(2);
-        DataType type = DataType.valueOf(m.group(3).toUpperCase(Locale.ROOT));
-        boolean pk = m.group(4) != null;
-
-        Table t = db.getTable(tableName);
-        Column c = new Column(col, type);
-        c.setPrimaryKey(pk);
-        t.addColumn(c);
-        System.out.printf("Table %s: column %s %s added%s%n",
-                tableName, col, type, pk ? " (PK)" : "");
+        OrderedIndex idx = t.createIndex(st.name(), st.column());
+        System.out.printf("Index %s created on %s(%s), %d entries%n",
+                idx.getName(), t.getTableName(), st.column(), idx.size());
     }
 
-    private static void handleDrop(Database db, String line) {
-        Matcher m = RE_DROP.matcher(line);
-        if (!m.matches()) {
-            System.out.println("Usage: DROP TABLE <name>;");
-            return;
-        }
-        String tableName = m.group(1);
-        db.dropTable(tableName);
-        System.out.println("Dropped table: " + tableName);
-    }
-
-    private static void handleInsert(Database db, String line) {
-        Matcher m = RE_INSERT.matcher(line);
-        if (!m.matches()) {
-            System.out.println("Usage: INSERT INTO <name>(c1, c2, ...) VALUES (v1, v2, ...);");
-            return;
-        }
-        String tableName = m.group(1);
-        String cols = m.group(2);
-        String vals = m.group(3);
-
-        String[] colNames = splitByCommaRespectQuotes(cols);
-        String[] valLits = splitByCommaRespectQuotes(vals);
-        if (colNames.length != valLits.length) {
-            System.out.println("Columns count != values count");
-            return;
-        }
-
-        Table t = db.getTable(tableName);
-        Map<String, Object> toInsert = new LinkedHashMap<>();
-        for (int i = 0; i < colNames.length; i++) {
-            String col = colNames[i].trim();
-            String lit = valLits[i].trim();
-            Column schemaCol = t.getColumns().stream()
-                    .filter(c -> c.getColumnName().equals(col))
-                    .findFirst().orElseThrow(() -> new RuntimeException("Unknown column: " + col));
-            toInsert.put(col, literalToTyped(lit, schemaCol.getColumnType()));
+    private static void handleSet(Database db, QueryExecutor executor, Statement.Setting set) {
+        String value = set.value();
+        switch (set.name()) {
+            case "STORAGE" -> {
+                StorageMode mode = StorageMode.valueOf(value.toUpperCase(Locale.ROOT));
+                db.setDefaultStorageMode(mode);
+                System.out.println("Storage for new tables: " + mode);
+            }
+            case "MEMORY_LIMIT" -> {
+                db.setDefaultMemoryLimit(parseBytes(value));
+                System.out.println("Off-heap limit for new tables: " + db.getDefaultMemoryLimit() + " bytes");
+            }
+            case "COMMIT_DELAY" -> {
+                db.setCommitDelayMillis(Long.parseLong(value));
+                System.out.println("Group commit window: " + db.getCommitDelayMillis() + " ms");
+            }
+            case "SYNC_COMMIT" -> {
+                db.setSynchronousCommit(switch (value.toUpperCase(Locale.ROOT)) {
+                    case "ON" -> true;
+                    case "OFF" -> false;
+                    default -> throw new IllegalArgumentException("SYNC_COMMIT must be ON or OFF");
+                });
+                System.out.println("Synchronous commit: " + (db.isSynchronousCommit() ? "ON" : "OFF"));
+            }
+            case "VACUUM_THRESHOLD" -> {
+                db.setVacuumThreshold(Double.parseDouble(value));
+                System.out.println("Tables are rewritten at " + db.getVacuumThreshold() + " dead rows ratio");
+            }
+            case "PARALLELISM" -> {
+                executor.setParallelism(Integer.parseInt(value));
+                System.out.println("Query parallelism: " + executor.getParallelism());
+            }
+            default -> System.out.println("Unknown setting: " + set.name());
         }
-        t.insert(toInsert);
-        System.out.println("1 row inserted into " + tableName);
     }
 
-    private static void handleUpdate(Database db, String line) {
-        Matcher m = RE_UPDATE.matcher(line);
-        if (!m.matches()) {
-            System.out.println("Usage: UPDATE <name> SET col=val[, col2=val2 ...] [WHERE ...];");
-            return;
-        }
-        String tableName = m.group(1);
-        String setSpec   = m.group(2).trim();
-        String where     = m.group(3);
-
-        Table t = db.getTable(tableName);
-
-        Map<String, Object> newVals = new LinkedHashMap<>();
-        String[] pairs = splitByCommaRespectQuotes(setSpec);
-        for (String p : pairs) {
-            int eq = p.indexOf('=');
-            if (eq < 1) throw new RuntimeException("Bad SET pair: " + p);
-            String col = p.substring(0, eq).trim();
-            String lit = p.substring(eq + 1).trim();
-            Column schemaCol = t.getColumns().stream()
-                    .filter(c -> c.getColumnName().equals(col))
-                    .findFirst().orElseThrow(() -> new RuntimeException("Unknown column: " + col));
-            newVals.put(col, literalToTyped(lit, schemaCol.getColumnType()));
-        }
-
-        int changed;
-        if (where != null && !where.isBlank()) {
-            QueryParser qp = new QueryParser();
-            Query<Row> q = qp.parse("SELECT * FROM " + tableName + " WHERE " + where + ";", db);
-            changed = t.update(q.getFilter(), newVals);
-        } else {
-            changed = t.update(r -> true, newVals);
-        }
-        System.out.println(changed + " row(s) updated");
-    }
-
-    private static void handleDelete(Database db, String line) {
-        Matcher m = RE_DELETE.matcher(line);
-        if (!m.matches()) {
-            System.out.println("Usage: DELETE FROM <name> [WHERE ...];");
-            return;
-        }
-        String tableName = m.group(1);
-        String where = m.group(2);
-
-        Table t = db.getTable(tableName);
-
-        int removed;
-        if (where != null && !where.isBlank()) {
-            QueryParser qp = new QueryParser();
-            Query<Row> q = qp.parse("SELECT * FROM " + tableName + " WHERE " + where + ";", db);
-            removed = t.delete(q.getFilter());
-        } else {
-            removed = t.delete(r -> true);
-        }
-        System.out.println(removed + " row(s) deleted");
+    private static long parseBytes(String s) {
+        String u = s.toUpperCase(Locale.ROOT);
+        long mul = 1;
+        if (u.endsWith("K")) mul = 1L << 10;
+        else if (u.endsWith("M")) mul = 1L << 20;
+        else if (u.endsWith("G")) mul = 1L << 30;
+        if (mul != 1) u = u.substring(0, u.length() - 1);
+        return Long.parseLong(u) * mul;
     }
 
     private static void describe(Database db, String tableName) {
         try {
             Table t = db.getTable(tableName);
-            System.out.println("Table: " + t.getTableName());
+            System.out.println("Table: " + t.getTableName() + " (" + t.getStorageMode()
+                    + (t.isMapped() ? ", mapped from disk" : "") + ")");
             System.out.println("Columns:");
             t.getColumns().forEach(c ->
                     System.out.printf("  %s : %s%s%n",
                             c.getColumnName(), c.getColumnType(), c.isPrimaryKey() ? " (PK)" : "")
             );
-            System.out.println("Rows: " + t.getRows().size());
+            System.out.println("Rows: " + t.rowCount());
+            for (SecondaryIndex idx : t.getIndexes()) {
+                System.out.printf("%s: %s (%s)%n", idx instanceof BitmapIndex ? "Bitmap index" : "Index",
+                        idx.getName(), t.getColumns().get(idx.getColumn()).getColumnName());
+            }
+            if (t.getStorageMode() == StorageMode.OFF_HEAP) {
+                System.out.printf("Off-heap: %d bytes%s%n", t.getOffHeapBytes(),
+                        t.getMemoryLimit() == Table.UNLIMITED ? "" : " (limit " + t.getMemoryLimit() + ")");
+            }
         } catch (Exception e) {
             System.out.println("[Error] " + e.getMessage());
         }
     }
 
-    private static void handleLoad(Database db, String line) throws Exception {
-        String up = line.toUpperCase(Locale.ROOT);
-        int fromIdx = up.indexOf(" FROM ");
-        if (fromIdx < 0) throw new IllegalArgumentException("Usage: LOAD <table> FROM '<path>' [DELIM=',' ]");
-
-        String table = line.substring("LOAD ".length(), fromIdx).trim();
-
-        String tail = line.substring(fromIdx + " FROM ".length()).trim();
-        if (!tail.startsWith("'")) throw new IllegalArgumentException("Path must be quoted with single quotes");
-        int endQuote = tail.indexOf("'", 1);
-        if (endQuote < 0) throw new IllegalArgumentException("Unterminated path string");
-        String pathStr = tail.substring(1, endQuote);
-        String after = tail.substring(endQuote + 1).trim();
-
-        Character delim = null;
-        if (!after.isEmpty()) {
-            String upAfter = after.toUpperCase(Locale.ROOT);
-            if (upAfter.startsWith("DELIM=")) {
-                String d = after.substring(6).trim();
-                if (d.equals("'\\t'") || d.equals("\"\\t\"") || d.equals("\\t")) delim = '\t';
-                else if (d.startsWith("'") && d.endsWith("'") && d.length() == 3) delim = d.charAt(1);
-                else if (d.startsWith("\"") && d.endsWith("\"") && d.length() == 3) delim = d.charAt(1);
-                else if (d.length() == 1) delim = d.charAt(0);
-                else throw new IllegalArgumentException("DELIM must be one char: ',', ';' or '\\t'");
+    private static void handleCheckpoint(Database db, String file) {
+        long start = System.nanoTime();
+        db.checkpoint(Path.of(file)).whenComplete((rows, err) -> {
+            if (err != null) {
+                Throwable cause = err.getCause() != null ? err.getCause() : err;
+                System.out.println("[Checkpoint error] " + cause.getMessage());
             } else {
-                throw new IllegalArgumentException("Unexpected tail after path: " + after);
+                System.out.printf("Checkpoint %s written: %d row(s) in %d ms%n",
+                        file, rows, (System.nanoTime() - start) / 1_000_000);
             }
-        }
-
-        CsvLoader.load(db, table, Path.of(pathStr));
-        System.out.printf("Loaded table '%s' from %s%n", table, pathStr);
+        });
+        System.out.printf("Checkpoint to %s started%n", file);
     }
 
-    private static void handleJoin(Database db, String line) {
-        String[] toks = line.split("\\s+");
-        if (toks.length < 6 || !"ON".equalsIgnoreCase(toks[3])) {
-            System.out.println("Usage: JOIN <left> <right> ON <leftCol>=<rightCol> [INNER|LEFT|RIGHT]");
-            return;
-        }
-        String leftName = toks[1];
-        String rightName = toks[2];
-
-        String onExpr = toks[4];
-        int eq = onExpr.indexOf('=');
-        if (eq < 1 || eq == onExpr.length() - 1) {
-            System.out.println("ON must be like leftCol=rightCol");
-            return;
-        }
-        String leftCol = onExpr.substring(0, eq);
-        String rightCol = onExpr.substring(eq + 1);
-
-        JoinType jt = JoinType.INNER;
-        if (toks.length >= 6) {
-            String mode = toks[toks.length - 1].toUpperCase(Locale.ROOT);
-            if (mode.equals("LEFT")) jt = JoinType.LEFT;
-            else if (mode.equals("RIGHT")) jt = JoinType.RIGHT;
-            else if (mode.equals("INNER")) jt = JoinType.INNER;
-        }
+    private static void handleJoin(Database db, Statement.Join join) {
+        String leftName = join.left(), rightName = join.right();
+        String leftCol = join.leftColumn(), rightCol = join.rightColumn();
+        JoinType jt = join.type();
 
         Table left = db.getTable(leftName);
         Table right = db.getTable(rightName);
 
-        var result = Join.join(left, right, jt, Join.eq(leftCol, rightCol));
+        var result = Join.join(left, right, jt, leftCol, rightCol);
 
         System.out.printf("JOIN %s %s ON %s=%s %s -> %d rows%n",
                 leftName, rightName, leftCol, rightCol, jt, result.size());
@@ -376,120 +319,13 @@ public class ConsoleApp {
         }
     }
 
-    private static void handleAgg(Database db, String line) {
-        String up = line.toUpperCase(Locale.ROOT);
-        String rest = line.substring(4).trim();
-
-        String whereClause = null;
-        int whereIdx = up.indexOf(" WHERE ");
-        if (whereIdx >= 0) {
-            whereClause = line.substring(whereIdx + " WHERE ".length()).trim();
-            rest = line.substring(4, whereIdx).trim();
-        }
-
-        String[] toks = rest.split("\\s+");
-        if (toks.length < 2) {
-            System.out.println("Usage: AGG <table> <FUNC(col|*)> [WHERE ...]");
-            return;
-        }
-        String tableName = toks[0];
-        String funcCall = toks[1];
-
-        int lp = funcCall.indexOf('(');
-        int rp = funcCall.lastIndexOf(')');
-        if (lp < 1 || rp < 0 || rp <= lp) {
-            System.out.println("FUNC must be like SUM(col), COUNT(*), MIN(col) etc.");
-            return;
-        }
-        String func = funcCall.substring(0, lp).toUpperCase(Locale.ROOT);
-        String arg = funcCall.substring(lp + 1, rp).trim(); // "col" или "*"
-
-        Table table = db.getTable(tableName);
-
-        List<Row> rows;
-        if (whereClause != null && !whereClause.isBlank()) {
-            QueryParser p = new QueryParser();
-            Query<Row> q = p.parse("SELECT * FROM " + tableName + " WHERE " + whereClause + ";", db);
-            rows = new QueryExecutor().execute(q);
-        } else {
-            rows = table.getRows();
-        }
-
-        Object result;
-        switch (func) {
-            case "COUNT" -> {
-                if ("*".equals(arg)) result = Aggregator.count(rows);
-                else result = Aggregator.countNotNull(rows, arg);
-            }
-            case "MIN" -> result = Aggregator.min(rows, arg);
-            case "MAX" -> result = Aggregator.max(rows, arg);
-            case "SUM" -> result = Aggregator.sum(rows, arg);
-            case "AVG" -> result = Aggregator.avg(rows, arg);
-            default -> {
-                System.out.println("Unknown aggregate: " + func + " (use COUNT, MIN, MAX, SUM, AVG)");
-                return;
-            }
-        }
-
-        System.out.printf("%s(%s) = %s%n", func, arg, result);
-    }
-
     private static boolean startsWithIgnoreCase(String s, String prefix) {
         return s.regionMatches(true, 0, prefix, 0, prefix.length());
     }
 
-    private static DataType parseType(String tok) {
-        return DataType.valueOf(tok.toUpperCase(Locale.ROOT));
-    }
-
-    private static Object literalToTyped(String literal, DataType type) {
-        String lit = literal.trim();
-        if (lit.startsWith("'") && lit.endsWith("'") && lit.length() >= 2) {
-            String body = lit.substring(1, lit.length() - 1).replace("''", "'");
-            return type == DataType.STRING ? body : castNonString(body, type);
-        }
-        if (type == DataType.BOOLEAN) {
-            return Boolean.parseBoolean(lit);
-        }
-        return switch (type) {
-            case INTEGER -> Integer.parseInt(lit);
-            case DOUBLE -> Double.parseDouble(lit);
-            case STRING -> lit;
-            case BOOLEAN -> Boolean.parseBoolean(lit);
-        };
-    }
-
-    private static Object castNonString(String s, DataType t) {
-        return switch (t) {
-            case INTEGER -> Integer.parseInt(s);
-            case DOUBLE -> Double.parseDouble(s);
-            case BOOLEAN -> Boolean.parseBoolean(s);
-            case STRING -> s;
-        };
-    }
-
-    private static String[] splitByCommaRespectQuotes(String s) {
-        List<String> out = new ArrayList<>();
-        StringBuilder buf = new StringBuilder();
-        boolean inStr = false;
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            if (c == '\'') {
-                if (inStr && i + 1 < s.length() && s.charAt(i + 1) == '\'') {
-                    buf.append('\''); i++; continue;
-                }
-                inStr = !inStr;
-                buf.append(c);
-                continue;
-            }
-            if (c == ',' && !inStr) {
-                out.add(buf.toString().trim());
-                buf.setLength(0);
-            } else {
-                buf.append(c);
-            }
-        }
-        if (buf.length() > 0) out.add(buf.toString().trim());
-        return out.toArray(new String[0]);
+    private static String firstWord(String upper) {
+        int end = 0;
+        while (end < upper.length() && Character.isLetter(upper.charAt(end))) end++;
+        return upper.substring(0, end);
     }
 }
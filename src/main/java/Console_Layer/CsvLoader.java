@@ -12,8 +12,12 @@ import java.util.*;
 public class CsvLoader {
 
     public static void load(Database db, String tableName, Path csvPath) throws IOException {
+        load(db, tableName, csvPath, null);
+    }
+
+    public static void load(Database db, String tableName, Path csvPath, Character delimiterOpt) throws IOException {
         try (BufferedReader br = Files.newBufferedReader(csvPath)) {
-            load(db, tableName, br, null);
+            load(db, tableName, br, delimiterOpt);
         }
     }
 
@@ -47,15 +51,15 @@ public class CsvLoader {
         db.createTable(tableName, cols);
 
         Table table = db.getTable(tableName);
+        List<String> names = new ArrayList<>(cols.size());
+        for (Column c : cols) names.add(c.getColumnName());
+        List<Object[]> values = new ArrayList<>(rows.size());
         for (List<String> r : rows) {
-            Map<String, Object> map = new LinkedHashMap<>();
-            for (int i = 0; i < headers.size(); i++) {
-                String h = cols.get(i).getColumnName();
-                Object v = cast(r.size() > i ? r.get(i) : null, types.get(i));
-                map.put(h, v);
-            }
-            table.insert(map);
+            Object[] v = new Object[headers.size()];
+            for (int i = 0; i < v.length; i++) v[i] = cast(r.size() > i ? r.get(i) : null, types.get(i));
+            values.add(v);
         }
+        table.insertBatch(names, values);
     }
 
     private static String sanitizeHeader(String raw, int index) {
@@ -1,7 +1,6 @@
 package Console_Layer;
 
 import core.Row;
-import core.Table;
 import core.Value;
 
 import java.io.PrintStream;
@@ -10,35 +9,14 @@ import java.util.List;
 
 public class TablePrinter {
 
-    public static void print(Table table, List<String> selectedColumns, Integer limit, Integer offset, PrintStream out) {
-        if (table == null) {
-            out.println("(no table)");
-            return;
-        }
-        List<String> cols = new ArrayList<>();
-        if (selectedColumns == null || selectedColumns.isEmpty()) {
-            table.getColumns().forEach(c -> cols.add(c.getColumnName()));
-        } else {
-            cols.addAll(selectedColumns);
-        }
-
-        int total = table.getRows().size();
-        int from = (offset != null && offset > 0) ? offset : 0;
-        int to = (limit != null && limit >= 0) ? Math.min(total, from + limit) : total;
-        if (from > total) {
-            out.printf("Rows %d–%d of %d%n", 0, 0, total);
-            out.println("(empty)");
-            return;
-        }
-
-        List<Row> page = table.getRows().subList(from, to);
-
+    // строки результата запроса; cols — заголовки, значения берутся из строки по имени
+    public static void print(List<String> cols, List<Row> rows, PrintStream out) {
         int[] widths = new int[cols.size()];
         for (int i = 0; i < cols.size(); i++) widths[i] = cols.get(i).length();
-        for (Row r : page) {
+        for (Row r : rows) {
             for (int i = 0; i < cols.size(); i++) {
                 Value<?> v = r.getValue(cols.get(i));
-                String s = v == null ? "NULL" : String.valueOf(v.getRaw());
+                String s = v == null || v.isNull() ? "NULL" : String.valueOf(v.getRaw());
                 widths[i] = Math.max(widths[i], s.length());
             }
         }
@@ -47,17 +25,17 @@ public class TablePrinter {
         printRow(cols, widths, out);
         printSeparator(widths, out);
 
-        for (Row r : page) {
+        for (Row r : rows) {
             List<String> vals = new ArrayList<>(cols.size());
             for (String c : cols) {
                 Value<?> v = r.getValue(c);
-                vals.add(v == null ? "NULL" : String.valueOf(v.getRaw()));
+                vals.add(v == null || v.isNull() ? "NULL" : String.valueOf(v.getRaw()));
             }
             printRow(vals, widths, out);
         }
         printSeparator(widths, out);
 
-        out.printf("Rows %d–%d of %d%n", from + 1, to, total);
+        out.println(rows.size() == 1 ? "1 row" : rows.size() + " rows");
     }
 
     private static void printSeparator(int[] widths, PrintStream out) {
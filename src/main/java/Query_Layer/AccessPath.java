@@ -0,0 +1,220 @@
+package Query_Layer;
+
+import core.BitmapIndex;
+import core.DataType;
+import core.IntList;
+import core.OrderedIndex;
+import core.RoaringBitmap;
+import core.SecondaryIndex;
+import core.Table;
+import core.ZoneMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+// Выбор строк-кандидатов по индексам до применения полного фильтра WHERE
+final class AccessPath {
+
+    record KeyRange(Object lo, boolean loInclusive, Object hi, boolean hiInclusive) {
+        static final KeyRange ALL = new KeyRange(null, true, null, true);
+
+        boolean isEmpty() {
+            if (lo == null || hi == null) return false;
+            int c = compareKeys(lo, hi);
+            return c > 0 || (c == 0 && !(loInclusive && hiInclusive));
+        }
+    }
+
+    private AccessPath() {}
+
+    // равенство или IN по первичному ключу среди конъюнктов WHERE сужает выборку до точечных поисков
+    static IntList primaryKeyLookup(Table table, Condition where) {
+        int pk = table.primaryKeyColumn();
+        if (pk < 0 || where == null) return null;
+        String pkName = table.getColumns().get(pk).getColumnName();
+
+        for (Condition c : Condition.conjuncts(where)) {
+            if (c instanceof Condition.Comparison cmp && cmp.column().equals(pkName) && cmp.op() == CompareOp.EQ) {
+                IntList out = new IntList(1);
+                int rowId = table.lookupPrimaryKey(cmp.value());
+                if (rowId >= 0) out.add(rowId);
+                return out;
+            }
+            if (c instanceof Condition.In in && !in.negate() && in.column().equals(pkName)) {
+                TreeSet<Integer> found = new TreeSet<>();
+                for (Object v : in.values()) {
+                    int rowId = table.lookupPrimaryKey(v);
+                    if (rowId >= 0) found.add(rowId);
+                }
+                IntList out = new IntList(found.size());
+                for (int rowId : found) out.add(rowId);
+                return out;
+            }
+        }
+        return null;
+    }
+
+    // диапазон по упорядоченному индексу; строки возвращаются в порядке rowId
+    static IntList indexRangeLookup(Table table, Condition where) {
+        if (where == null || table.getIndexes().isEmpty()) return null;
+        for (SecondaryIndex si : table.getIndexes()) {
+            if (!(si instanceof OrderedIndex idx)) continue;
+            KeyRange range = rangeFor(table, idx, where);
+            if (range == null || range == KeyRange.ALL) continue;
+            IntList out = new IntList();
+            if (!range.isEmpty()) {
+                idx.scan(range.lo(), range.loInclusive(), range.hi(), range.hiInclusive(), false, id -> {
+                    out.add(id);
+                    return true;
+                });
+            }
+            out.sort();
+            return out;
+        }
+        return null;
+    }
+
+    // WHERE, целиком составленный из =, != и IN по колонкам с битмап-индексом,
+    // вычисляется пересечениями и объединениями битмапов; null — если условие покрыто не полностью
+    static RoaringBitmap bitmapLookup(Table table, Condition where) {
+        if (where == null || table.getIndexes().isEmpty()) return null;
+        return bitmapOf(table, where);
+    }
+
+    // покрытые битмапами конъюнкты сужают выборку, остальное проверяет фильтр
+    static IntList bitmapCandidates(Table table, Condition where) {
+        if (where == null || table.getIndexes().isEmpty()) return null;
+        RoaringBitmap acc = null;
+        for (Condition c : Condition.conjuncts(where)) {
+            RoaringBitmap b = bitmapOf(table, c);
+            if (b != null) acc = acc == null ? b : acc.and(b);
+        }
+        return acc == null ? null : acc.toIntList();
+    }
+
+    private static RoaringBitmap bitmapOf(Table table, Condition c) {
+        return switch (c) {
+            case Condition.And and -> {
+                RoaringBitmap l = bitmapOf(table, and.left());
+                RoaringBitmap r = l == null ? null : bitmapOf(table, and.right());
+                yield r == null ? null : l.and(r);
+            }
+            case Condition.Or or -> {
+                RoaringBitmap l = bitmapOf(table, or.left());
+                RoaringBitmap r = l == null ? null : bitmapOf(table, or.right());
+                yield r == null ? null : l.or(r);
+            }
+            case Condition.Comparison cmp -> {
+                boolean eq = cmp.op() == CompareOp.EQ;
+                if (!eq && cmp.op() != CompareOp.NE) yield null;
+                BitmapIndex idx = bitmapIndexFor(table, cmp.column());
+                Object key = idx == null ? null : bitmapKey(table, idx, cmp.rawValue(), cmp.value());
+                if (key == null) yield null;
+                yield eq ? idx.equalTo(key) : idx.notIn(List.of(key));
+            }
+            case Condition.In in -> {
+                BitmapIndex idx = bitmapIndexFor(table, in.column());
+                if (idx == null) yield null;
+                List<Object> keys = new ArrayList<>(in.values().size());
+                for (int i = 0; i < in.values().size(); i++) {
+                    Object key = bitmapKey(table, idx, in.rawValues().get(i), in.values().get(i));
+                    if (key == null) yield null;
+                    keys.add(key);
+                }
+                if (in.negate()) yield idx.notIn(keys);
+                RoaringBitmap out = new RoaringBitmap();
+                for (Object key : keys) out = out.or(idx.equalTo(key));
+                yield out;
+            }
+        };
+    }
+
+    private static BitmapIndex bitmapIndexFor(Table table, String column) {
+        int col = table.columnIndex(column);
+        return col < 0 ? null : table.bitmapIndex(col);
+    }
+
+    private static Object bitmapKey(Table table, BitmapIndex idx, String raw, Object value) {
+        DataType type = table.getColumns().get(idx.getColumn()).getColumnType();
+        return type == DataType.STRING ? QueryParser.unquote(raw) : idx.keyOf(value);
+    }
+
+    // может ли в чанке найтись строка, удовлетворяющая WHERE; false — чанк можно не читать
+    static boolean chunkMayMatch(Table table, int chunk, Condition c) {
+        ZoneMap zones = table.zoneMap();
+        return switch (c) {
+            case Condition.And and -> chunkMayMatch(table, chunk, and.left()) && chunkMayMatch(table, chunk, and.right());
+            case Condition.Or or -> chunkMayMatch(table, chunk, or.left()) || chunkMayMatch(table, chunk, or.right());
+            case Condition.Comparison cmp -> {
+                int col = table.columnIndex(cmp.column());
+                if (col < 0) yield true;
+                boolean bool = table.getColumns().get(col).getColumnType() == DataType.BOOLEAN;
+                Object key = zoneKey(table, col, cmp.rawValue(), cmp.value());
+                if (key == null) yield true;
+                yield switch (cmp.op()) {
+                    case EQ -> zones.mayContain(chunk, col, key);
+                    case NE -> zones.mayDiffer(chunk, col, key);
+                    case GT -> bool || zones.mayOverlap(chunk, col, key, false, null, true);
+                    case GE -> bool || zones.mayOverlap(chunk, col, key, true, null, true);
+                    case LT -> bool || zones.mayOverlap(chunk, col, null, true, key, false);
+                    case LE -> bool || zones.mayOverlap(chunk, col, null, true, key, true);
+                    case LIKE, NOT_LIKE, ILIKE, NOT_ILIKE -> zones.hasValues(chunk, col);
+                };
+            }
+            case Condition.In in -> {
+                int col = table.columnIndex(in.column());
+                if (col < 0) yield true;
+                if (in.negate()) yield zones.hasValues(chunk, col) || zones.hasNulls(chunk, col);
+                boolean any = false;
+                for (int i = 0; i < in.values().size() && !any; i++) {
+                    Object key = zoneKey(table, col, in.rawValues().get(i), in.values().get(i));
+                    any = key == null || zones.mayContain(chunk, col, key);
+                }
+                yield any;
+            }
+        };
+    }
+
+    private static Object zoneKey(Table table, int col, String raw, Object value) {
+        DataType type = table.getColumns().get(col).getColumnType();
+        return type == DataType.STRING ? QueryParser.unquote(raw) : table.zoneMap().keyOf(col, value);
+    }
+
+    // пересечение ограничений вида col op literal из конъюнктов WHERE;
+    // null — если какой-то литерал несравним с ключом индекса
+    static KeyRange rangeFor(Table table, OrderedIndex idx, Condition where) {
+        String column = table.getColumns().get(idx.getColumn()).getColumnName();
+        DataType type = table.getColumns().get(idx.getColumn()).getColumnType();
+        Object lo = null, hi = null;
+        boolean loInc = true, hiInc = true;
+        boolean bounded = false;
+
+        List<Condition> conjuncts = where == null ? List.of() : Condition.conjuncts(where);
+        for (Condition c : conjuncts) {
+            if (!(c instanceof Condition.Comparison cmp) || !cmp.column().equals(column)) continue;
+            CompareOp op = cmp.op();
+            if (op != CompareOp.EQ && !op.isRange()) continue;
+            Object key = type == DataType.STRING ? QueryParser.unquote(cmp.rawValue()) : idx.keyOf(cmp.value());
+            if (key == null) return null;
+            bounded = true;
+
+            if (op == CompareOp.EQ || op == CompareOp.GT || op == CompareOp.GE) {
+                boolean inc = op != CompareOp.GT;
+                int cmpLo = lo == null ? 1 : compareKeys(key, lo);
+                if (cmpLo > 0 || (cmpLo == 0 && !inc)) { lo = key; loInc = inc; }
+            }
+            if (op == CompareOp.EQ || op == CompareOp.LT || op == CompareOp.LE) {
+                boolean inc = op != CompareOp.LT;
+                int cmpHi = hi == null ? -1 : compareKeys(key, hi);
+                if (cmpHi < 0 || (cmpHi == 0 && !inc)) { hi = key; hiInc = inc; }
+            }
+        }
+        return bounded ? new KeyRange(lo, loInc, hi, hiInc) : KeyRange.ALL;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareKeys(Object a, Object b) {
+        return ((Comparable) a).compareTo(b);
+    }
+}
@@ -1,70 +1,133 @@
 package Query_Layer;
 
-import core.Row;
-import core.Value;
+import core.DataType;
+import core.IntList;
+import core.Table;
 
 import java.math.BigDecimal;
-import java.util.List;
-import java.util.Objects;
+import java.util.Locale;
 
 public class Aggregator {
 
-    public static long count(List<Row> rows) {
-        return rows == null ? 0 : rows.size();
+    public static long count(Table table, IntList rowIds) {
+        return rowIds == null ? table.rowCount() : rowIds.size();
     }
 
-    public static long countNotNull(List<Row> rows, String column) {
-        if (rows == null) return 0;
-        return rows.stream().map(r -> r.getValue(column)).filter(Objects::nonNull).count();
+    public static long countNotNull(Table table, IntList rowIds, String column) {
+        return (long) new Partial(table, "COUNT", column).addAll(rowIds).result();
     }
 
-    public static Object min(List<Row> rows, String column) {
-        if (rows == null || rows.isEmpty()) return null;
-        return rows.stream()
-                .map(r -> r.getValue(column))
-                .filter(Objects::nonNull)
-                .min((v1, v2) -> compare(v1, v2))
-                .map(Value::get)
-                .orElse(null);
+    public static Object min(Table table, IntList rowIds, String column) {
+        return new Partial(table, "MIN", column).addAll(rowIds).result();
     }
 
-    public static Object max(List<Row> rows, String column) {
-        if (rows == null || rows.isEmpty()) return null;
-        return rows.stream()
-                .map(r -> r.getValue(column))
-                .filter(Objects::nonNull)
-                .max((v1, v2) -> compare(v1, v2))
-                .map(Value::get)
-                .orElse(null);
+    public static Object max(Table table, IntList rowIds, String column) {
+        return new Partial(table, "MAX", column).addAll(rowIds).result();
     }
 
-    public static BigDecimal sum(List<Row> rows, String column) {
-        if (rows == null || rows.isEmpty()) return BigDecimal.ZERO;
-        BigDecimal acc = BigDecimal.ZERO;
-        for (Row r : rows) {
-            Value<?> v = r.getValue(column);
-            if (v == null) continue;
-            BigDecimal bd = toBigDecimal(v.get());
-            acc = acc.add(bd);
-        }
-        return acc;
+    public static BigDecimal sum(Table table, IntList rowIds, String column) {
+        return (BigDecimal) new Partial(table, "SUM", column).addAll(rowIds).result();
+    }
+
+    public static BigDecimal avg(Table table, IntList rowIds, String column) {
+        return (BigDecimal) new Partial(table, "AVG", column).addAll(rowIds).result();
     }
 
-    public static BigDecimal avg(List<Row> rows, String column) {
-        if (rows == null || rows.isEmpty()) return BigDecimal.ZERO;
-        BigDecimal s = sum(rows, column);
-        long n = rows.stream().map(r -> r.getValue(column)).filter(Objects::nonNull).count();
-        return n == 0 ? BigDecimal.ZERO : s.divide(BigDecimal.valueOf(n), java.math.RoundingMode.HALF_UP);
+    // Агрегат по части строк. Параллельный просмотр копит по одному на поток и сливает их:
+    // счётчики и суммы складываются, у MIN/MAX остаётся лучшая строка
+    static final class Partial {
+        private final Table table;
+        private final String function;
+        private final int col;          // -1 — COUNT(*)
+        private final DataType type;
+        private final int sign;
+        private long rows, nonNull, intSum;
+        private BigDecimal sum = BigDecimal.ZERO;
+        private int best = -1;
+
+        Partial(Table table, String function, String column) {
+            this.table = table;
+            this.function = function.toUpperCase(Locale.ROOT);
+            switch (this.function) {
+                case "COUNT", "SUM", "AVG", "MIN", "MAX" -> { }
+                default -> throw new QueryException("Unknown aggregate: " + function + " (use COUNT, MIN, MAX, SUM, AVG)");
+            }
+            boolean all = "*".equals(column);
+            if (all && !this.function.equals("COUNT")) throw new QueryException(this.function + "(*) is not supported");
+            this.col = all ? -1 : columnOf(table, column);
+            this.type = all ? null : table.getColumns().get(col).getColumnType();
+            this.sign = this.function.equals("MIN") ? -1 : 1;
+        }
+
+        boolean countsRows() {
+            return col < 0;
+        }
+
+        void add(int r) {
+            rows++;
+            if (col < 0 || table.isNull(r, col)) return;
+            nonNull++;
+            switch (function) {
+                case "SUM", "AVG" -> {
+                    switch (type) {
+                        case INTEGER -> intSum += table.getInt(r, col);
+                        case DOUBLE -> sum = sum.add(BigDecimal.valueOf(table.getDouble(r, col)));
+                        default -> sum = sum.add(toBigDecimal(table.getValue(r, col).get()));
+                    }
+                }
+                case "MIN", "MAX" -> {
+                    if (best < 0 || compare(r, best) * sign > 0) best = r;
+                }
+                default -> { }
+            }
+        }
+
+        Partial addAll(IntList rowIds) {
+            for (int i = 0; i < rowIds.size(); i++) add(rowIds.get(i));
+            return this;
+        }
+
+        Partial addAll(Operator rowIds) {
+            for (int r; (r = rowIds.next()) != Operator.END; ) add(r);
+            return this;
+        }
+
+        void merge(Partial other) {
+            rows += other.rows;
+            nonNull += other.nonNull;
+            intSum += other.intSum;
+            sum = sum.add(other.sum);
+            if (other.best >= 0 && (best < 0 || compare(other.best, best) * sign > 0)) best = other.best;
+        }
+
+        Object result() {
+            return switch (function) {
+                case "COUNT" -> col < 0 ? rows : nonNull;
+                case "SUM" -> total();
+                case "AVG" -> nonNull == 0 ? BigDecimal.ZERO
+                        : total().divide(BigDecimal.valueOf(nonNull), java.math.RoundingMode.HALF_UP);
+                default -> best < 0 ? null : table.getValue(best, col).get();
+            };
+        }
+
+        private BigDecimal total() {
+            return type == DataType.INTEGER ? BigDecimal.valueOf(intSum) : sum;
+        }
+
+        private int compare(int a, int b) {
+            return switch (type) {
+                case INTEGER -> Integer.compare(table.getInt(a, col), table.getInt(b, col));
+                case DOUBLE -> Double.compare(table.getDouble(a, col), table.getDouble(b, col));
+                case BOOLEAN -> Boolean.compare(table.getBoolean(a, col), table.getBoolean(b, col));
+                case STRING -> table.getString(a, col).compareTo(table.getString(b, col));
+            };
+        }
     }
 
-    private static int compare(Value<?> v1, Value<?> v2) {
-        if (v1 == null && v2 == null) return 0;
-        if (v1 == null) return 1;
-        if (v2 == null) return -1;
-        if (v1.compare("=", (Value<?>) v2)) return 0;
-        if (v1.compare(">", (Value<?>) v2)) return 1;
-        if (v1.compare("<", (Value<?>) v2)) return -1;
-        return 0;
+    private static int columnOf(Table table, String column) {
+        int col = table.columnIndex(column);
+        if (col < 0) throw new QueryException("Unknown column: " + column);
+        return col;
     }
 
     private static BigDecimal toBigDecimal(Object o) {
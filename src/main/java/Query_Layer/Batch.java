@@ -0,0 +1,114 @@
+package Query_Layer;
+
+import core.RowAccessor;
+import core.Table;
+import core.TableCursor;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+// Пакет до SIZE подряд идущих строк таблицы. Колонка читается в примитивный массив при первом
+// обращении и только раз на пакет; массивы переиспользуются следующими пакетами. Какие строки
+// пакета ещё проходят фильтр, задаёт вектор выбора — возрастающие смещения от start.
+final class Batch {
+    static final int SIZE = 1024;
+    // вектор выбора 0, 1, ..., SIZE - 1
+    static final int[] IDENTITY = new int[SIZE];
+
+    static {
+        Arrays.setAll(IDENTITY, i -> i);
+    }
+
+    private final Table table;
+    private final TableCursor cursor;
+    private final boolean[][] nulls;
+    private final int[][] ints;
+    private final double[][] doubles;
+    private final int[][] codes;
+    // номер пакета, для которого колонка уже прочитана
+    private final int[] nullsAt, intsAt, doublesAt, codesAt;
+    private final ArrayDeque<int[]> spare = new ArrayDeque<>();
+    private int start;
+    private int length;
+    private int stamp;
+
+    Batch(Table table, TableCursor cursor) {
+        this.table = table;
+        this.cursor = cursor;
+        int n = table.getColumns().size();
+        nulls = new boolean[n][];
+        ints = new int[n][];
+        doubles = new double[n][];
+        codes = new int[n][];
+        nullsAt = new int[n];
+        intsAt = new int[n];
+        doublesAt = new int[n];
+        codesAt = new int[n];
+    }
+
+    void reset(int start, int length) {
+        this.start = start;
+        this.length = length;
+        stamp++;
+    }
+
+    int start() {
+        return start;
+    }
+
+    int length() {
+        return length;
+    }
+
+    boolean[] nulls(int column) {
+        if (nullsAt[column] != stamp) {
+            if (nulls[column] == null) nulls[column] = new boolean[SIZE];
+            table.readNulls(column, start, length, nulls[column]);
+            nullsAt[column] = stamp;
+        }
+        return nulls[column];
+    }
+
+    int[] ints(int column) {
+        if (intsAt[column] != stamp) {
+            if (ints[column] == null) ints[column] = new int[SIZE];
+            table.readInts(column, start, length, ints[column]);
+            intsAt[column] = stamp;
+        }
+        return ints[column];
+    }
+
+    double[] doubles(int column) {
+        if (doublesAt[column] != stamp) {
+            if (doubles[column] == null) doubles[column] = new double[SIZE];
+            table.readDoubles(column, start, length, doubles[column]);
+            doublesAt[column] = stamp;
+        }
+        return doubles[column];
+    }
+
+    int[] codes(int column) {
+        if (codesAt[column] != stamp) {
+            if (codes[column] == null) codes[column] = new int[SIZE];
+            table.readCodes(column, start, length, codes[column]);
+            codesAt[column] = stamp;
+        }
+        return codes[column];
+    }
+
+    // строка пакета для построчных предикатов
+    RowAccessor row(int offset) {
+        cursor.moveTo(start + offset);
+        return cursor;
+    }
+
+    // временные векторы выбора для OR; возвращаются в обратном порядке
+    int[] borrow() {
+        int[] a = spare.pollLast();
+        return a != null ? a : new int[SIZE];
+    }
+
+    void release(int[] a) {
+        spare.addLast(a);
+    }
+}
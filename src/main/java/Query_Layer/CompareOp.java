@@ -0,0 +1,57 @@
+package Query_Layer;
+
+import java.util.Locale;
+
+// Оператор сравнения в WHERE; строка оператора разбирается один раз при разборе запроса
+public enum CompareOp {
+    EQ("="), NE("!="), GT(">"), GE(">="), LT("<"), LE("<="),
+    LIKE("LIKE"), NOT_LIKE("NOT LIKE"), ILIKE("ILIKE"), NOT_ILIKE("NOT ILIKE");
+
+    private final String symbol;
+
+    CompareOp(String symbol) {
+        this.symbol = symbol;
+    }
+
+    public static CompareOp of(String op) {
+        return switch (op.toUpperCase(Locale.ROOT)) {
+            case "=" -> EQ;
+            case "!=", "<>" -> NE;
+            case ">" -> GT;
+            case ">=" -> GE;
+            case "<" -> LT;
+            case "<=" -> LE;
+            case "LIKE" -> LIKE;
+            case "NOT LIKE" -> NOT_LIKE;
+            case "ILIKE" -> ILIKE;
+            case "NOT ILIKE" -> NOT_ILIKE;
+            default -> throw new QueryException("Unsupported operator: " + op);
+        };
+    }
+
+    // результат сравнения (как у compareTo) удовлетворяет оператору
+    public boolean test(int cmp) {
+        return switch (this) {
+            case EQ -> cmp == 0;
+            case NE -> cmp != 0;
+            case GT -> cmp > 0;
+            case GE -> cmp >= 0;
+            case LT -> cmp < 0;
+            case LE -> cmp <= 0;
+            case LIKE, NOT_LIKE, ILIKE, NOT_ILIKE -> throw new QueryException(symbol + " is not an ordering comparison");
+        };
+    }
+
+    public boolean isLike() {
+        return this == LIKE || this == NOT_LIKE || this == ILIKE || this == NOT_ILIKE;
+    }
+
+    public boolean isRange() {
+        return this == GT || this == GE || this == LT || this == LE;
+    }
+
+    @Override
+    public String toString() {
+        return symbol;
+    }
+}
@@ -0,0 +1,31 @@
+package Query_Layer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Разобранное условие WHERE; по нему исполнитель выбирает путь доступа к строкам
+public sealed interface Condition {
+
+    record And(Condition left, Condition right) implements Condition {}
+
+    record Or(Condition left, Condition right) implements Condition {}
+
+    record Comparison(String column, CompareOp op, String rawValue, Object value) implements Condition {}
+
+    record In(String column, List<String> rawValues, List<Object> values, boolean negate) implements Condition {}
+
+    static List<Condition> conjuncts(Condition c) {
+        List<Condition> out = new ArrayList<>();
+        collectConjuncts(c, out);
+        return out;
+    }
+
+    private static void collectConjuncts(Condition c, List<Condition> out) {
+        if (c instanceof And and) {
+            collectConjuncts(and.left(), out);
+            collectConjuncts(and.right(), out);
+        } else if (c != null) {
+            out.add(c);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package Query_Layer;
+
+import core.RowAccessor;
+import core.StringDictionary;
+
+import java.util.BitSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+// =, != и IN по словарной STRING-колонке: литералы переводятся в коды, строки сравниваются по коду.
+// LIKE проверяет шаблон по разу на каждое значение словаря, а не на каждую строку.
+// NULL проходит только != и NOT IN (LIKE и NOT LIKE его отбрасывают). Условие проверяют параллельные потоки
+// просмотра, поэтому набор кодов не меняется на месте, а заменяется новым.
+class DictionaryPredicate implements Predicate<RowAccessor>, VectorPredicate {
+    private final int column;
+    private final StringDictionary dictionary;
+    private final Set<String> literals;
+    private final Predicate<String> matcher;
+    private final boolean negate;
+    private final boolean nullMatches;
+    private volatile Resolved resolved = new Resolved(new BitSet(), -1);
+
+    // подходящие коды среди первых size значений словаря
+    private record Resolved(BitSet codes, int size) {}
+
+    DictionaryPredicate(int column, StringDictionary dictionary, Set<String> literals, boolean negate) {
+        this.column = column;
+        this.dictionary = dictionary;
+        this.literals = literals;
+        this.matcher = literals::contains;
+        this.negate = negate;
+        this.nullMatches = negate;
+    }
+
+    DictionaryPredicate(int column, StringDictionary dictionary, Predicate<String> matcher, boolean negate) {
+        this.column = column;
+        this.dictionary = dictionary;
+        this.literals = null;
+        this.matcher = matcher;
+        this.negate = negate;
+        this.nullMatches = false;
+    }
+
+    // колонка может перестать быть словарной, пока идёт просмотр: строки без кода
+    // сравниваются по значению
+    @Override
+    public boolean test(RowAccessor row) {
+        int code = dictionary.isRetired() ? StringDictionary.NO_CODE : row.getCode(column);
+        if (code == StringDictionary.NO_CODE) {
+            String s = row.getString(column);
+            return s == null ? nullMatches : matcher.test(s) != negate;
+        }
+        return code >= 0 ? codes().get(code) != negate : nullMatches;
+    }
+
+    @Override
+    public int filter(Batch batch, int[] sel, int n) {
+        int out = 0;
+        if (dictionary.isRetired()) {
+            for (int j = 0; j < n; j++) {
+                if (test(batch.row(sel[j]))) sel[out++] = sel[j];
+            }
+            return out;
+        }
+        BitSet codes = codes();
+        int[] c = batch.codes(column);
+        for (int j = 0; j < n; j++) {
+            int i = sel[j], code = c[i];
+            boolean keep = code >= 0 ? codes.get(code) != negate
+                    : code == StringDictionary.NO_CODE ? test(batch.row(i)) : nullMatches;
+            sel[out] = i;
+            out += keep ? 1 : 0;
+        }
+        return out;
+    }
+
+    private BitSet codes() {
+        Resolved r = resolved;
+        return r.size() == dictionary.size() ? r.codes() : resolve();
+    }
+
+    private synchronized BitSet resolve() {
+        Resolved r = resolved;
+        int size = dictionary.size();
+        if (r.size() == size) return r.codes();
+        BitSet codes;
+        if (literals != null) {
+            codes = new BitSet();
+            for (String s : literals) {
+                int code = dictionary.codeOf(s);
+                if (code >= 0) codes.set(code);
+            }
+        } else {
+            // коды не меняются, поэтому проверяются только значения, добавленные с прошлого раза
+            codes = (BitSet) r.codes().clone();
+            for (int code = Math.max(r.size(), 0); code < size; code++) {
+                if (matcher.test(dictionary.get(code))) codes.set(code);
+            }
+        }
+        resolved = new Resolved(codes, size);
+        return codes;
+    }
+}
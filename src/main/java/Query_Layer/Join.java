@@ -1,11 +1,18 @@
 package Query_Layer;
 
+import core.DataType;
+import core.IntList;
+import core.ReadView;
 import core.Row;
+import core.StringDictionary;
 import core.Table;
 import core.Value;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.BiPredicate;
 
 public class Join {
@@ -21,39 +28,190 @@ public class Join {
         if (on == null) throw new IllegalArgumentException("Join predicate must not be null");
 
         List<RowPair> out = new ArrayList<>();
-        List<Row> L = left.getRows();
-        List<Row> R = right.getRows();
-
-        switch (type) {
-            case INNER -> {
-                for (Row l : L) {
-                    for (Row r : R) {
-                        if (on.test(l, r)) out.add(new RowPair(l, r));
+        // виды открыты до конца соединения: строки обеих сторон принадлежат одному снимку
+        ReadView lv = left.openView();
+        try {
+            ReadView rv = right.openView();
+            try {
+                List<Row> L = left.getRows();
+                List<Row> R = right.getRows();
+                switch (type) {
+                    case INNER -> {
+                        for (Row l : L) {
+                            for (Row r : R) {
+                                if (on.test(l, r)) out.add(new RowPair(l, r));
+                            }
+                        }
                     }
-                }
-            }
-            case LEFT -> {
-                for (Row l : L) {
-                    boolean matched = false;
-                    for (Row r : R) {
-                        if (on.test(l, r)) { out.add(new RowPair(l, r)); matched = true; }
+                    case LEFT -> {
+                        for (Row l : L) {
+                            boolean matched = false;
+                            for (Row r : R) {
+                                if (on.test(l, r)) { out.add(new RowPair(l, r)); matched = true; }
+                            }
+                            if (!matched) out.add(new RowPair(l, null));
+                        }
+                    }
+                    case RIGHT -> {
+                        for (Row r : R) {
+                            boolean matched = false;
+                            for (Row l : L) {
+                                if (on.test(l, r)) { out.add(new RowPair(l, r)); matched = true; }
+                            }
+                            if (!matched) out.add(new RowPair(null, r));
+                        }
                     }
-                    if (!matched) out.add(new RowPair(l, null));
                 }
+            } finally {
+                rv.close();
             }
-            case RIGHT -> {
-                for (Row r : R) {
-                    boolean matched = false;
-                    for (Row l : L) {
-                        if (on.test(l, r)) { out.add(new RowPair(l, r)); matched = true; }
-                    }
-                    if (!matched) out.add(new RowPair(null, r));
+        } finally {
+            lv.close();
+        }
+        return out;
+    }
+
+    public static List<RowPair> join(Table left, Table right, JoinType type, String leftCol, String rightCol) {
+        if (left == null || right == null) throw new IllegalArgumentException("Tables must not be null");
+        int l = left.columnIndex(leftCol);
+        int r = right.columnIndex(rightCol);
+        if (l < 0) throw new IllegalArgumentException("Unknown column " + leftCol + " in " + left.getTableName());
+        if (r < 0) throw new IllegalArgumentException("Unknown column " + rightCol + " in " + right.getTableName());
+        DataType lt = left.getColumns().get(l).getColumnType();
+        DataType rt = right.getColumns().get(r).getColumnType();
+        if (lt != rt && !(isNumeric(lt) && isNumeric(rt))) {
+            throw new IllegalArgumentException("Incompatible types in join: " + lt + " vs " + rt);
+        }
+
+        // обе стороны читаются одним снимком
+        ReadView lv = left.openView();
+        try {
+            ReadView rv = right.openView();
+            try {
+                StringDictionary ld = left.dictionary(l);
+                StringDictionary rd = right.dictionary(r);
+                if (ld != null && rd != null) return joinOnCodes(left, right, type, l, r, ld, rd);
+                return joinOnHash(left, right, type, l, r);
+            } finally {
+                rv.close();
+            }
+        } finally {
+            lv.close();
+        }
+    }
+
+    private static List<RowPair> joinOnHash(Table left, Table right, JoinType type, int l, int r) {
+        List<RowPair> out = new ArrayList<>();
+        if (type == JoinType.RIGHT) {
+            Map<Object, IntList> built = buildHash(left, l);
+            IntList rightIds = right.rowIds();
+            for (int k = 0; k < rightIds.size(); k++) {
+                int rr = rightIds.get(k);
+                IntList matches = probe(built, right, rr, r);
+                if (matches == null) { out.add(new RowPair(null, right.getRow(rr))); continue; }
+                Row rightRow = right.getRow(rr);
+                for (int i = 0; i < matches.size(); i++) out.add(new RowPair(left.getRow(matches.get(i)), rightRow));
+            }
+            return out;
+        }
+
+        Map<Object, IntList> built = buildHash(right, r);
+        IntList leftIds = left.rowIds();
+        for (int k = 0; k < leftIds.size(); k++) {
+            int lr = leftIds.get(k);
+            IntList matches = probe(built, left, lr, l);
+            if (matches == null) {
+                if (type == JoinType.LEFT) out.add(new RowPair(left.getRow(lr), null));
+                continue;
+            }
+            Row leftRow = left.getRow(lr);
+            for (int i = 0; i < matches.size(); i++) out.add(new RowPair(leftRow, right.getRow(matches.get(i))));
+        }
+        return out;
+    }
+
+    // обе стороны закодированы словарём: хэш-таблица индексируется кодом build-стороны,
+    // коды probe-стороны переводятся в коды build-стороны один раз на каждое значение.
+    // Если колонка за это время перестала быть словарной, соединение идёт по значениям
+    private static List<RowPair> joinOnCodes(Table left, Table right, JoinType type, int l, int r,
+                                             StringDictionary ld, StringDictionary rd) {
+        boolean buildLeft = type == JoinType.RIGHT;
+        Table build = buildLeft ? left : right;
+        Table probe = buildLeft ? right : left;
+        int bc = buildLeft ? l : r;
+        int pc = buildLeft ? r : l;
+        StringDictionary bd = buildLeft ? ld : rd;
+        StringDictionary pd = buildLeft ? rd : ld;
+
+        IntList[] byCode = new IntList[bd.size()];
+        IntList buildIds = build.rowIds();
+        for (int k = 0; k < buildIds.size(); k++) {
+            int row = buildIds.get(k);
+            int code = build.getCode(row, bc);
+            if (code == StringDictionary.NO_CODE) return joinOnHash(left, right, type, l, r);
+            if (code < 0) continue;
+            if (byCode[code] == null) byCode[code] = new IntList(2);
+            byCode[code].add(row);
+        }
+
+        int[] translated = new int[pd.size()];
+        Arrays.fill(translated, -2);
+        List<RowPair> out = new ArrayList<>();
+        IntList probeIds = probe.rowIds();
+        for (int k = 0; k < probeIds.size(); k++) {
+            int row = probeIds.get(k);
+            int code = probe.getCode(row, pc);
+            if (code == StringDictionary.NO_CODE) return joinOnHash(left, right, type, l, r);
+            IntList matches = null;
+            if (code >= 0) {
+                if (translated[code] == -2) translated[code] = bd.codeOf(pd.get(code));
+                if (translated[code] >= 0) matches = byCode[translated[code]];
+            }
+            if (matches == null) {
+                if (type != JoinType.INNER) {
+                    out.add(buildLeft ? new RowPair(null, probe.getRow(row)) : new RowPair(probe.getRow(row), null));
                 }
+                continue;
+            }
+            Row probeRow = probe.getRow(row);
+            for (int i = 0; i < matches.size(); i++) {
+                Row buildRow = build.getRow(matches.get(i));
+                out.add(buildLeft ? new RowPair(buildRow, probeRow) : new RowPair(probeRow, buildRow));
             }
         }
         return out;
     }
 
+    private static Map<Object, IntList> buildHash(Table t, int col) {
+        Map<Object, IntList> built = new HashMap<>();
+        IntList ids = t.rowIds();
+        for (int i = 0; i < ids.size(); i++) {
+            int row = ids.get(i);
+            Object key = joinKey(t, row, col);
+            if (key != null) built.computeIfAbsent(key, k -> new IntList(2)).add(row);
+        }
+        return built;
+    }
+
+    private static IntList probe(Map<Object, IntList> built, Table t, int row, int col) {
+        Object key = joinKey(t, row, col);
+        return key == null ? null : built.get(key);
+    }
+
+    // INTEGER и DOUBLE сравниваются как числа, поэтому ключ приводится к double
+    private static Object joinKey(Table t, int row, int col) {
+        if (t.isNull(row, col)) return null;
+        return switch (t.getColumns().get(col).getColumnType()) {
+            case INTEGER, DOUBLE -> t.getDouble(row, col);
+            case BOOLEAN -> t.getBoolean(row, col);
+            case STRING -> t.getString(row, col);
+        };
+    }
+
+    private static boolean isNumeric(DataType t) {
+        return t == DataType.INTEGER || t == DataType.DOUBLE;
+    }
+
     public static BiPredicate<Row, Row> eq(String leftCol, String rightCol) {
         return (l, r) -> {
             if (l == null || r == null) return false;
@@ -0,0 +1,77 @@
+package Query_Layer;
+
+// Однопроходный лексер: лексемы выдаются по одной по мере чтения, текст не копируется
+// целиком и не нормализуется. Пробелы и комментарии -- ... до конца строки пропускаются.
+final class Lexer {
+    private final String sql;
+    private int pos;
+
+    Lexer(String sql) {
+        this.sql = sql;
+    }
+
+    Token next() {
+        skipSpace();
+        int n = sql.length();
+        if (pos >= n) return new Token(Token.Kind.EOF, "", n);
+        int start = pos;
+        char c = sql.charAt(pos);
+
+        if (Character.isLetter(c) || c == '_') {
+            while (pos < n && (Character.isLetterOrDigit(sql.charAt(pos)) || sql.charAt(pos) == '_')) pos++;
+            return token(Token.Kind.WORD, start);
+        }
+        if (Character.isDigit(c) || (c == '.' && pos + 1 < n && Character.isDigit(sql.charAt(pos + 1)))) {
+            while (pos < n && Character.isDigit(sql.charAt(pos))) pos++;
+            if (pos < n && sql.charAt(pos) == '.') {
+                pos++;
+                while (pos < n && Character.isDigit(sql.charAt(pos))) pos++;
+            }
+            return token(Token.Kind.NUMBER, start);
+        }
+        if (c == '\'') {
+            pos++;
+            while (true) {
+                if (pos >= n) throw new QueryException("Unterminated string literal at position " + start);
+                if (sql.charAt(pos++) != '\'') continue;
+                if (pos < n && sql.charAt(pos) == '\'') pos++;
+                else break;
+            }
+            return token(Token.Kind.STRING, start);
+        }
+        pos++;
+        switch (c) {
+            case '<' -> {
+                if (pos < n && (sql.charAt(pos) == '=' || sql.charAt(pos) == '>')) pos++;
+            }
+            case '>' -> {
+                if (pos < n && sql.charAt(pos) == '=') pos++;
+            }
+            case '!' -> {
+                if (pos >= n || sql.charAt(pos) != '=') throw new QueryException("Unexpected '!' at position " + start);
+                pos++;
+            }
+            case '(', ')', ',', ';', '*', '=', '-', '+', '.', '?' -> { }
+            default -> throw new QueryException("Unexpected character '" + c + "' at position " + start);
+        }
+        return token(Token.Kind.SYMBOL, start);
+    }
+
+    private Token token(Token.Kind kind, int start) {
+        return new Token(kind, sql.substring(start, pos), start);
+    }
+
+    private void skipSpace() {
+        int n = sql.length();
+        while (pos < n) {
+            char c = sql.charAt(pos);
+            if (Character.isWhitespace(c)) {
+                pos++;
+            } else if (c == '-' && pos + 1 < n && sql.charAt(pos + 1) == '-') {
+                while (pos < n && sql.charAt(pos) != '\n') pos++;
+            } else {
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package Query_Layer;
+
+import core.ZoneMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Параллельный полный просмотр. Строки делятся на морсели по ZoneMap.CHUNK_ROWS, потоки общего пула
+// разбирают их из общего счётчика: освободившийся берёт следующий, поэтому морсель, где фильтр
+// дороже или зонная карта ничего не отсекла, не задерживает остальных. У каждого потока своя копия
+// просмотра и своё состояние (часть результата, куча, частичный агрегат) — общего изменяемого нет,
+// состояния сливает вызывающий. Снимок держит вызывающий поток: его вид открыт, пока все не закончат.
+final class Morsels {
+    static final int ROWS = ZoneMap.CHUNK_ROWS;
+
+    // общий для всех сессий; сессия ограничивает только число своих одновременных потоков
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private Morsels() {}
+
+    @FunctionalInterface
+    interface Body<S> {
+        // rows — подходящие строки морселя morsel
+        void accept(S state, int morsel, Operator rows);
+    }
+
+    static int count(Operator.TableScan scan) {
+        return (scan.limit() + ROWS - 1) / ROWS;
+    }
+
+    // состояния потоков; morsel передаётся, чтобы части результата можно было сложить по порядку строк
+    static <S> List<S> run(Operator.TableScan scan, int parallelism, Supplier<S> state, Body<S> body) {
+        int morsels = count(scan);
+        int limit = scan.limit();
+        int threads = Math.max(1, Math.min(parallelism, morsels));
+        AtomicInteger next = new AtomicInteger();
+        List<S> states = new ArrayList<>(threads);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            S s = state.get();
+            Operator.TableScan own = scan.fork();
+            states.add(s);
+            tasks.add(POOL.submit(() -> {
+                try {
+                    for (int m; (m = next.getAndIncrement()) < morsels; ) {
+                        int from = m * ROWS;
+                        own.range(from, Math.min(limit, from + ROWS));
+                        body.accept(s, m, own);
+                    }
+                } catch (RuntimeException | Error e) {
+                    next.set(morsels);   // остальные дочитывают текущий морсель и выходят
+                    throw e;
+                }
+            }));
+        }
+        // ждать всех, даже после ошибки: снимок нельзя отпускать, пока кто-то читает
+        RuntimeException error = null;
+        for (ForkJoinTask<?> task : tasks) {
+            try {
+                task.join();
+            } catch (RuntimeException e) {
+                if (error == null) error = e;
+                else error.addSuppressed(e);
+            }
+        }
+        if (error != null) throw error;
+        return states;
+    }
+}
@@ -0,0 +1,261 @@
+package Query_Layer;
+
+import core.IntList;
+import core.RowAccessor;
+import core.Table;
+import core.TableCursor;
+import core.ZoneMap;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+// Оператор конвейера исполнения: родитель вытягивает у потомка номера строк по одному, пока
+// тот не вернёт END. Строки читаются только по мере запроса, поэтому LIMIT останавливает просмотр;
+// весь вход собирает только сортировка. Значения строк достаёт верхний уровень — проекция.
+abstract class Operator {
+    static final int END = -1;
+
+    abstract int next();
+
+    // строки-кандидаты из индекса, проверенные на видимость и фильтром; без курсора — готовый
+    // результат, который не проверяется
+    static final class Ids extends Operator {
+        private final IntList ids;
+        private final TableCursor cursor;
+        private final Predicate<RowAccessor> filter;
+        private int pos;
+
+        Ids(IntList ids, TableCursor cursor, Predicate<RowAccessor> filter) {
+            this.ids = ids;
+            this.cursor = cursor;
+            this.filter = filter;
+        }
+
+        @Override
+        int next() {
+            while (pos < ids.size()) {
+                int id = ids.get(pos++);
+                if (cursor == null) return id;
+                if (!cursor.isVisible(id)) continue;
+                cursor.moveTo(id);
+                if (filter == null || filter.test(cursor)) return id;
+            }
+            return END;
+        }
+    }
+
+    // Полный просмотр строк [from, to) курсора. Параллельное исполнение раздаёт потокам копии
+    // просмотра (fork: свой курсор и свои буферы) и переставляет их на очередной морсель (range)
+    abstract static class TableScan extends Operator {
+        final Table table;
+        final TableCursor cursor;
+        final Condition where;
+
+        TableScan(Table table, TableCursor cursor, Condition where) {
+            this.table = table;
+            this.cursor = cursor;
+            this.where = where;
+        }
+
+        abstract TableScan fork();
+
+        // from кратно ZoneMap.CHUNK_ROWS
+        abstract void range(int from, int to);
+
+        int limit() {
+            return cursor.limit();
+        }
+    }
+
+    // построчный фильтр; при условии WHERE чанки, которые по зонной карте не могут подойти,
+    // пропускаются целиком
+    static final class Scan extends TableScan {
+        private final Predicate<RowAccessor> filter;
+        private int size, chunk, id, end;
+
+        Scan(Table table, TableCursor cursor, Condition where, Predicate<RowAccessor> filter) {
+            super(table, cursor, where);
+            this.filter = filter;
+            range(0, cursor.limit());
+        }
+
+        @Override
+        TableScan fork() {
+            return new Scan(table, cursor.fork(), where, filter);
+        }
+
+        @Override
+        void range(int from, int to) {
+            size = to;
+            chunk = from / ZoneMap.CHUNK_ROWS;
+            id = end = from;
+            cursor.moveTo(from - 1);
+        }
+
+        @Override
+        int next() {
+            if (where == null) {
+                while (cursor.next() && cursor.rowId() < size) {
+                    if (filter == null || filter.test(cursor)) return cursor.rowId();
+                }
+                return END;
+            }
+            while (true) {
+                while (id < end) {
+                    int r = id++;
+                    if (!cursor.isVisible(r)) continue;
+                    cursor.moveTo(r);
+                    if (filter == null || filter.test(cursor)) return r;
+                }
+                if (end >= size) return END;
+                int start = chunk * ZoneMap.CHUNK_ROWS;
+                end = Math.min(size, start + ZoneMap.CHUNK_ROWS);
+                id = AccessPath.chunkMayMatch(table, chunk++, where) ? start : end;
+            }
+        }
+    }
+
+    // просмотр пакетами по Batch.SIZE строк: фильтр работает с массивами колонок
+    // и вектором выбора, подходящие строки отдаются из вектора по одной
+    static final class BatchScan extends TableScan {
+        private final VectorPredicate filter;
+        private final Batch batch;
+        private final int[] sel = new int[Batch.SIZE];
+        private final boolean all;
+        private int size, chunk, from, end, pos, n;
+
+        BatchScan(Table table, TableCursor cursor, Condition where, VectorPredicate filter) {
+            super(table, cursor, where);
+            this.filter = filter;
+            this.batch = new Batch(table, cursor);
+            this.all = cursor.allVisible();
+            range(0, cursor.limit());
+        }
+
+        @Override
+        TableScan fork() {
+            return new BatchScan(table, cursor.fork(), where, filter);
+        }
+
+        @Override
+        void range(int from, int to) {
+            size = to;
+            chunk = from / ZoneMap.CHUNK_ROWS;
+            this.from = end = from;
+            pos = n = 0;
+        }
+
+        @Override
+        int next() {
+            while (pos >= n) {
+                if (!fill()) return END;
+            }
+            return batch.start() + sel[pos++];
+        }
+
+        private boolean fill() {
+            if (from >= end) {
+                // следующий чанк, не отсечённый зонной картой
+                while (true) {
+                    if (end >= size) return false;
+                    int start = chunk * ZoneMap.CHUNK_ROWS;
+                    end = Math.min(size, start + ZoneMap.CHUNK_ROWS);
+                    from = start;
+                    if (AccessPath.chunkMayMatch(table, chunk++, where)) break;
+                    from = end;
+                }
+            }
+            int len = Math.min(Batch.SIZE, end - from);
+            int count = 0;
+            if (all) {
+                System.arraycopy(Batch.IDENTITY, 0, sel, 0, len);
+                count = len;
+            } else {
+                for (int i = 0; i < len; i++) {
+                    if (cursor.isVisible(from + i)) sel[count++] = i;
+                }
+            }
+            batch.reset(from, len);
+            from += len;
+            pos = 0;
+            n = count == 0 ? 0 : filter.filter(batch, sel, count);
+            return true;
+        }
+    }
+
+    // сортировка по нормализованным ключам: при первом вызове забирает весь вход
+    static final class Sort extends Operator {
+        private final Operator child;
+        private final Table table;
+        private final List<Query.OrderSpec> order;
+        private int[] sorted;
+        private int pos;
+
+        Sort(Operator child, Table table, List<Query.OrderSpec> order) {
+            this.child = child;
+            this.table = table;
+            this.order = order;
+        }
+
+        @Override
+        int next() {
+            if (sorted == null) sorted = SortKeys.sort(table, drain(child), order);
+            return pos < sorted.length ? sorted[pos++] : END;
+        }
+    }
+
+    // ORDER BY ... LIMIT: из входа остаются только первые k = OFFSET + LIMIT строк
+    static final class TopN extends Operator {
+        private final Operator child;
+        private final TopK top;
+        private int[] sorted;
+        private int pos;
+
+        TopN(Operator child, RowComparator order, int k) {
+            this.child = child;
+            this.top = new TopK(order, k);
+        }
+
+        @Override
+        int next() {
+            if (sorted == null) {
+                for (int id; (id = child.next()) != END; ) top.add(id);
+                sorted = top.sorted();
+            }
+            return pos < sorted.length ? sorted[pos++] : END;
+        }
+    }
+
+    // OFFSET пропускает строки, LIMIT перестаёт вытягивать вход, как только набрано нужное
+    static final class Limit extends Operator {
+        private final Operator child;
+        private final int offset;
+        private final long limit;
+        private int skipped;
+        private long emitted;
+
+        Limit(Operator child, int offset, long limit) {
+            this.child = child;
+            this.offset = offset;
+            this.limit = limit;
+        }
+
+        @Override
+        int next() {
+            if (emitted >= limit) return END;
+            while (skipped < offset) {
+                if (child.next() == END) return END;
+                skipped++;
+            }
+            int id = child.next();
+            if (id != END) emitted++;
+            return id;
+        }
+    }
+
+    static IntList drain(Operator op) {
+        IntList out = new IntList();
+        for (int id; (id = op.next()) != END; ) out.add(id);
+        return out;
+    }
+}
@@ -0,0 +1,97 @@
+package Query_Layer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+// LRU-кэш разбора по нормализованному тексту (команды или отдельные условия): повторяющиеся
+// запросы не разбираются заново. Кэш хранит только деревья, а не таблицы и предикаты,
+// поэтому DDL его не портит.
+final class PlanCache<V> {
+    static final int DEFAULT_CAPACITY = 256;
+
+    private final int capacity;
+    private final Function<String, V> parser;
+    private final LinkedHashMap<String, V> plans;
+    private long hits;
+    private long misses;
+
+    PlanCache(int capacity, Function<String, V> parser) {
+        this.capacity = capacity;
+        this.parser = parser;
+        this.plans = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > PlanCache.this.capacity;
+            }
+        };
+    }
+
+    V get(String sql) {
+        String key = normalize(sql);
+        synchronized (this) {
+            V t = plans.get(key);
+            if (t != null) {
+                hits++;
+                return t;
+            }
+            misses++;
+        }
+        // разбор вне блокировки; при гонке оба потока получат равноценные деревья
+        V t = parser.apply(sql);
+        synchronized (this) {
+            plans.put(key, t);
+        }
+        return t;
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    synchronized int size() {
+        return plans.size();
+    }
+
+    synchronized void clear() {
+        plans.clear();
+    }
+
+    // пробелы и комментарии вне строк сворачиваются в один пробел, завершающая ; отбрасывается
+    static String normalize(String sql) {
+        if (sql == null) throw new QueryException("Query is null");
+        StringBuilder sb = new StringBuilder(sql.length());
+        boolean inStr = false, space = false;
+        int n = sql.length();
+        for (int i = 0; i < n; i++) {
+            char c = sql.charAt(i);
+            if (inStr) {
+                sb.append(c);
+                if (c == '\'') inStr = false;   // '' внутри строки — закрытие и сразу открытие
+                continue;
+            }
+            if (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-') {
+                while (i + 1 < n && sql.charAt(i + 1) != '\n') i++;
+                space = true;
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (space && sb.length() > 0) sb.append(' ');
+            space = false;
+            if (c == '\'') inStr = true;
+            sb.append(c);
+        }
+        int len = sb.length();
+        if (len > 0 && sb.charAt(len - 1) == ';') sb.setLength(len - 1);
+        len = sb.length();
+        if (len > 0 && sb.charAt(len - 1) == ' ') sb.setLength(len - 1);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,223 @@
+package Query_Layer;
+
+import core.DataType;
+import core.LikeMatcher;
+import core.RowAccessor;
+import core.StringDictionary;
+import core.Table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Компиляция условия WHERE в предикат один раз на запрос. Литералы приводятся к типу колонки,
+// оператор выбирается при компиляции, поэтому на строку остаются только чтение ячейки
+// примитивным методом и одно сравнение — без разбора, упаковки и Value.
+// Параметры ? подготовленной команды остаются слотами: prepare разрешает колонки, типы и словари
+// один раз, а подстановка значений лишь собирает предикаты вокруг них.
+// NULL отличается от любого литерала: он проходит != и NOT IN, но не =, IN, сравнения порядка и LIKE.
+final class PredicateCompiler {
+
+    static final Object[] NO_ARGS = {};
+
+    private PredicateCompiler() {}
+
+    static Predicate<RowAccessor> compile(Condition c, Table table) {
+        return prepare(c, table).apply(NO_ARGS);
+    }
+
+    // условие с параметрами: результат принимает значения параметров (по номеру ?) и отдаёт предикат
+    static Function<Object[], Predicate<RowAccessor>> prepare(Condition c, Table table) {
+        return switch (c) {
+            case Condition.And and -> {
+                Function<Object[], Predicate<RowAccessor>> l = prepare(and.left(), table), r = prepare(and.right(), table);
+                yield args -> {
+                    Predicate<RowAccessor> lp = l.apply(args), rp = r.apply(args);
+                    return row -> lp.test(row) && rp.test(row);
+                };
+            }
+            case Condition.Or or -> {
+                Function<Object[], Predicate<RowAccessor>> l = prepare(or.left(), table), r = prepare(or.right(), table);
+                yield args -> {
+                    Predicate<RowAccessor> lp = l.apply(args), rp = r.apply(args);
+                    return row -> lp.test(row) || rp.test(row);
+                };
+            }
+            case Condition.Comparison cmp -> comparison(cmp, table);
+            case Condition.In in -> in(in, table);
+        };
+    }
+
+    static <P> Function<Object[], P> constant(P p) {
+        return args -> p;
+    }
+
+    static Object arg(Object[] args, int index) {
+        if (index >= args.length) throw new QueryException("Parameter " + (index + 1) + " is not bound");
+        return args[index];
+    }
+
+    private static Function<Object[], Predicate<RowAccessor>> comparison(Condition.Comparison cmp, Table table) {
+        int col = table.columnIndex(cmp.column());
+        if (col < 0) return constant(row -> false);
+        CompareOp op = cmp.op();
+        DataType type = table.getColumns().get(col).getColumnType();
+        if (op.isLike() && type != DataType.STRING) {
+            throw new QueryException(op + " needs a STRING column: " + cmp.column());
+        }
+        StringDictionary dict = type == DataType.STRING ? table.dictionary(col) : null;
+        if (cmp.value() instanceof Statement.Param p) {
+            int index = p.index();
+            return args -> comparison(col, op, type, dict, arg(args, index));
+        }
+        Object v = type == DataType.STRING ? QueryParser.unquote(cmp.rawValue()) : cmp.value();
+        return constant(comparison(col, op, type, dict, v));
+    }
+
+    // сравнение колонки с известным значением; для STRING-колонки значение — текст литерала
+    private static Predicate<RowAccessor> comparison(int col, CompareOp op, DataType type, StringDictionary dict, Object v) {
+        if (op.isLike()) return like(col, op, String.valueOf(v), dict);
+        return switch (type) {
+            case INTEGER -> v instanceof Integer k ? intCompare(col, op, k) : doubleCompare(col, op, numeric(v));
+            case DOUBLE -> doubleCompare(col, op, numeric(v));
+            case BOOLEAN -> booleanCompare(col, op, v);
+            case STRING -> {
+                String s = String.valueOf(v);
+                if (dict != null && (op == CompareOp.EQ || op == CompareOp.NE)) {
+                    yield new DictionaryPredicate(col, dict, Set.of(s), op == CompareOp.NE);
+                }
+                yield stringCompare(col, op, s);
+            }
+        };
+    }
+
+    private static Predicate<RowAccessor> intCompare(int col, CompareOp op, int k) {
+        return switch (op) {
+            case EQ -> row -> !row.isNull(col) && row.getInt(col) == k;
+            case NE -> row -> row.isNull(col) || row.getInt(col) != k;
+            case GT -> row -> !row.isNull(col) && row.getInt(col) > k;
+            case GE -> row -> !row.isNull(col) && row.getInt(col) >= k;
+            case LT -> row -> !row.isNull(col) && row.getInt(col) < k;
+            case LE -> row -> !row.isNull(col) && row.getInt(col) <= k;
+            default -> throw new QueryException(op + " needs a STRING column");
+        };
+    }
+
+    // Double.compare — как и прежнее сравнение чисел: NaN больше любого числа
+    private static Predicate<RowAccessor> doubleCompare(int col, CompareOp op, double k) {
+        return switch (op) {
+            case EQ -> row -> !row.isNull(col) && Double.compare(row.getDouble(col), k) == 0;
+            case NE -> row -> row.isNull(col) || Double.compare(row.getDouble(col), k) != 0;
+            case GT -> row -> !row.isNull(col) && Double.compare(row.getDouble(col), k) > 0;
+            case GE -> row -> !row.isNull(col) && Double.compare(row.getDouble(col), k) >= 0;
+            case LT -> row -> !row.isNull(col) && Double.compare(row.getDouble(col), k) < 0;
+            case LE -> row -> !row.isNull(col) && Double.compare(row.getDouble(col), k) <= 0;
+            default -> throw new QueryException(op + " needs a STRING column");
+        };
+    }
+
+    private static Predicate<RowAccessor> booleanCompare(int col, CompareOp op, Object literal) {
+        if (op != CompareOp.EQ && op != CompareOp.NE) {
+            throw new QueryException("Invalid operator for boolean comparison: " + op);
+        }
+        boolean eq = op == CompareOp.EQ;
+        if (!(literal instanceof Boolean k)) return row -> !eq;
+        if (eq) return row -> !row.isNull(col) && row.getBoolean(col) == k;
+        return row -> row.isNull(col) || row.getBoolean(col) != k;
+    }
+
+    private static Predicate<RowAccessor> stringCompare(int col, CompareOp op, String k) {
+        return switch (op) {
+            case EQ -> row -> k.equals(row.getString(col));
+            case NE -> row -> {
+                String s = row.getString(col);
+                return s == null || !k.equals(s);
+            };
+            default -> row -> {
+                String s = row.getString(col);
+                return s != null && op.test(s.compareTo(k));
+            };
+        };
+    }
+
+    // шаблон разбирается один раз; у словарной колонки он проверяется по разу на значение словаря
+    private static Predicate<RowAccessor> like(int col, CompareOp op, String pattern, StringDictionary dict) {
+        boolean negate = op == CompareOp.NOT_LIKE || op == CompareOp.NOT_ILIKE;
+        LikeMatcher m = LikeMatcher.compile(pattern, op == CompareOp.ILIKE || op == CompareOp.NOT_ILIKE);
+        if (dict != null) return new DictionaryPredicate(col, dict, m, negate);
+        return row -> {
+            String s = row.getString(col);
+            return s != null && m.matches(s) != negate;
+        };
+    }
+
+    private static Function<Object[], Predicate<RowAccessor>> in(Condition.In in, Table table) {
+        int col = table.columnIndex(in.column());
+        if (col < 0) return constant(row -> false);
+        DataType type = table.getColumns().get(col).getColumnType();
+        StringDictionary dict = type == DataType.STRING ? table.dictionary(col) : null;
+        boolean negate = in.negate();
+        Function<Object[], List<Object>> values = inValues(in, type);
+        if (!hasParams(in)) return constant(in(col, type, dict, negate, values.apply(NO_ARGS)));
+        return args -> in(col, type, dict, negate, values.apply(args));
+    }
+
+    static boolean hasParams(Condition.In in) {
+        return in.values().stream().anyMatch(v -> v instanceof Statement.Param);
+    }
+
+    // значения списка IN; у STRING-колонки — тексты литералов, параметры берутся из args
+    static Function<Object[], List<Object>> inValues(Condition.In in, DataType type) {
+        List<Object> values = new ArrayList<>(in.values().size());
+        for (int i = 0; i < in.values().size(); i++) {
+            Object v = in.values().get(i);
+            values.add(type == DataType.STRING && !(v instanceof Statement.Param) ? QueryParser.unquote(in.rawValues().get(i)) : v);
+        }
+        if (!hasParams(in)) return constant(values);
+        return args -> {
+            List<Object> out = new ArrayList<>(values.size());
+            for (Object v : values) out.add(v instanceof Statement.Param p ? arg(args, p.index()) : v);
+            return out;
+        };
+    }
+
+    private static Predicate<RowAccessor> in(int col, DataType type, StringDictionary dict, boolean negate, List<Object> values) {
+        switch (type) {
+            case INTEGER, DOUBLE -> {
+                if (type == DataType.INTEGER && values.stream().allMatch(v -> v instanceof Integer)) {
+                    int[] keys = values.stream().mapToInt(v -> (Integer) v).sorted().toArray();
+                    return row -> row.isNull(col) ? negate : (Arrays.binarySearch(keys, row.getInt(col)) >= 0) != negate;
+                }
+                double[] keys = values.stream().mapToDouble(PredicateCompiler::numeric).sorted().toArray();
+                return row -> row.isNull(col) ? negate : (Arrays.binarySearch(keys, row.getDouble(col)) >= 0) != negate;
+            }
+            case BOOLEAN -> {
+                boolean hasTrue = values.contains(Boolean.TRUE), hasFalse = values.contains(Boolean.FALSE);
+                return row -> row.isNull(col) ? negate : (row.getBoolean(col) ? hasTrue : hasFalse) != negate;
+            }
+            default -> {
+                Set<String> literals = new HashSet<>();
+                for (Object v : values) literals.add(String.valueOf(v));
+                if (dict != null) return new DictionaryPredicate(col, dict, literals, negate);
+                return row -> {
+                    String s = row.getString(col);
+                    return s == null ? negate : literals.contains(s) != negate;
+                };
+            }
+        }
+    }
+
+    // литерал для числовой колонки; нечисловой — NaN, как и раньше
+    static double numeric(Object v) {
+        if (v instanceof Number n) return n.doubleValue();
+        try {
+            return Double.parseDouble(String.valueOf(v));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
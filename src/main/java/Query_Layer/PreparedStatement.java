@@ -0,0 +1,297 @@
+package Query_Layer;
+
+import core.DataType;
+import core.Database;
+import core.Row;
+import core.RowAccessor;
+import core.StorageMode;
+import core.Table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Команда, разобранная один раз, с параметрами ? вместо значений. Типы параметров берутся
+// из колонок, с которыми они сравниваются или в которые пишутся; значения проверяются
+// и приводятся при подстановке, так что разбор и проверка типов не повторяются на каждый вызов.
+// Условие WHERE компилируется один раз на таблицу с параметрами-слотами: исполнение лишь подставляет значения.
+public final class PreparedStatement {
+
+    // разобранный текст; общий для всех подготовок одного и того же SQL, как и скомпилированный план
+    static final class Template {
+        private final Statement statement;
+        private final int parameters;
+        private volatile Plan plan;
+        private long compilations;
+
+        Template(Statement statement, int parameters) {
+            this.statement = statement;
+            this.parameters = parameters;
+        }
+
+        Statement statement() {
+            return statement;
+        }
+
+        int parameters() {
+            return parameters;
+        }
+
+        // план пересобирается, только если таблицу с тем же именем пересоздали или в неё добавили колонку
+        Plan plan(Table table) {
+            Plan p = plan;
+            return p != null && p.isFor(table) ? p : compile(table);
+        }
+
+        private synchronized Plan compile(Table table) {
+            Plan p = plan;
+            if (p != null && p.isFor(table)) return p;
+            DataType[] types = new DataType[parameters];
+            resolve(statement, table, types);
+            Condition where = whereOf(statement);
+            Function<Object[], Predicate<RowAccessor>> filter = null;
+            Function<Object[], VectorPredicate> vectorFilter = null;
+            if (where != null) {
+                filter = PredicateCompiler.prepare(where, table);
+                if (table.getStorageMode() != StorageMode.ROW) vectorFilter = VectorCompiler.prepare(where, table);
+            }
+            p = new Plan(table, table.getColumns().size(), types, filter, vectorFilter);
+            compilations++;
+            plan = p;
+            return p;
+        }
+
+        synchronized long compilations() {
+            return compilations;
+        }
+    }
+
+    // типы параметров и условие, скомпилированные для конкретной таблицы
+    private record Plan(Table table, int columns, DataType[] types,
+                        Function<Object[], Predicate<RowAccessor>> filter,
+                        Function<Object[], VectorPredicate> vectorFilter) {
+
+        boolean isFor(Table t) {
+            return t == table && t.getColumns().size() == columns;
+        }
+    }
+
+    private final Template template;
+    private final Database database;
+    private final QueryParser parser;
+    private final QueryExecutor executor = new QueryExecutor();
+
+    PreparedStatement(Template template, Database database, QueryParser parser) {
+        this.template = template;
+        this.database = database;
+        this.parser = parser;
+    }
+
+    public Statement statement() {
+        return template.statement();
+    }
+
+    public int parameterCount() {
+        return template.parameters();
+    }
+
+    // тип i-го параметра (с нуля); null — колонка неизвестна, значение не проверяется
+    public DataType parameterType(int index) {
+        return types()[index];
+    }
+
+    // сколько раз условие этого текста компилировалось; повторные исполнения его не увеличивают
+    public long compilations() {
+        return template.compilations();
+    }
+
+    public Query<Row> query(Object... args) {
+        if (!(template.statement() instanceof Statement.Select select)) {
+            throw new QueryException("Not a SELECT statement");
+        }
+        Table table = parser.table(select.table(), database);
+        Plan plan = template.plan(table);
+        return parser.select(select, bound(plan, select.where(), coerce(args, plan.types())));
+    }
+
+    public List<Row> executeQuery(Object... args) {
+        return executor.execute(query(args));
+    }
+
+    // INSERT, UPDATE или DELETE; результат — число затронутых строк
+    public int executeUpdate(Object... args) {
+        return switch (template.statement()) {
+            case Statement.Insert insert -> executor.insert(database, insert, coerce(args, types()));
+            case Statement.Update update -> {
+                Plan plan = template.plan(parser.table(update.table(), database));
+                Object[] values = coerce(args, plan.types());
+                Query<Row> q = update.where() == null ? null : bound(plan, update.where(), values);
+                yield executor.update(plan.table(), update, q, values);
+            }
+            case Statement.Delete delete -> {
+                Plan plan = template.plan(parser.table(delete.table(), database));
+                Object[] values = coerce(args, plan.types());
+                yield executor.delete(plan.table(), delete.where() == null ? null : bound(plan, delete.where(), values));
+            }
+            default -> throw new QueryException("Not an INSERT, UPDATE or DELETE statement");
+        };
+    }
+
+    // запрос по скомпилированному плану: в фильтры подставляются значения, а условие
+    // со значениями остаётся для выбора пути доступа (индексы, битмапы, зоны)
+    private Query<Row> bound(Plan plan, Condition where, Object[] values) {
+        if (where == null) return parser.where(plan.table(), null);
+        Condition c = bind(where, values);
+        VectorPredicate vector = plan.vectorFilter() == null ? null : plan.vectorFilter().apply(values);
+        return parser.where(plan.table(), c, plan.filter().apply(values), vector);
+    }
+
+    // ---------- типы параметров ----------
+
+    private DataType[] types() {
+        String name = tableOf(template.statement());
+        Table table = name == null ? null : database.getTable(name);
+        return table == null ? new DataType[template.parameters()] : template.plan(table).types();
+    }
+
+    private static Condition whereOf(Statement st) {
+        return switch (st) {
+            case Statement.Select s -> s.where();
+            case Statement.Update s -> s.where();
+            case Statement.Delete s -> s.where();
+            default -> null;
+        };
+    }
+
+    private static String tableOf(Statement st) {
+        return switch (st) {
+            case Statement.Select s -> s.table();
+            case Statement.Insert s -> s.table();
+            case Statement.Update s -> s.table();
+            case Statement.Delete s -> s.table();
+            default -> null;
+        };
+    }
+
+    private static void resolve(Statement st, Table table, DataType[] out) {
+        switch (st) {
+            case Statement.Select s -> resolve(s.where(), table, out);
+            case Statement.Delete s -> resolve(s.where(), table, out);
+            case Statement.Update s -> {
+                s.assignments().forEach((col, lit) -> {
+                    if (lit.isParam()) out[lit.param()] = typeOf(table, col);
+                });
+                resolve(s.where(), table, out);
+            }
+            case Statement.Insert s -> {
+                for (List<Statement.Literal> row : s.rows()) {
+                    for (int i = 0; i < row.size(); i++) {
+                        if (row.get(i).isParam()) out[row.get(i).param()] = typeOf(table, s.columns().get(i));
+                    }
+                }
+            }
+            default -> { }
+        }
+    }
+
+    private static void resolve(Condition c, Table table, DataType[] out) {
+        switch (c) {
+            case null -> { }
+            case Condition.And and -> {
+                resolve(and.left(), table, out);
+                resolve(and.right(), table, out);
+            }
+            case Condition.Or or -> {
+                resolve(or.left(), table, out);
+                resolve(or.right(), table, out);
+            }
+            case Condition.Comparison cmp -> {
+                if (cmp.value() instanceof Statement.Param p) out[p.index()] = typeOf(table, cmp.column());
+            }
+            case Condition.In in -> {
+                for (Object v : in.values()) {
+                    if (v instanceof Statement.Param p) out[p.index()] = typeOf(table, in.column());
+                }
+            }
+        }
+    }
+
+    private static DataType typeOf(Table table, String column) {
+        int idx = table.columnIndex(column);
+        return idx < 0 ? null : table.getColumns().get(idx).getColumnType();
+    }
+
+    // ---------- подстановка ----------
+
+    private Object[] coerce(Object[] args, DataType[] t) {
+        int n = template.parameters();
+        if (args == null) args = new Object[0];
+        if (args.length != n) throw new QueryException("Expected " + n + " parameter(s), got " + args.length);
+        if (n == 0) return args;
+        Object[] out = Arrays.copyOf(args, n);
+        for (int i = 0; i < n; i++) out[i] = coerce(i, args[i], t[i]);
+        return out;
+    }
+
+    private static Object coerce(int index, Object v, DataType type) {
+        if (v == null || type == null) return v;
+        return switch (type) {
+            case STRING -> v instanceof String ? v : mismatch(index, v, type);
+            case BOOLEAN -> v instanceof Boolean ? v : mismatch(index, v, type);
+            case DOUBLE -> v instanceof Number n ? (Object) n.doubleValue() : mismatch(index, v, type);
+            case INTEGER -> {
+                if (v instanceof Integer) yield v;
+                if (!(v instanceof Number n)) yield mismatch(index, v, type);
+                // целое, которое помещается в int, остаётся целым; остальное сравнивается как дробное
+                long l = n.longValue();
+                yield n.doubleValue() == l && l == (int) l ? (Object) (int) l : (Object) n.doubleValue();
+            }
+        };
+    }
+
+    private static Object mismatch(int index, Object v, DataType type) {
+        throw new QueryException("Parameter " + (index + 1) + ": expected " + type + ", got " + v.getClass().getSimpleName());
+    }
+
+    private static Condition bind(Condition c, Object[] values) {
+        return switch (c) {
+            case null -> null;
+            case Condition.And and -> new Condition.And(bind(and.left(), values), bind(and.right(), values));
+            case Condition.Or or -> new Condition.Or(bind(or.left(), values), bind(or.right(), values));
+            case Condition.Comparison cmp -> {
+                if (!(cmp.value() instanceof Statement.Param p)) yield cmp;
+                Object v = whereValue(p, values);
+                yield new Condition.Comparison(cmp.column(), cmp.op(), raw(v), v);
+            }
+            case Condition.In in -> {
+                if (in.values().stream().noneMatch(v -> v instanceof Statement.Param)) yield in;
+                List<String> raw = new ArrayList<>(in.values().size());
+                List<Object> vals = new ArrayList<>(in.values().size());
+                for (int i = 0; i < in.values().size(); i++) {
+                    Object v = in.values().get(i);
+                    if (v instanceof Statement.Param p) {
+                        v = whereValue(p, values);
+                        raw.add(raw(v));
+                    } else {
+                        raw.add(in.rawValues().get(i));
+                    }
+                    vals.add(v);
+                }
+                yield new Condition.In(in.column(), raw, vals, in.negate());
+            }
+        };
+    }
+
+    private static Object whereValue(Statement.Param p, Object[] values) {
+        Object v = values[p.index()];
+        if (v == null) throw new QueryException("Parameter " + (p.index() + 1) + ": NULL cannot be compared");
+        return v;
+    }
+
+    // исходный вид значения, как если бы оно было написано в тексте запроса
+    private static String raw(Object v) {
+        return v instanceof String s ? "'" + s.replace("'", "''") + "'" : String.valueOf(v);
+    }
+}
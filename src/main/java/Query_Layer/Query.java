@@ -1,6 +1,7 @@
 package Query_Layer;
 
 import core.Row;
+import core.RowAccessor;
 import core.Table;
 
 import java.util.ArrayList;
@@ -11,8 +12,11 @@ import java.util.function.Predicate;
 public class Query<T> {
     private Table table;
     private List<String> selectedColumns = new ArrayList<>();
-    private Predicate<Row> filter = r -> true;
+    private Predicate<RowAccessor> filter = r -> true;
+    // тот же фильтр для пакетов колоночной таблицы; null — только построчно
+    private VectorPredicate vectorFilter;
     private Function<Row, T> mapper = r -> (T) r;
+    private Condition where;
 
     private Integer limit;
     private Integer offset;
@@ -32,8 +36,14 @@ public class Query<T> {
     public List<String> getSelectedColumns() { return selectedColumns; }
     public void setSelectedColumns(List<String> selectedColumns) { this.selectedColumns = selectedColumns; }
 
-    public Predicate<Row> getFilter() { return filter; }
-    public void setFilter(Predicate<Row> filter) { this.filter = filter; }
+    public Predicate<RowAccessor> getFilter() { return filter; }
+    public void setFilter(Predicate<RowAccessor> filter) { this.filter = filter; this.vectorFilter = null; }
+
+    VectorPredicate getVectorFilter() { return vectorFilter; }
+    void setVectorFilter(VectorPredicate vectorFilter) { this.vectorFilter = vectorFilter; }
+
+    public Condition getWhere() { return where; }
+    public void setWhere(Condition where) { this.where = where; }
 
     public Function<Row, T> getMapper() { return mapper; }
     public void setMapper(Function<Row, T> mapper) { this.mapper = mapper; }
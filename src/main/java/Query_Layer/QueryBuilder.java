@@ -5,19 +5,20 @@ import core.Row;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.StringJoiner;
 import java.util.function.Function;
 
 
 
+// Строит Statement.Select прямо из полей, без текста SQL: разбираются только условия,
+// и те берутся из кэша общего разборщика
 public class QueryBuilder {
 
     private final Database database;
-    private final QueryParser parser = new QueryParser();
+    private final QueryParser parser = QueryParser.shared();
 
     private final List<String> selectCols = new ArrayList<>();
     private String tableName;
-    private final List<String> whereParts = new ArrayList<>();
+    private Condition where;
     private final List<Query.OrderSpec> orderSpecs = new ArrayList<>();
     private Integer limit;
     private Integer offset;
@@ -34,24 +35,23 @@ public class QueryBuilder {
     public QueryBuilder from(String table) { this.tableName = table; return this; }
 
     public QueryBuilder where(String rawCondition) {
-        if (rawCondition != null && !rawCondition.isBlank()) {
-            if (!whereParts.isEmpty()) whereParts.add("AND " + rawCondition.trim());
-            else whereParts.add(rawCondition.trim());
-        }
-        return this;
+        return combine(true, rawCondition);
     }
 
     public QueryBuilder and(String rawCondition) {
-        if (rawCondition != null && !rawCondition.isBlank()) {
-            whereParts.add("AND " + rawCondition.trim());
-        }
-        return this;
+        return combine(true, rawCondition);
     }
 
     public QueryBuilder or(String rawCondition) {
-        if (rawCondition != null && !rawCondition.isBlank()) {
-            whereParts.add("OR " + rawCondition.trim());
-        }
+        return combine(false, rawCondition);
+    }
+
+    // условия цепочки применяются слева направо, как записаны, независимо от приоритета AND над OR
+    private QueryBuilder combine(boolean and, String rawCondition) {
+        if (rawCondition == null || rawCondition.isBlank()) return this;
+        Condition part = parser.condition(rawCondition.trim());
+        if (where == null) where = part;
+        else where = and ? new Condition.And(where, part) : new Condition.Or(where, part);
         return this;
     }
 
@@ -67,8 +67,12 @@ public class QueryBuilder {
         if (tableName == null || tableName.isBlank()) {
             throw new QueryException("FROM table is required");
         }
-        String sql = buildSql();
-        return parser.parse(sql, database);
+        if (limit != null && limit < 0) throw new QueryException("Invalid LIMIT value: " + limit);
+        if (offset != null && offset < 0) throw new QueryException("Invalid OFFSET value: " + offset);
+        // смещение действует только вместе с LIMIT
+        Integer skip = limit != null && offset != null && offset > 0 ? offset : null;
+        return parser.plan(new Statement.Select(List.copyOf(selectCols), tableName.trim(), where,
+                List.copyOf(orderSpecs), limit, skip), database);
     }
 
     public <T> Query<T> build(Function<Row, T> mapper) {
@@ -77,50 +81,12 @@ public class QueryBuilder {
         q.setTable(base.getTable());
         q.setSelectedColumns(base.getSelectedColumns());
         q.setFilter(base.getFilter());
+        q.setVectorFilter(base.getVectorFilter());
+        q.setWhere(base.getWhere());
         q.setLimit(base.getLimit());
         q.setOffset(base.getOffset());
         q.setOrderBy(base.getOrderBy());
         q.setMapper(mapper);
         return q;
     }
-
-    private String buildSql() {
-        StringBuilder sb = new StringBuilder();
-
-        sb.append("SELECT ");
-        if (selectCols.isEmpty()) sb.append("*");
-        else {
-            StringJoiner sj = new StringJoiner(", ");
-            selectCols.forEach(sj::add);
-            sb.append(sj);
-        }
-
-        sb.append(" FROM ").append(tableName);
-
-        if (!whereParts.isEmpty()) {
-            sb.append(" WHERE ");
-            for (int i = 0; i < whereParts.size(); i++) {
-                if (i > 0) sb.append(' ');
-                sb.append(whereParts.get(i));
-            }
-        }
-
-        if (!orderSpecs.isEmpty()) {
-            sb.append(" ORDER BY ");
-            StringJoiner sj = new StringJoiner(", ");
-            for (Query.OrderSpec s : orderSpecs) {
-                sj.add(s.getColumn() + " " + (s.isAsc() ? "ASC" : "DESC"));
-            }
-            sb.append(sj);
-        }
-
-        if (limit != null) {
-            sb.append(" LIMIT ").append(limit);
-            if (offset != null && offset > 0) {
-                sb.append(" OFFSET ").append(offset);
-            }
-        }
-
-        return sb.toString();
-    }
 }
@@ -1,63 +1,363 @@
 package Query_Layer;
 
+import core.Column;
+import core.DataType;
+import core.Database;
+import core.IntList;
+import core.OrderedIndex;
+import core.ReadView;
+import core.RoaringBitmap;
 import core.Row;
+import core.RowAccessor;
+import core.Schema;
 import core.Table;
-import core.Value;
+import core.TableCursor;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
 
 public class QueryExecutor {
+    private static final int TOP_N_MAX_ROWS = 100_000;
 
+    // сколько потоков общего пула может занять один запрос этого исполнителя (сессии); 1 — без параллельности
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be >= 1: " + parallelism);
+        this.parallelism = parallelism;
+    }
+
+    // весь запрос читает один снимок таблицы
     public <T> List<T> execute(Query<T> q) {
+        List<T> out = new ArrayList<>();
+        forEach(q, out::add);
+        return out;
+    }
+
+    // строки результата по одной, без промежуточных списков: Scan -> Filter -> Sort -> Limit -> Project.
+    // Без ORDER BY просмотр прекращается, как только LIMIT набран. Полный просмотр без ORDER BY и LIMIT
+    // идёт по морселям параллельно вместе с проекцией и mapper; строки отдаются в порядке таблицы
+    public <T> void forEach(Query<T> q, Consumer<? super T> sink) {
         Table table = q.getTable();
         if (table == null) throw new QueryException("No table to execute");
-        List<Row> rows = new ArrayList<>(table.getRows());
+        ReadView view = table.openView();
+        try {
+            Operator root = plan(q, table);
+            IntFunction<Row> project = projection(table, q.getSelectedColumns());
+            Function<Row, T> mapper = q.getMapper();
+            if (root instanceof Operator.TableScan scan && parallel(scan)) {
+                List<List<T>> parts = new ArrayList<>(Collections.nCopies(Morsels.count(scan), null));
+                Morsels.run(scan, parallelism, () -> null, (none, m, rows) -> {
+                    List<T> part = new ArrayList<>();
+                    for (int id; (id = rows.next()) != Operator.END; ) part.add(mapper.apply(project.apply(id)));
+                    parts.set(m, part);
+                });
+                for (List<T> part : parts) part.forEach(sink);
+                return;
+            }
+            for (int id; (id = root.next()) != Operator.END; ) sink.accept(mapper.apply(project.apply(id)));
+        } finally {
+            view.close();
+        }
+    }
 
-        if (q.getFilter() != null) {
-            rows = rows.stream().filter(q.getFilter()).collect(Collectors.toList());
+    private Operator plan(Query<?> q, Table table) {
+        Operator op = null;
+        boolean sorted = false;
+        if (q.hasOrder() && AccessPath.primaryKeyLookup(table, q.getWhere()) == null) {
+            IntList ids = indexOrderedSelect(q);
+            if (ids != null) {
+                op = new Operator.Ids(ids, null, null);
+                sorted = true;
+            }
         }
+        if (op == null) op = source(q, table);
 
-        if (q.hasOrder()) {
-            Comparator<Row> cmp = null;
-            for (Query.OrderSpec spec : q.getOrderBy()) {
-                Comparator<Row> c = comparatorFor(spec.getColumn(), spec.isAsc());
-                cmp = (cmp == null) ? c : cmp.thenComparing(c);
+        if (q.hasOrder() && !sorted) {
+            // с небольшим LIMIT достаточно кучи из OFFSET + LIMIT строк; иначе весь вход сортируется по ключам
+            long k = q.hasLimit() ? (long) (q.hasOffset() ? q.getOffset() : 0) + q.getLimit() : Long.MAX_VALUE;
+            if (k <= TOP_N_MAX_ROWS) {
+                RowComparator cmp = null;
+                for (Query.OrderSpec spec : q.getOrderBy()) {
+                    RowComparator c = comparatorFor(table, spec.getColumn(), spec.isAsc());
+                    cmp = (cmp == null) ? c : cmp.then(c);
+                }
+                op = op instanceof Operator.TableScan scan && parallel(scan)
+                        ? new Operator.Ids(topK(scan, cmp, (int) k), null, null)
+                        : new Operator.TopN(op, cmp, (int) k);
+            } else {
+                // параллельно только отбор строк, сами ключи сортируются поразрядно в одном потоке
+                if (op instanceof Operator.TableScan scan && parallel(scan)) op = new Operator.Ids(scan(scan), null, null);
+                op = new Operator.Sort(op, table, q.getOrderBy());
             }
-            if (cmp != null) rows.sort(cmp);
         }
+        if (q.hasLimit() || q.hasOffset()) {
+            op = new Operator.Limit(op, q.hasOffset() ? q.getOffset() : 0, q.hasLimit() ? q.getLimit() : Long.MAX_VALUE);
+        }
+        return op;
+    }
 
-        int from = q.hasOffset() ? q.getOffset() : 0;
-        int to = rows.size();
-        if (q.hasLimit()) {
-            to = Math.min(rows.size(), from + q.getLimit());
+    // SELECT *: строка целиком; иначе только перечисленные колонки в порядке списка
+    private static IntFunction<Row> projection(Table table, List<String> columns) {
+        if (columns == null || columns.isEmpty()) return table::getRow;
+        int[] idx = new int[columns.size()];
+        List<Column> cols = new ArrayList<>(idx.length);
+        for (int i = 0; i < idx.length; i++) {
+            idx[i] = table.columnIndex(columns.get(i));
+            if (idx[i] < 0) throw new QueryException("Unknown column in SELECT: " + columns.get(i));
+            if (cols.contains(table.getColumns().get(idx[i]))) {
+                throw new QueryException("Duplicate column in SELECT: " + columns.get(i));
+            }
+            cols.add(table.getColumns().get(idx[i]));
         }
-        if (from > rows.size()) {
-            rows = List.of();
-        } else {
-            rows = rows.subList(from, to);
+        Schema schema = new Schema(cols);
+        return id -> table.getRow(id, idx, schema);
+    }
+
+    public IntList select(Query<?> q) {
+        Table table = q.getTable();
+        if (table == null) throw new QueryException("No table to execute");
+        ReadView view = table.openView();
+        try {
+            return select(q, table);
+        } finally {
+            view.close();
         }
+    }
 
-        return rows.stream().map(q.getMapper()).collect(Collectors.toList());
+    private IntList select(Query<?> q, Table table) {
+        Operator source = source(q, table);
+        if (source instanceof Operator.TableScan scan && parallel(scan)) return scan(scan);
+        return Operator.drain(source);
     }
 
-    private Comparator<Row> comparatorFor(String column, boolean asc) {
-        Comparator<Row> c = (r1, r2) -> compareValues(r1.getValue(column), r2.getValue(column));
-        return asc ? c : c.reversed();
+    // ---------- параллельный просмотр ----------
+
+    // параллельность окупается, только если морселей хватает хотя бы на два потока
+    private boolean parallel(Operator.TableScan scan) {
+        return parallelism > 1 && Morsels.count(scan) > 1;
+    }
+
+    // подходящие строки в порядке таблицы: части морселей складываются по номеру морселя
+    private IntList scan(Operator.TableScan scan) {
+        IntList[] parts = new IntList[Morsels.count(scan)];
+        Morsels.run(scan, parallelism, () -> null, (none, m, rows) -> parts[m] = Operator.drain(rows));
+        int n = 0;
+        for (IntList part : parts) n += part.size();
+        IntList out = new IntList(n);
+        for (IntList part : parts) out.addAll(part);
+        return out;
+    }
+
+    // у каждого потока своя куча из k строк, в конце они сливаются в одну
+    private IntList topK(Operator.TableScan scan, RowComparator order, int k) {
+        List<TopK> heaps = Morsels.run(scan, parallelism, () -> new TopK(order, k), (top, m, rows) -> {
+            for (int id; (id = rows.next()) != Operator.END; ) top.add(id);
+        });
+        TopK top = heaps.get(0);
+        for (int i = 1; i < heaps.size(); i++) top.addAll(heaps.get(i));
+        return IntList.of(top.sorted());
+    }
+
+    // Источник строк с фильтром WHERE. Индексы меняют пишущие, поэтому кандидаты берутся под
+    // монитором таблицы; индексы содержат все версии строк, видимые снимку отбирает курсор
+    private Operator source(Query<?> q, Table table) {
+        Predicate<RowAccessor> filter = q.getFilter();
+        TableCursor cursor;
+        IntList candidates;
+        synchronized (table) {
+            cursor = table.cursor();
+            candidates = AccessPath.primaryKeyLookup(table, q.getWhere());
+            if (candidates == null) {
+                RoaringBitmap exact = AccessPath.bitmapLookup(table, q.getWhere());
+                if (exact != null && cursor.allVisible()) return new Operator.Ids(exact.toIntList(), null, null);
+                if (exact != null) candidates = exact.toIntList();
+            }
+            if (candidates == null) candidates = AccessPath.indexRangeLookup(table, q.getWhere());
+            if (candidates == null) candidates = AccessPath.bitmapCandidates(table, q.getWhere());
+        }
+        if (candidates != null) return new Operator.Ids(candidates, cursor, filter);
+        if (q.getWhere() != null && q.getVectorFilter() != null) {
+            return new Operator.BatchScan(table, cursor, q.getWhere(), q.getVectorFilter());
+        }
+        return new Operator.Scan(table, cursor, q.getWhere(), filter);
     }
 
-    @SuppressWarnings({"rawtypes", "unchecked"})
-    private int compareValues(Value<?> v1, Value<?> v2) {
-        if (v1 == null && v2 == null) return 0;
-        if (v1 == null) return 1;
-        if (v2 == null) return -1;
+    // ---------- DML ----------
+    // args — значения параметров ? (уже приведённые к типам колонок), для команд без параметров не нужны
+
+    public int insert(Database db, Statement.Insert st, Object... args) {
+        Table t = db.getTable(st.table());
+        DataType[] types = new DataType[st.columns().size()];
+        for (int i = 0; i < types.length; i++) types[i] = columnType(t, st.columns().get(i));
+
+        List<Object[]> rows = new ArrayList<>(st.rows().size());
+        for (List<Statement.Literal> literals : st.rows()) {
+            Object[] row = new Object[types.length];
+            for (int i = 0; i < row.length; i++) row[i] = value(literals.get(i), types[i], args);
+            rows.add(row);
+        }
+        return t.insertBatch(st.columns(), rows);
+    }
+
+    public int update(Database db, Statement.Update st, Object... args) {
+        Table t = db.getTable(st.table());
+        return update(t, st, st.where() == null ? null : QueryParser.shared().where(t, st.where()), args);
+    }
 
-        if (v1.compare("=", (Value) v2)) return 0;
-        if (v1.compare(">", (Value) v2)) return 1;
-        if (v1.compare("<", (Value) v2)) return -1;
+    // q — запрос с уже скомпилированным условием команды (null — все строки)
+    int update(Table t, Statement.Update st, Query<?> q, Object... args) {
+        Map<String, Object> newVals = new LinkedHashMap<>();
+        st.assignments().forEach((col, lit) -> newVals.put(col, value(lit, columnType(t, col), args)));
 
-        return 0;
+        if (q == null) return t.update(r -> true, newVals);
+        ReadView view = t.openView();
+        try {
+            return t.update(select(q, t), newVals);
+        } finally {
+            view.close();
+        }
+    }
+
+    public int delete(Database db, Statement.Delete st) {
+        Table t = db.getTable(st.table());
+        return delete(t, st.where() == null ? null : QueryParser.shared().where(t, st.where()));
+    }
+
+    int delete(Table t, Query<?> q) {
+        if (q == null) return t.delete(r -> true);
+        ReadView view = t.openView();
+        try {
+            return t.delete(select(q, t));
+        } finally {
+            view.close();
+        }
+    }
+
+    private static Object value(Statement.Literal lit, DataType type, Object[] args) {
+        if (!lit.isParam()) return lit.as(type);
+        if (lit.param() >= args.length) throw new QueryException("Parameter " + (lit.param() + 1) + " is not bound");
+        return args[lit.param()];
+    }
+
+    static DataType columnType(Table t, String column) {
+        int idx = t.columnIndex(column);
+        if (idx < 0) throw new QueryException("Unknown column: " + column);
+        return t.getColumns().get(idx).getColumnType();
+    }
+
+    // COUNT(*) по условию, покрытому битмап-индексами, берётся из мощности битмапа без обхода строк,
+    // если снимку видны все строки таблицы
+    public long count(Query<?> q) {
+        Table table = q.getTable();
+        if (table == null) throw new QueryException("No table to execute");
+        ReadView view = table.openView();
+        try {
+            if (q.getWhere() == null && q.getFilter() == null) return table.rowCount();
+            synchronized (table) {
+                RoaringBitmap exact = AccessPath.bitmapLookup(table, q.getWhere());
+                if (exact != null && table.cursor().allVisible()) return exact.cardinality();
+            }
+            return select(q, table).size();
+        } finally {
+            view.close();
+        }
+    }
+
+    // COUNT, SUM, AVG, MIN или MAX по строкам запроса (column "*" — COUNT(*)). При полном просмотре
+    // каждый поток считает частичный агрегат своих морселей, частичные складываются
+    public Object aggregate(Query<?> q, String function, String column) {
+        Table table = q.getTable();
+        if (table == null) throw new QueryException("No table to execute");
+        ReadView view = table.openView();
+        try {
+            Aggregator.Partial total = new Aggregator.Partial(table, function, column);
+            if (total.countsRows()) return q.getWhere() == null ? (long) table.rowCount() : count(q);
+            Operator source = source(q, table);
+            if (source instanceof Operator.TableScan scan && parallel(scan)) {
+                List<Aggregator.Partial> parts = Morsels.run(scan, parallelism,
+                        () -> new Aggregator.Partial(table, function, column), (part, m, rows) -> part.addAll(rows));
+                for (Aggregator.Partial part : parts) total.merge(part);
+            } else {
+                total.addAll(source);
+            }
+            return total.result();
+        } finally {
+            view.close();
+        }
+    }
+
+    // ORDER BY по колонке с упорядоченным индексом: строки идут в порядке индекса,
+    // обход останавливается, как только набрано OFFSET + LIMIT подходящих строк
+    private IntList indexOrderedSelect(Query<?> q) {
+        if (q.getOrderBy().size() != 1) return null;
+        Table table = q.getTable();
+        Query.OrderSpec spec = q.getOrderBy().get(0);
+        int col = table.columnIndex(spec.getColumn());
+        OrderedIndex idx = col < 0 ? null : table.orderedIndex(col);
+        if (idx == null) return null;
+        AccessPath.KeyRange range = AccessPath.rangeFor(table, idx, q.getWhere());
+        if (range == null) return null;
+
+        long need = q.hasLimit() ? (long) (q.hasOffset() ? q.getOffset() : 0) + q.getLimit() : Long.MAX_VALUE;
+        Predicate<RowAccessor> filter = q.getFilter();
+        TableCursor cursor = table.cursor();
+        IntList out = new IntList();
+        IntPredicate collect = id -> {
+            if (out.size() >= need) return false;
+            if (!cursor.isVisible(id)) return true;
+            cursor.moveTo(id);
+            if (filter == null || filter.test(cursor)) out.add(id);
+            return out.size() < need;
+        };
+
+        // NULL сортируются последними при ASC и первыми при DESC; под ограничение диапазона они не попадают
+        boolean withNulls = range == AccessPath.KeyRange.ALL;
+        synchronized (table) {
+            if (!spec.isAsc() && withNulls) visitNulls(idx, collect);
+            if (!range.isEmpty()) {
+                idx.scan(range.lo(), range.loInclusive(), range.hi(), range.hiInclusive(), !spec.isAsc(), collect);
+            }
+            if (spec.isAsc() && withNulls) visitNulls(idx, collect);
+        }
+        return out;
+    }
+
+    private void visitNulls(OrderedIndex idx, IntPredicate visitor) {
+        BitSet nulls = idx.nullRows();
+        for (int id = nulls.nextSetBit(0); id >= 0; id = nulls.nextSetBit(id + 1)) {
+            if (!visitor.test(id)) return;
+        }
+    }
+
+    // сравнение ячеек одной колонки примитивными чтениями; NULL после значений при ASC и перед ними при DESC
+    private RowComparator comparatorFor(Table table, String column, boolean asc) {
+        int idx = table.columnIndex(column);
+        if (idx < 0) throw new QueryException("Unknown column in ORDER BY: " + column);
+        RowComparator values = switch (table.getColumns().get(idx).getColumnType()) {
+            case INTEGER -> (a, b) -> Integer.compare(table.getInt(a, idx), table.getInt(b, idx));
+            case DOUBLE -> (a, b) -> Double.compare(table.getDouble(a, idx), table.getDouble(b, idx));
+            case BOOLEAN -> (a, b) -> Boolean.compare(table.getBoolean(a, idx), table.getBoolean(b, idx));
+            case STRING -> (a, b) -> table.getString(a, idx).compareTo(table.getString(b, idx));
+        };
+        RowComparator c = (a, b) -> {
+            boolean na = table.isNull(a, idx), nb = table.isNull(b, idx);
+            if (na || nb) return na == nb ? 0 : na ? 1 : -1;
+            return values.compare(a, b);
+        };
+        return asc ? c : c.reversed();
     }
 }
@@ -5,275 +5,100 @@ import core.*;
 import java.util.*;
 import java.util.function.Predicate;
 
+// SELECT -> Query: текст разбирает SqlParser, здесь дерево связывается с таблицей
+// и условие WHERE компилируется в предикат. Разобранные команды и условия кэшируются по тексту.
 public class QueryParser {
+    // общий разборщик консоли, построителя запросов и исполнителя: у них один кэш
+    private static final QueryParser SHARED = new QueryParser();
 
-    private static final Set<String> OPS = Set.of("!=", "<>", ">=", "<=", "=", ">", "<", "LIKE");
+    private final PlanCache<PreparedStatement.Template> cache;
+    private final PlanCache<Condition> conditions;
 
-    public Query<Row> parse(String sql, Database database) {
-        if (sql == null) throw new QueryException("Query is null");
-
-        sql = sql.trim();
-        if (sql.endsWith(";")) sql = sql.substring(0, sql.length() - 1);
-        sql = sql.replaceAll("\\s+", " ");
-
-        String upper = sql.toUpperCase(Locale.ROOT);
-        if (!upper.startsWith("SELECT ")) {
-            throw new QueryException("Query must start with SELECT");
-        }
-
-        int fromIdx   = upper.indexOf(" FROM ");
-        if (fromIdx == -1) throw new QueryException("Missing FROM clause");
-
-        int whereIdx  = upper.indexOf(" WHERE ");
-        int orderIdx  = upper.indexOf(" ORDER BY ");
-        int limitIdx  = upper.indexOf(" LIMIT ");
-
-        String selectPart = sql.substring(7, fromIdx).trim();
-        List<String> selectedColumns = parseColumns(selectPart);
-
-        int fromBodyEnd = minPositive(whereIdx, orderIdx, limitIdx, sql.length());
-        String tablePart = sql.substring(fromIdx + 6, fromBodyEnd).trim();
-        String tableName = extractTableName(tablePart);
-
-        Table table = database.getTable(tableName);
-        if (table == null) throw new QueryException("Table not found: " + tableName);
-
-        Predicate<Row> filter = row -> true;
-        if (whereIdx != -1) {
-            int whereBodyStart = whereIdx + " WHERE ".length();
-            int whereBodyEnd = minPositive(orderIdx, limitIdx, -1, sql.length());
-            String whereClause = sql.substring(whereBodyStart, whereBodyEnd).trim();
-            if (whereClause.isEmpty()) throw new QueryException("Empty WHERE clause");
-            filter = parseWhere(whereClause);
-        }
-
-        List<Query.OrderSpec> orderSpecs = Collections.emptyList();
-        if (orderIdx != -1) {
-            int orderBodyStart = orderIdx + " ORDER BY ".length();
-            int orderBodyEnd   = (limitIdx != -1) ? limitIdx : sql.length();
-            String orderClause = sql.substring(orderBodyStart, orderBodyEnd).trim();
-            if (orderClause.isEmpty()) throw new QueryException("Empty ORDER BY clause");
-            orderSpecs = parseOrderBy(orderClause);
-        }
-
-        Integer limit = null;
-        Integer offset = null;
-        if (limitIdx != -1) {
-            String limitTail = sql.substring(limitIdx + " LIMIT ".length()).trim();
-            LimitSpec ls = parseLimit(limitTail);
-            limit = ls.limit;
-            offset = ls.offset;
-        }
-
-        Query<Row> query = new Query<>();
-        query.setTable(table);
-        query.setSelectedColumns(selectedColumns);
-        query.setFilter(filter);
-        query.setMapper(r -> r);
-        query.setLimit(limit);
-        if (offset != null) query.setOffset(offset);
-        if (!orderSpecs.isEmpty()) query.setOrderBy(orderSpecs);
+    public QueryParser() {
+        this(PlanCache.DEFAULT_CAPACITY);
+    }
 
-        return query;
+    public QueryParser(int cacheCapacity) {
+        this.cache = new PlanCache<>(cacheCapacity, SqlParser::template);
+        this.conditions = new PlanCache<>(cacheCapacity, SqlParser::parseCondition);
     }
 
-    private int minPositive(int a, int b, int c, int fallback) {
-        int res = Integer.MAX_VALUE;
-        if (a != -1) res = Math.min(res, a);
-        if (b != -1) res = Math.min(res, b);
-        if (c != -1) res = Math.min(res, c);
-        return (res == Integer.MAX_VALUE) ? fallback : res;
+    public static QueryParser shared() {
+        return SHARED;
     }
 
-    private List<String> parseColumns(String part) {
-        if (part.equals("*")) return Collections.emptyList();
-        String[] toks = part.split(",");
-        List<String> cols = new ArrayList<>(toks.length);
-        for (String t : toks) {
-            String c = t.trim();
-            if (!c.isEmpty()) cols.add(c);
+    public Query<Row> parse(String sql, Database database) {
+        if (!(statement(sql) instanceof Statement.Select select)) {
+            throw new QueryException("Query must start with SELECT");
         }
-        return cols;
+        return plan(select, database);
     }
 
-    private String extractTableName(String tablePart) {
-        int sp = tablePart.indexOf(' ');
-        return (sp == -1) ? tablePart : tablePart.substring(0, sp).trim();
+    // разобранная команда без параметров; повторный текст берётся из кэша
+    public Statement statement(String sql) {
+        PreparedStatement.Template t = cache.get(sql);
+        if (t.parameters() > 0) throw new QueryException("Statement has parameters; use prepare()");
+        return t.statement();
     }
 
-    // ---------- WHERE ----------
-    private java.util.function.Predicate<Row> parseWhere(String clause) {
-        List<Object> parts = splitByLogical(clause);
-        if (parts.isEmpty() || !(parts.get(0) instanceof String)) {
-            throw new QueryException("Invalid WHERE clause: " + clause);
-        }
-
-        java.util.function.Predicate<Row> acc = parsePredicate((String) parts.get(0));
-        for (int i = 1; i < parts.size(); i += 2) {
-            String logic = ((String) parts.get(i)).toUpperCase(Locale.ROOT);
-            java.util.function.Predicate<Row> right = parsePredicate((String) parts.get(i + 1));
-            if ("AND".equals(logic)) acc = acc.and(right);
-            else if ("OR".equals(logic)) acc = acc.or(right);
-            else throw new QueryException("Unsupported logical operator: " + logic);
-        }
-        return acc;
+    // команда с параметрами ?, которую можно исполнять многократно с разными значениями
+    public PreparedStatement prepare(String sql, Database database) {
+        return new PreparedStatement(cache.get(sql), database, this);
     }
 
-    private List<Object> splitByLogical(String clause) {
-        List<Object> out = new ArrayList<>();
-        StringBuilder buf = new StringBuilder();
-        boolean inStr = false;
-
-        for (int i = 0; i < clause.length(); i++) {
-            char c = clause.charAt(i);
-
-            if (c == '\'') {
-                if (inStr && i + 1 < clause.length() && clause.charAt(i + 1) == '\'') {
-                    buf.append(c); i++; continue;
-                }
-                inStr = !inStr; buf.append(c); continue;
-            }
-
-            if (!inStr) {
-                if (regionEqualsIgnoreCase(clause, i, " AND ")) {
-                    out.add(buf.toString().trim());
-                    out.add("AND");
-                    buf.setLength(0);
-                    i += 4; // " AND "
-                    continue;
-                } else if (regionEqualsIgnoreCase(clause, i, " OR ")) {
-                    out.add(buf.toString().trim());
-                    out.add("OR");
-                    buf.setLength(0);
-                    i += 3; // " OR "
-                    continue;
-                }
-            }
-            buf.append(c);
-        }
-
-        if (buf.length() > 0) out.add(buf.toString().trim());
-        return out;
+    // отдельное условие без WHERE (построитель запросов, утилиты консоли); повторный текст берётся из кэша
+    public Condition condition(String text) {
+        return conditions.get(text);
     }
 
-    private boolean regionEqualsIgnoreCase(String s, int offset, String needle) {
-        int n = needle.length();
-        if (offset + n > s.length()) return false;
-        return s.regionMatches(true, offset, needle, 0, n);
+    public long cacheHits() {
+        return cache.hits() + conditions.hits();
     }
 
-    private java.util.function.Predicate<Row> parsePredicate(String expr) {
-        String op = OPS.stream()
-                .filter(o -> indexOfOp(expr, o) >= 0)
-                .max(Comparator.comparingInt(String::length))
-                .orElseThrow(() -> new QueryException("Unsupported operator in: " + expr));
-
-        int idx = indexOfOp(expr, op);
-        String column = expr.substring(0, idx).trim();
-        String rawValue = expr.substring(idx + op.length()).trim();
-
-        if (column.isEmpty() || rawValue.isEmpty()) {
-            throw new QueryException("Invalid predicate: " + expr);
-        }
-
-        return row -> {
-            Value<?> cell = row.getValue(column);
-            if (cell == null) return false;
-            Object value = parseValue(rawValue);
-            return cell.compare(op, new Value<>(value, cell.getType()));
-        };
+    public long cacheMisses() {
+        return cache.misses() + conditions.misses();
     }
 
-    private int indexOfOp(String s, String op) {
-        boolean inStr = false;
-        for (int i = 0; i <= s.length() - op.length(); i++) {
-            char c = s.charAt(i);
-
-            if (c == '\'') {
-                if (inStr && i + 1 < s.length() && s.charAt(i + 1) == '\'') { i++; continue; }
-                inStr = !inStr;
-            }
-
-            if (!inStr && s.regionMatches(true, i, op, 0, op.length())) return i;
-        }
-        return -1;
+    public Query<Row> plan(Statement.Select select, Database database) {
+        return select(select, where(table(select.table(), database), select.where()));
     }
 
-    private List<Query.OrderSpec> parseOrderBy(String clause) {
-        String[] parts = clause.split(",");
-        List<Query.OrderSpec> specs = new ArrayList<>();
-        for (String p : parts) {
-            String s = p.trim();
-            if (s.isEmpty()) continue;
-            String[] toks = s.split("\\s+");
-            String col = toks[0].trim();
-            boolean asc = true;
-            if (toks.length > 1) {
-                String dir = toks[1].trim().toUpperCase(Locale.ROOT);
-                if ("DESC".equals(dir)) asc = false;
-                else if (!"ASC".equals(dir)) throw new QueryException("ORDER BY: expected ASC/DESC, got: " + toks[1]);
-            }
-            specs.add(new Query.OrderSpec(col, asc));
-        }
-        return specs;
+    // колонки, порядок и LIMIT/OFFSET выборки поверх запроса с уже скомпилированным условием
+    Query<Row> select(Statement.Select select, Query<Row> query) {
+        query.setSelectedColumns(select.columns());
+        query.setLimit(select.limit());
+        if (select.offset() != null) query.setOffset(select.offset());
+        if (!select.orderBy().isEmpty()) query.setOrderBy(select.orderBy());
+        return query;
     }
 
-    private static class LimitSpec { Integer limit; Integer offset; }
-
-    private LimitSpec parseLimit(String tail) {
-        String s = tail.trim();
-        if (s.endsWith(";")) s = s.substring(0, s.length() - 1);
-        s = s.trim();
-
-        LimitSpec spec = new LimitSpec();
-        String upper = s.toUpperCase(Locale.ROOT);
-
-        int offIdx = upper.indexOf(" OFFSET ");
-        if (offIdx >= 0) {
-            String left = s.substring(0, offIdx).trim();
-            String right = s.substring(offIdx + " OFFSET ".length()).trim();
-            int lim = parseNonNegativeInt(left, "LIMIT");
-            int off = parseNonNegativeInt(right, "OFFSET");
-            spec.limit = lim; spec.offset = off; return spec;
-        }
-
-        if (s.contains(",")) {
-            String[] p = s.split(",");
-            if (p.length != 2) throw new QueryException("Invalid LIMIT format: " + tail);
-            int off = parseNonNegativeInt(p[0].trim(), "LIMIT offset");
-            int lim = parseNonNegativeInt(p[1].trim(), "LIMIT count");
-            spec.limit = lim; spec.offset = off; return spec;
-        }
-
-        int lim = parseNonNegativeInt(s, "LIMIT");
-        spec.limit = lim; return spec;
+    // выборка всех колонок по условию (null — без условия); для UPDATE, DELETE и утилит
+    public Query<Row> where(Table table, Condition where) {
+        if (where == null) return where(table, null, row -> true, null);
+        // колоночные таблицы просматриваются пакетами, строчные — по строке
+        VectorPredicate vector = table.getStorageMode() != StorageMode.ROW ? VectorCompiler.compile(where, table) : null;
+        return where(table, where, PredicateCompiler.compile(where, table), vector);
     }
 
-    private int parseNonNegativeInt(String s, String label) {
-        try {
-            int v = Integer.parseInt(s);
-            if (v < 0) throw new QueryException(label + " must be >= 0");
-            return v;
-        } catch (NumberFormatException e) {
-            throw new QueryException("Invalid " + label + " value: " + s);
-        }
+    // запрос по готовым фильтрам; where нужен для выбора пути доступа (индексы, зоны)
+    Query<Row> where(Table table, Condition where, Predicate<RowAccessor> filter, VectorPredicate vectorFilter) {
+        Query<Row> query = new Query<>();
+        query.setTable(table);
+        query.setSelectedColumns(Collections.emptyList());
+        query.setFilter(filter);
+        if (vectorFilter != null) query.setVectorFilter(vectorFilter);
+        query.setWhere(where);
+        query.setMapper(r -> r);
+        return query;
     }
-    private Object parseValue(String raw) {
-        String unq = unquote(raw);
 
-        if (unq.equalsIgnoreCase("true") || unq.equalsIgnoreCase("false")) {
-            return Boolean.parseBoolean(unq);
-        }
-        if (unq.matches("[-+]?\\d+")) {
-            try { return Integer.parseInt(unq); } catch (NumberFormatException ignored) {}
-        }
-        if (unq.matches("[-+]?\\d*\\.\\d+")) {
-            try { return Double.parseDouble(unq); } catch (NumberFormatException ignored) {}
-        }
-        return unq;
+    Table table(String name, Database database) {
+        Table table = database.getTable(name);
+        if (table == null) throw new QueryException("Table not found: " + name);
+        return table;
     }
 
-    private String unquote(String s) {
+    static String unquote(String s) {
         s = s.trim();
         if (s.length() >= 2 && s.charAt(0) == '\'' && s.charAt(s.length() - 1) == '\'') {
             String body = s.substring(1, s.length() - 1);
@@ -0,0 +1,18 @@
+package Query_Layer;
+
+// Порядок строк таблицы по их номерам; номера не упаковываются в Integer
+@FunctionalInterface
+interface RowComparator {
+    int compare(int left, int right);
+
+    default RowComparator reversed() {
+        return (a, b) -> compare(b, a);
+    }
+
+    default RowComparator then(RowComparator next) {
+        return (a, b) -> {
+            int c = compare(a, b);
+            return c != 0 ? c : next.compare(a, b);
+        };
+    }
+}
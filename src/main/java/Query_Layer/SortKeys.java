@@ -0,0 +1,270 @@
+package Query_Layer;
+
+import core.DataType;
+import core.IntList;
+import core.StringDictionary;
+import core.Table;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Сортировка ORDER BY по нормализованным ключам. Ключ каждой колонки читается один раз на строку
+// и приводится к беззнаковому смещению от минимума: целые и логические — как есть, double — через
+// long с порядком Double.compare, строки — рангом (у словарной колонки ранжируется словарь).
+// Если все колонки вместе с битами NULL помещаются в 64 бита, ключи упаковываются в один long
+// и сортируются поразрядно (LSD, по байту). Широкие колонки (double, разреженные целые) для этого
+// сначала заменяются плотным рангом; не помогло — устойчивое слияние по колонкам.
+// NULL идут последними при ASC и первыми при DESC; равные строки сохраняют порядок входа.
+final class SortKeys {
+    private static final int RADIX_MIN_ROWS = 256;
+
+    private SortKeys() {}
+
+    // одна колонка: смещения от минимума, отметки NULL и число бит под значения
+    private record Key(long[] offsets, boolean[] nulls, boolean hasNull, long range, boolean asc) {
+        int bits() {
+            return 64 - Long.numberOfLeadingZeros(range);
+        }
+
+        int width() {
+            return bits() + (hasNull ? 1 : 0);
+        }
+
+        // поле упакованного ключа: при ASC NULL старше любого значения, при DESC — младше
+        long field(int i) {
+            long top = hasNull ? 1L << bits() : 0;
+            if (asc) return nulls[i] ? top : offsets[i];
+            return nulls[i] ? 0 : (range - offsets[i]) | top;
+        }
+
+        int compare(int a, int b) {
+            int c;
+            if (nulls[a] || nulls[b]) c = nulls[a] == nulls[b] ? 0 : nulls[a] ? 1 : -1;
+            else c = Long.compareUnsigned(offsets[a], offsets[b]);
+            return asc ? c : -c;
+        }
+    }
+
+    static int[] sort(Table table, IntList rowIds, List<Query.OrderSpec> order) {
+        int n = rowIds.size();
+        int[] ids = rowIds.toArray();
+        if (n < 2) return ids;
+        Key[] keys = new Key[order.size()];
+        int width = 0;
+        for (int k = 0; k < keys.length; k++) {
+            Query.OrderSpec spec = order.get(k);
+            int col = table.columnIndex(spec.getColumn());
+            if (col < 0) throw new QueryException("Unknown column in ORDER BY: " + spec.getColumn());
+            keys[k] = key(table, col, ids, spec.isAsc());
+            width += keys[k].width();
+        }
+        // самые широкие колонки сжимаются до ранга, пока составной ключ не влезет в long
+        while (width > 64) {
+            int widest = 0;
+            for (int k = 1; k < keys.length; k++) if (keys[k].bits() > keys[widest].bits()) widest = k;
+            Key dense = dense(keys[widest]);
+            if (dense.bits() >= keys[widest].bits()) break;
+            width += dense.width() - keys[widest].width();
+            keys[widest] = dense;
+        }
+
+        // позиции во входе; ключи адресуются позицией, номер строки берётся в конце
+        int[] pos = new int[n];
+        Arrays.setAll(pos, i -> i);
+        if (width <= 64) {
+            long[] packed = new long[n];
+            for (Key key : keys) {
+                int w = key.width();
+                for (int i = 0; i < n; i++) packed[i] = (w == 64 ? 0 : packed[i] << w) | key.field(i);
+            }
+            if (n >= RADIX_MIN_ROWS) radix(packed, pos, width);
+            else mergeSort(pos, (a, b) -> Long.compareUnsigned(packed[a], packed[b]));
+        } else {
+            mergeSort(pos, (a, b) -> {
+                for (Key key : keys) {
+                    int c = key.compare(a, b);
+                    if (c != 0) return c;
+                }
+                return 0;
+            });
+        }
+        int[] out = new int[n];
+        for (int i = 0; i < n; i++) out[i] = ids[pos[i]];
+        return out;
+    }
+
+    private static Key key(Table table, int col, int[] ids, boolean asc) {
+        int n = ids.length;
+        DataType type = table.getColumns().get(col).getColumnType();
+        long[] raw = new long[n];
+        boolean[] nulls = new boolean[n];
+        boolean hasNull = false;
+        for (int i = 0; i < n; i++) {
+            nulls[i] = table.isNull(ids[i], col);
+            hasNull |= nulls[i];
+        }
+        switch (type) {
+            case INTEGER -> {
+                for (int i = 0; i < n; i++) if (!nulls[i]) raw[i] = table.getInt(ids[i], col);
+            }
+            case DOUBLE -> {
+                for (int i = 0; i < n; i++) if (!nulls[i]) raw[i] = VectorCompiler.sortable(table.getDouble(ids[i], col));
+            }
+            case BOOLEAN -> {
+                for (int i = 0; i < n; i++) if (!nulls[i]) raw[i] = table.getBoolean(ids[i], col) ? 1 : 0;
+            }
+            case STRING -> stringRanks(table, col, ids, nulls, raw);
+        }
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            if (nulls[i]) continue;
+            min = Math.min(min, raw[i]);
+            max = Math.max(max, raw[i]);
+        }
+        if (min > max) min = max = 0;   // одни NULL
+        for (int i = 0; i < n; i++) raw[i] = nulls[i] ? 0 : raw[i] - min;
+        return new Key(raw, nulls, hasNull, max - min, asc);
+    }
+
+    // смещения заменяются плотным рангом: значения упорядочиваются поразрядно, равные получают один ранг
+    private static Key dense(Key key) {
+        int n = key.offsets().length;
+        long[] sorted = key.offsets().clone();
+        int[] pos = new int[n];
+        Arrays.setAll(pos, i -> i);
+        radix(sorted, pos, key.bits());
+        long[] ranks = new long[n];
+        long rank = -1, prev = 0;
+        for (int i = 0; i < n; i++) {
+            int p = pos[i];
+            if (key.nulls()[p]) continue;
+            if (rank < 0 || sorted[i] != prev) {
+                rank++;
+                prev = sorted[i];
+            }
+            ranks[p] = rank;
+        }
+        return new Key(ranks, key.nulls(), key.hasNull(), Math.max(rank, 0), key.asc());
+    }
+
+    // плотный ранг строки среди значений выборки; словарь ранжируется по разу на код
+    private static void stringRanks(Table table, int col, int[] ids, boolean[] nulls, long[] out) {
+        int n = ids.length;
+        StringDictionary dict = table.dictionary(col);
+        if (dict != null && !dict.isRetired() && dict.size() <= n && codeRanks(table, col, dict, ids, nulls, out)) return;
+        // нормализованный префикс: первые четыре UTF-16 символа в long упорядочены так же,
+        // как в String.compareTo; строки с одинаковым префиксом досравниваются целиком
+        String[] values = new String[n];
+        long[] prefix = new long[n];
+        for (int i = 0; i < n; i++) {
+            if (nulls[i]) {
+                prefix[i] = -1;
+                continue;
+            }
+            String s = values[i] = table.getString(ids[i], col);
+            long p = 0;
+            for (int c = 0; c < 4; c++) p = p << 16 | (c < s.length() ? s.charAt(c) : 0);
+            prefix[i] = p;
+        }
+        int[] pos = new int[n];
+        Arrays.setAll(pos, i -> i);
+        radix(prefix, pos, 64);
+        IntOrder full = (a, b) -> {
+            if (values[a] == null || values[b] == null) return values[a] == values[b] ? 0 : values[a] == null ? 1 : -1;
+            return values[a].compareTo(values[b]);
+        };
+        for (int i = 0, j; i < n; i = j) {
+            for (j = i + 1; j < n && prefix[j] == prefix[i]; ) j++;
+            if (j - i > 1) {
+                int[] group = Arrays.copyOfRange(pos, i, j);
+                mergeSort(group, full);
+                System.arraycopy(group, 0, pos, i, group.length);
+            }
+        }
+        long rank = 0;
+        for (int i = 0; i < n; i++) {
+            if (i > 0 && values[pos[i]] != null && !values[pos[i]].equals(values[pos[i - 1]])) rank++;
+            out[pos[i]] = rank;
+        }
+    }
+
+    // ранг по коду словаря; false — у какой-то строки кода нет (колонка перестала быть словарной)
+    private static boolean codeRanks(Table table, int col, StringDictionary dict, int[] ids, boolean[] nulls, long[] out) {
+        int size = dict.size();
+        int[] codes = new int[size];
+        Arrays.setAll(codes, i -> i);
+        mergeSort(codes, (a, b) -> dict.get(a).compareTo(dict.get(b)));
+        int[] rank = new int[size];
+        for (int r = 0; r < size; r++) rank[codes[r]] = r;
+        for (int i = 0; i < ids.length; i++) {
+            if (nulls[i]) continue;
+            int code = table.getCode(ids[i], col);
+            if (code < 0 || code >= size) return false;
+            out[i] = rank[code];
+        }
+        return true;
+    }
+
+    // поразрядная сортировка по младшим width битам ключа; байт, одинаковый у всех, пропускается
+    private static void radix(long[] keys, int[] pos, int width) {
+        int n = keys.length;
+        long[] keyBuf = new long[n];
+        int[] posBuf = new int[n];
+        int[] count = new int[256];
+        for (int shift = 0; shift < width; shift += 8) {
+            Arrays.fill(count, 0);
+            for (int i = 0; i < n; i++) count[(int) (keys[i] >>> shift) & 0xFF]++;
+            if (count[(int) (keys[0] >>> shift) & 0xFF] == n) continue;
+            for (int b = 0, sum = 0; b < 256; b++) {
+                int c = count[b];
+                count[b] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < n; i++) {
+                int at = count[(int) (keys[i] >>> shift) & 0xFF]++;
+                keyBuf[at] = keys[i];
+                posBuf[at] = pos[i];
+            }
+            System.arraycopy(keyBuf, 0, keys, 0, n);
+            System.arraycopy(posBuf, 0, pos, 0, n);
+        }
+    }
+
+    @FunctionalInterface
+    interface IntOrder {
+        int compare(int a, int b);
+    }
+
+    // устойчивая сортировка слиянием массива int по внешнему порядку
+    static void mergeSort(int[] a, IntOrder order) {
+        int n = a.length;
+        if (n < 2) return;
+        int[] src = a, dst = new int[n];
+        // короткие отрезки — вставками
+        final int run = 32;
+        for (int lo = 0; lo < n; lo += run) {
+            int hi = Math.min(n, lo + run);
+            for (int i = lo + 1; i < hi; i++) {
+                int v = a[i], j = i - 1;
+                while (j >= lo && order.compare(a[j], v) > 0) {
+                    a[j + 1] = a[j];
+                    j--;
+                }
+                a[j + 1] = v;
+            }
+        }
+        for (int width = run; width < n; width *= 2) {
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                int mid = Math.min(n, lo + width), hi = Math.min(n, lo + 2 * width);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) dst[k++] = order.compare(src[j], src[i]) < 0 ? src[j++] : src[i++];
+                while (i < mid) dst[k++] = src[i++];
+                while (j < hi) dst[k++] = src[j++];
+            }
+            int[] t = src;
+            src = dst;
+            dst = t;
+        }
+        if (src != a) System.arraycopy(src, 0, a, 0, n);
+    }
+}
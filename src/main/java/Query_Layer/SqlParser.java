@@ -0,0 +1,509 @@
+package Query_Layer;
+
+import core.Column;
+import core.DataType;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Рекурсивный спуск по лексемам с одной лексемой предпросмотра. Условие WHERE:
+//   or   := and { OR and }
+//   and  := atom { AND atom }
+//   atom := '(' or ')' | column op literal | column [NOT] (LIKE|ILIKE) literal | column [NOT] IN '(' literal, ... ')'
+// Вместо литерала может стоять параметр ?, значение которого подставляется при исполнении.
+// Имя — слово из букв, цифр и _; слитно написанный '-' тоже входит в имя (заголовки CSV вроде
+// order-id), прочие символы в именах не допускаются.
+public final class SqlParser {
+    // слова, которые не могут быть псевдонимом таблицы после FROM
+    private static final Set<String> CLAUSES = Set.of("WHERE", "ORDER", "LIMIT", "OFFSET");
+    private static final Set<String> SETTINGS = Set.of("STORAGE", "MEMORY_LIMIT", "COMMIT_DELAY", "SYNC_COMMIT",
+            "VACUUM_THRESHOLD", "PARALLELISM");
+
+    private final Lexer lexer;
+    private Token token;
+    private int params;
+
+    private SqlParser(String sql) {
+        this.lexer = new Lexer(sql);
+        this.token = lexer.next();
+    }
+
+    public static Statement parse(String sql) {
+        if (sql == null) throw new QueryException("Query is null");
+        SqlParser p = new SqlParser(sql);
+        Statement s = p.statement();
+        p.end();
+        return s;
+    }
+
+    // команда вместе с числом параметров ?
+    static PreparedStatement.Template template(String sql) {
+        if (sql == null) throw new QueryException("Query is null");
+        SqlParser p = new SqlParser(sql);
+        Statement s = p.statement();
+        p.end();
+        return new PreparedStatement.Template(s, p.params);
+    }
+
+    // отдельное условие (без WHERE) — для утилит консоли
+    public static Condition parseCondition(String text) {
+        SqlParser p = new SqlParser(text);
+        Condition c = p.or();
+        p.end();
+        return c;
+    }
+
+    private Statement statement() {
+        Token t = token;
+        if (t.kind() != Token.Kind.WORD) throw error("statement");
+        return switch (t.upper()) {
+            case "SELECT" -> select();
+            case "INSERT" -> insert();
+            case "UPDATE" -> update();
+            case "DELETE" -> delete();
+            case "CREATE" -> create();
+            case "ALTER" -> alter();
+            case "DROP" -> {
+                advance();
+                expectWord("TABLE");
+                yield new Statement.DropTable(name("table name"));
+            }
+            case "BEGIN" -> {
+                advance();
+                acceptWord("TRANSACTION");
+                yield new Statement.Begin();
+            }
+            case "COMMIT" -> {
+                advance();
+                yield new Statement.Commit();
+            }
+            case "ROLLBACK" -> {
+                advance();
+                yield new Statement.Rollback();
+            }
+            case "VACUUM" -> {
+                advance();
+                yield new Statement.Vacuum(token.kind() == Token.Kind.WORD ? name("table name") : null);
+            }
+            case "SET" -> setting();
+            case "OPEN" -> {
+                advance();
+                yield new Statement.Open(string("directory"));
+            }
+            case "SAVE" -> {
+                advance();
+                yield new Statement.Save(token.kind() == Token.Kind.STRING ? string("directory") : null);
+            }
+            case "CHECKPOINT" -> {
+                advance();
+                yield new Statement.Checkpoint(string("file name"));
+            }
+            case "RESTORE" -> {
+                advance();
+                yield new Statement.Restore(string("file name"));
+            }
+            case "LOAD" -> load();
+            case "JOIN" -> join();
+            case "AGG" -> aggregate();
+            case "DESCRIBE" -> {
+                advance();
+                yield new Statement.Describe(name("table name"));
+            }
+            default -> throw new QueryException("Unsupported statement: " + t.text());
+        };
+    }
+
+    // ---------- SELECT ----------
+    private Statement.Select select() {
+        expectWord("SELECT");
+        List<String> columns = new ArrayList<>();
+        if (!acceptSymbol("*")) {
+            do columns.add(name("column name")); while (acceptSymbol(","));
+        }
+        expectWord("FROM");
+        String table = name("table name");
+        // псевдоним таблицы допускается, но не используется
+        if (token.kind() == Token.Kind.WORD && !CLAUSES.contains(token.upper())) {
+            acceptWord("AS");
+            name("table alias");
+        }
+
+        Condition where = acceptWord("WHERE") ? or() : null;
+
+        List<Query.OrderSpec> orderBy = new ArrayList<>();
+        if (acceptWord("ORDER")) {
+            expectWord("BY");
+            do {
+                String col = name("column name");
+                boolean asc = !acceptWord("DESC");
+                if (asc) acceptWord("ASC");
+                orderBy.add(new Query.OrderSpec(col, asc));
+            } while (acceptSymbol(","));
+        }
+
+        Integer limit = null, offset = null;
+        if (acceptWord("LIMIT")) {
+            limit = nonNegative("LIMIT");
+            if (acceptWord("OFFSET")) {
+                offset = nonNegative("OFFSET");
+            } else if (acceptSymbol(",")) {
+                // LIMIT m, n: сначала смещение, затем количество
+                offset = limit;
+                limit = nonNegative("LIMIT count");
+            }
+        }
+        return new Statement.Select(columns, table, where, orderBy, limit, offset);
+    }
+
+    // ---------- DML ----------
+    private Statement.Insert insert() {
+        expectWord("INSERT");
+        expectWord("INTO");
+        String table = name("table name");
+        expectSymbol("(");
+        List<String> columns = new ArrayList<>();
+        do columns.add(name("column name")); while (acceptSymbol(","));
+        expectSymbol(")");
+        expectWord("VALUES");
+        List<List<Statement.Literal>> rows = new ArrayList<>();
+        do {
+            int at = token.pos();
+            expectSymbol("(");
+            List<Statement.Literal> row = new ArrayList<>(columns.size());
+            do row.add(literal()); while (acceptSymbol(","));
+            expectSymbol(")");
+            if (row.size() != columns.size()) {
+                throw new QueryException("Columns count != values count in row at position " + at);
+            }
+            rows.add(row);
+        } while (acceptSymbol(","));
+        return new Statement.Insert(table, columns, rows);
+    }
+
+    private Statement.Update update() {
+        expectWord("UPDATE");
+        String table = name("table name");
+        expectWord("SET");
+        Map<String, Statement.Literal> assignments = new LinkedHashMap<>();
+        do {
+            String col = name("column name");
+            expectSymbol("=");
+            assignments.put(col, literal());
+        } while (acceptSymbol(","));
+        Condition where = acceptWord("WHERE") ? or() : null;
+        return new Statement.Update(table, assignments, where);
+    }
+
+    private Statement.Delete delete() {
+        expectWord("DELETE");
+        expectWord("FROM");
+        String table = name("table name");
+        Condition where = acceptWord("WHERE") ? or() : null;
+        return new Statement.Delete(table, where);
+    }
+
+    // ---------- DDL ----------
+    private Statement create() {
+        expectWord("CREATE");
+        boolean bitmap = acceptWord("BITMAP");
+        if (bitmap || token.isWord("INDEX")) {
+            expectWord("INDEX");
+            String name = name("index name");
+            expectWord("ON");
+            String table = name("table name");
+            expectSymbol("(");
+            String column = name("column name");
+            expectSymbol(")");
+            return new Statement.CreateIndex(name, table, column, bitmap);
+        }
+        expectWord("TABLE");
+        String table = name("table name");
+        expectSymbol("(");
+        List<Column> columns = new ArrayList<>();
+        do columns.add(columnDef()); while (acceptSymbol(","));
+        expectSymbol(")");
+        return new Statement.CreateTable(table, columns);
+    }
+
+    private Statement.AddColumn alter() {
+        expectWord("ALTER");
+        expectWord("TABLE");
+        String table = name("table name");
+        expectWord("ADD");
+        expectWord("COLUMN");
+        return new Statement.AddColumn(table, columnDef());
+    }
+
+    private Column columnDef() {
+        String name = name("column name");
+        Token t = token;
+        DataType type;
+        try {
+            type = DataType.valueOf(name("column type").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new QueryException("Unknown column type " + t + " at position " + t.pos());
+        }
+        Column c = new Column(name, type);
+        if (acceptWord("PRIMARY")) {
+            expectWord("KEY");
+            c.setPrimaryKey(true);
+        }
+        return c;
+    }
+
+    // ---------- команды консоли ----------
+
+    // SET <name> <value>: значение — слово или число, к которому слитно может быть приписан суффикс (64M)
+    private Statement.Setting setting() {
+        expectWord("SET");
+        Token s = token;
+        String name = name("setting name").toUpperCase(Locale.ROOT);
+        if (!SETTINGS.contains(name)) throw new QueryException("Unknown setting " + s + " at position " + s.pos());
+        Token t = token;
+        if (t.kind() != Token.Kind.WORD && t.kind() != Token.Kind.NUMBER) throw error("setting value");
+        advance();
+        String value = t.text();
+        if (t.kind() == Token.Kind.NUMBER && token.kind() == Token.Kind.WORD && token.pos() == end(t)) {
+            value += token.text();
+            advance();
+        }
+        return new Statement.Setting(name, value);
+    }
+
+    // LOAD <table> FROM '<path>' [DELIM='<c>']; '\t' — табуляция
+    private Statement.Load load() {
+        expectWord("LOAD");
+        String table = name("table name");
+        expectWord("FROM");
+        String path = string("file path");
+        Character delimiter = null;
+        if (acceptWord("DELIM")) {
+            expectSymbol("=");
+            Token t = token;
+            String d = string("delimiter");
+            if (d.equals("\\t")) delimiter = '\t';
+            else if (d.length() == 1) delimiter = d.charAt(0);
+            else throw new QueryException("DELIM must be one character (',', ';' or '\\t') at position " + t.pos());
+        }
+        return new Statement.Load(table, path, delimiter);
+    }
+
+    // JOIN <left> <right> ON <leftCol> = <rightCol> [INNER|LEFT|RIGHT]
+    private Statement.Join join() {
+        expectWord("JOIN");
+        String left = name("table name");
+        String right = name("table name");
+        expectWord("ON");
+        String leftColumn = name("column name");
+        expectSymbol("=");
+        String rightColumn = name("column name");
+        JoinType type = JoinType.INNER;
+        if (acceptWord("LEFT")) type = JoinType.LEFT;
+        else if (acceptWord("RIGHT")) type = JoinType.RIGHT;
+        else acceptWord("INNER");
+        return new Statement.Join(left, right, leftColumn, rightColumn, type);
+    }
+
+    // AGG <table> <FUNC>(<column>|*) [WHERE ...]
+    private Statement.Aggregate aggregate() {
+        expectWord("AGG");
+        String table = name("table name");
+        String function = name("aggregate function").toUpperCase(Locale.ROOT);
+        expectSymbol("(");
+        String column = acceptSymbol("*") ? "*" : name("column name");
+        expectSymbol(")");
+        Condition where = acceptWord("WHERE") ? or() : null;
+        return new Statement.Aggregate(table, function, column, where);
+    }
+
+    // ---------- WHERE ----------
+    private Condition or() {
+        Condition c = and();
+        while (acceptWord("OR")) c = new Condition.Or(c, and());
+        return c;
+    }
+
+    private Condition and() {
+        Condition c = atom();
+        while (acceptWord("AND")) c = new Condition.And(c, atom());
+        return c;
+    }
+
+    private Condition atom() {
+        if (acceptSymbol("(")) {
+            Condition c = or();
+            expectSymbol(")");
+            return c;
+        }
+        String column = name("column name");
+        boolean not = acceptWord("NOT");
+        if (acceptWord("IN")) {
+            expectSymbol("(");
+            List<String> raw = new ArrayList<>();
+            List<Object> values = new ArrayList<>();
+            do {
+                Token t = token;
+                Statement.Literal lit = literal();
+                raw.add(lit.quoted() ? t.text() : lit.text());
+                values.add(lit.isParam() ? new Statement.Param(lit.param()) : value(lit));
+            } while (acceptSymbol(","));
+            expectSymbol(")");
+            return new Condition.In(column, raw, values, not);
+        }
+
+        CompareOp op;
+        if (acceptWord("LIKE")) op = not ? CompareOp.NOT_LIKE : CompareOp.LIKE;
+        else if (acceptWord("ILIKE")) op = not ? CompareOp.NOT_ILIKE : CompareOp.ILIKE;
+        else if (not) throw error("IN, LIKE or ILIKE");
+        else if (token.kind() == Token.Kind.SYMBOL && isComparison(token.text())) {
+            op = CompareOp.of(token.text());
+            advance();
+        } else {
+            throw error("comparison operator");
+        }
+        Token t = token;
+        Statement.Literal lit = literal();
+        Object value = lit.isParam() ? new Statement.Param(lit.param()) : value(lit);
+        return new Condition.Comparison(column, op, lit.quoted() ? t.text() : lit.text(), value);
+    }
+
+    private static boolean isComparison(String s) {
+        return switch (s) {
+            case "=", "!=", "<>", "<", "<=", ">", ">=" -> true;
+            default -> false;
+        };
+    }
+
+    // значение литерала без типа колонки: true/false, целое, дробное или строка
+    // (в кавычках тоже: '42' сравнивается с числовой колонкой как число)
+    private static Object value(Statement.Literal lit) {
+        String s = lit.text();
+        if (s.equalsIgnoreCase("true") || s.equalsIgnoreCase("false")) return Boolean.parseBoolean(s);
+        int i = s.startsWith("-") || s.startsWith("+") ? 1 : 0;
+        int digits = 0, dots = 0;
+        for (int k = i; k < s.length(); k++) {
+            char c = s.charAt(k);
+            if (c >= '0' && c <= '9') digits++;
+            else if (c == '.' && dots == 0) dots++;
+            else return s;
+        }
+        if (digits == 0) return s;
+        try {
+            if (dots == 0) return Integer.parseInt(s);
+            if (!s.endsWith(".")) return Double.parseDouble(s);
+        } catch (NumberFormatException ignored) {
+            // не помещается в int — остаётся строкой, как и раньше
+        }
+        return s;
+    }
+
+    // ---------- лексемы ----------
+    private Statement.Literal literal() {
+        Token t = token;
+        switch (t.kind()) {
+            case STRING -> {
+                advance();
+                return new Statement.Literal(t.body(), true);
+            }
+            case NUMBER, WORD -> {
+                advance();
+                return new Statement.Literal(t.text(), false);
+            }
+            case SYMBOL -> {
+                if (t.isSymbol("?")) {
+                    advance();
+                    return new Statement.Literal("?", false, params++);
+                }
+                if (t.isSymbol("-") || t.isSymbol("+")) {
+                    advance();
+                    Token n = token;
+                    if (n.kind() != Token.Kind.NUMBER) throw error("number");
+                    advance();
+                    return new Statement.Literal(t.isSymbol("-") ? "-" + n.text() : n.text(), false);
+                }
+            }
+            default -> { }
+        }
+        throw error("literal");
+    }
+
+    private int nonNegative(String label) {
+        Token t = token;
+        if (t.kind() != Token.Kind.NUMBER) throw new QueryException("Invalid " + label + " value: " + t.text());
+        advance();
+        try {
+            return Integer.parseInt(t.text());
+        } catch (NumberFormatException e) {
+            throw new QueryException("Invalid " + label + " value: " + t.text());
+        }
+    }
+
+    private String name(String what) {
+        Token t = token;
+        if (t.kind() != Token.Kind.WORD) throw error(what);
+        advance();
+        if (!token.isSymbol("-") || token.pos() != end(t)) return t.text();
+        // '-' вплотную к слову: части имени склеиваются, пока идут без пробелов
+        StringBuilder name = new StringBuilder(t.text());
+        Token last = t;
+        while (token.isSymbol("-") && token.pos() == end(last)) {
+            Token dash = token;
+            advance();
+            if ((token.kind() != Token.Kind.WORD && token.kind() != Token.Kind.NUMBER) || token.pos() != end(dash)) {
+                throw error(what);
+            }
+            name.append('-').append(token.text());
+            last = token;
+            advance();
+        }
+        return name.toString();
+    }
+
+    private String string(String what) {
+        Token t = token;
+        if (t.kind() != Token.Kind.STRING) throw error(what + " in single quotes");
+        advance();
+        return t.body();
+    }
+
+    private static int end(Token t) {
+        return t.pos() + t.text().length();
+    }
+
+    private void advance() {
+        token = lexer.next();
+    }
+
+    private boolean acceptWord(String word) {
+        if (!token.isWord(word)) return false;
+        advance();
+        return true;
+    }
+
+    private boolean acceptSymbol(String symbol) {
+        if (!token.isSymbol(symbol)) return false;
+        advance();
+        return true;
+    }
+
+    private void expectWord(String word) {
+        if (!acceptWord(word)) throw error(word);
+    }
+
+    private void expectSymbol(String symbol) {
+        if (!acceptSymbol(symbol)) throw error("'" + symbol + "'");
+    }
+
+    private void end() {
+        acceptSymbol(";");
+        if (token.kind() != Token.Kind.EOF) throw error("end of statement");
+    }
+
+    private QueryException error(String expected) {
+        return new QueryException("Syntax error at position " + token.pos() + ": expected " + expected + ", found " + token);
+    }
+}
@@ -0,0 +1,91 @@
+package Query_Layer;
+
+import core.Column;
+import core.DataType;
+
+import java.util.List;
+import java.util.Map;
+
+// Разобранная SQL-команда; консоль и кэш планов работают с ней, а не с текстом
+public sealed interface Statement {
+
+    record Select(List<String> columns, String table, Condition where,
+                  List<Query.OrderSpec> orderBy, Integer limit, Integer offset) implements Statement {}
+
+    record Insert(String table, List<String> columns, List<List<Literal>> rows) implements Statement {}
+
+    record Update(String table, Map<String, Literal> assignments, Condition where) implements Statement {}
+
+    record Delete(String table, Condition where) implements Statement {}
+
+    record CreateTable(String table, List<Column> columns) implements Statement {}
+
+    record CreateIndex(String name, String table, String column, boolean bitmap) implements Statement {}
+
+    record AddColumn(String table, Column column) implements Statement {}
+
+    record DropTable(String table) implements Statement {}
+
+    record Begin() implements Statement {}
+
+    record Commit() implements Statement {}
+
+    record Rollback() implements Statement {}
+
+    record Vacuum(String table) implements Statement {}
+
+    // ---------- команды консоли: разбираются тем же парсером, исполняет их консоль ----------
+
+    // SET <name> <value>; значение — как написано (ROW, 64M, 0.3, ON)
+    record Setting(String name, String value) implements Statement {}
+
+    record Open(String directory) implements Statement {}
+
+    // directory == null — каталог, открытый ранее
+    record Save(String directory) implements Statement {}
+
+    record Checkpoint(String file) implements Statement {}
+
+    record Restore(String file) implements Statement {}
+
+    // delimiter == null — определяется по заголовку файла
+    record Load(String table, String path, Character delimiter) implements Statement {}
+
+    record Join(String left, String right, String leftColumn, String rightColumn, JoinType type) implements Statement {}
+
+    // column — имя колонки или "*"
+    record Aggregate(String table, String function, String column, Condition where) implements Statement {}
+
+    record Describe(String table) implements Statement {}
+
+    // место параметра ? в подготовленной команде (с нуля, в порядке появления в тексте);
+    // стоит вместо значения в условиях до подстановки
+    record Param(int index) {}
+
+    // литерал значения; тип ему даёт колонка, в которую он пишется. param >= 0 — это параметр ?
+    record Literal(String text, boolean quoted, int param) {
+
+        public Literal(String text, boolean quoted) {
+            this(text, quoted, -1);
+        }
+
+        public boolean isParam() {
+            return param >= 0;
+        }
+
+        public Object as(DataType type) {
+            if (isParam()) throw new QueryException("Parameter " + (param + 1) + " is not bound");
+            if (!quoted && text.equalsIgnoreCase("NULL")) return null;
+            try {
+                return switch (type) {
+                    case STRING -> text;
+                    case INTEGER -> Integer.parseInt(text);
+                    case DOUBLE -> Double.parseDouble(text);
+                    case BOOLEAN -> Boolean.parseBoolean(text);
+                };
+            } catch (NumberFormatException e) {
+                throw new QueryException("Bad " + type + " literal: " + text);
+            }
+        }
+    }
+}
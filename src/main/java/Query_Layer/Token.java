@@ -0,0 +1,37 @@
+package Query_Layer;
+
+import java.util.Locale;
+
+// Лексема SQL: text — исходный фрагмент (у строки — вместе с кавычками), pos — смещение в тексте
+record Token(Kind kind, String text, int pos) {
+
+    enum Kind { WORD, NUMBER, STRING, SYMBOL, EOF }
+
+    boolean is(Kind k, String s) {
+        return kind == k && text.equalsIgnoreCase(s);
+    }
+
+    // ключевые слова не отделяются от имён: слово сравнивается без учёта регистра
+    boolean isWord(String s) {
+        return is(Kind.WORD, s);
+    }
+
+    boolean isSymbol(String s) {
+        return kind == Kind.SYMBOL && text.equals(s);
+    }
+
+    String upper() {
+        return text.toUpperCase(Locale.ROOT);
+    }
+
+    // содержимое строкового литерала без кавычек, '' -> '
+    String body() {
+        String b = text.substring(1, text.length() - 1);
+        return b.indexOf('\'') < 0 ? b : b.replace("''", "'");
+    }
+
+    @Override
+    public String toString() {
+        return kind == Kind.EOF ? "end of statement" : "'" + text + "'";
+    }
+}
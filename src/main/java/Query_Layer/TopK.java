@@ -0,0 +1,84 @@
+package Query_Layer;
+
+import java.util.Arrays;
+
+// Первые k строк в порядке order: двоичная куча не больше k номеров, в вершине — худшая из
+// отобранных, поэтому время O(n log k), а память O(k). Равные по ключу строки упорядочены по
+// номеру: результат не зависит от порядка поступления, и кучи частей таблицы сливаются в одну.
+final class TopK {
+    private final RowComparator order;
+    private final int k;
+    private int[] heap;
+    private int size;
+
+    TopK(RowComparator order, int k) {
+        if (k < 0) throw new IllegalArgumentException("k must be >= 0: " + k);
+        this.order = order;
+        this.k = k;
+        this.heap = new int[Math.min(k, 1024)];
+    }
+
+    void add(int id) {
+        if (size < k) {
+            if (size == heap.length) heap = Arrays.copyOf(heap, (int) Math.min(k, 2L * size));
+            heap[size] = id;
+            siftUp(size++);
+        } else if (k > 0 && compare(id, heap[0]) < 0) {
+            heap[0] = id;
+            siftDown(0, size);
+        }
+    }
+
+    void addAll(TopK other) {
+        for (int i = 0; i < other.size; i++) add(other.heap[i]);
+    }
+
+    int size() {
+        return size;
+    }
+
+    // отобранные номера по порядку; сама куча не меняется
+    int[] sorted() {
+        int[] saved = heap;
+        heap = Arrays.copyOf(saved, size);
+        // пирамидальная сортировка: худший из оставшихся уходит в конец
+        for (int n = size - 1; n > 0; n--) {
+            int top = heap[0];
+            heap[0] = heap[n];
+            heap[n] = top;
+            siftDown(0, n);
+        }
+        int[] out = heap;
+        heap = saved;
+        return out;
+    }
+
+    private int compare(int a, int b) {
+        int c = order.compare(a, b);
+        return c != 0 ? c : Integer.compare(a, b);
+    }
+
+    private void siftUp(int i) {
+        int id = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (compare(id, heap[parent]) <= 0) break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = id;
+    }
+
+    private void siftDown(int i, int n) {
+        int id = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= n) break;
+            if (child + 1 < n && compare(heap[child + 1], heap[child]) > 0) child++;
+            if (compare(heap[child], id) <= 0) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = id;
+    }
+}
@@ -0,0 +1,219 @@
+package Query_Layer;
+
+import core.DataType;
+import core.RowAccessor;
+import core.Table;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Компиляция WHERE в фильтр пакетов. Сравнения чисел сводятся к проверке диапазона
+// lo <= x <= hi (с отрицанием для !=) и идут одним циклом без ветвлений по массиву колонки:
+// смещение пишется в вектор выбора всегда, а счётчик растёт только у подходящей строки.
+// NULL проходит только != и NOT IN, как и в построчном предикате.
+// Словарные строки сравниваются по кодам; остальное проверяется построчным предикатом.
+final class VectorCompiler {
+
+    private VectorCompiler() {}
+
+    static VectorPredicate compile(Condition c, Table table) {
+        return prepare(c, table).apply(PredicateCompiler.NO_ARGS);
+    }
+
+    // как PredicateCompiler.prepare: колонки и типы разрешаются один раз, значения параметров — при подстановке
+    static Function<Object[], VectorPredicate> prepare(Condition c, Table table) {
+        return switch (c) {
+            case Condition.And and -> {
+                Function<Object[], VectorPredicate> l = prepare(and.left(), table), r = prepare(and.right(), table);
+                yield args -> {
+                    VectorPredicate lp = l.apply(args), rp = r.apply(args);
+                    return (b, sel, n) -> {
+                        n = lp.filter(b, sel, n);
+                        return n == 0 ? 0 : rp.filter(b, sel, n);
+                    };
+                };
+            }
+            case Condition.Or or -> {
+                Function<Object[], VectorPredicate> l = prepare(or.left(), table), r = prepare(or.right(), table);
+                yield args -> {
+                    VectorPredicate lp = l.apply(args), rp = r.apply(args);
+                    return (b, sel, n) -> or(b, sel, n, lp, rp);
+                };
+            }
+            case Condition.Comparison cmp -> comparison(cmp, table);
+            case Condition.In in -> in(in, table);
+        };
+    }
+
+    // правая часть проверяется только на строках, не прошедших левую; результаты сливаются по порядку
+    private static int or(Batch b, int[] sel, int n, VectorPredicate l, VectorPredicate r) {
+        int[] left = b.borrow();
+        System.arraycopy(sel, 0, left, 0, n);
+        int nl = l.filter(b, left, n);
+        if (nl == n) {
+            b.release(left);
+            return n;
+        }
+        int[] rest = b.borrow();
+        int nr = 0;
+        for (int j = 0, k = 0; j < n; j++) {
+            if (k < nl && left[k] == sel[j]) k++;
+            else rest[nr++] = sel[j];
+        }
+        nr = r.filter(b, rest, nr);
+        int out = 0, i = 0, k = 0;
+        while (i < nl && k < nr) sel[out++] = left[i] < rest[k] ? left[i++] : rest[k++];
+        while (i < nl) sel[out++] = left[i++];
+        while (k < nr) sel[out++] = rest[k++];
+        b.release(rest);
+        b.release(left);
+        return out;
+    }
+
+    private static Function<Object[], VectorPredicate> comparison(Condition.Comparison cmp, Table table) {
+        int col = table.columnIndex(cmp.column());
+        if (col < 0) return PredicateCompiler.constant((b, sel, n) -> 0);
+        CompareOp op = cmp.op();
+        DataType type = table.getColumns().get(col).getColumnType();
+        if (!op.isLike() && (type == DataType.INTEGER || type == DataType.DOUBLE)) {
+            if (!(cmp.value() instanceof Statement.Param p)) return PredicateCompiler.constant(range(col, type, op, cmp.value()));
+            int index = p.index();
+            return args -> range(col, type, op, PredicateCompiler.arg(args, index));
+        }
+        return byRow(PredicateCompiler.prepare(cmp, table));
+    }
+
+    private static VectorPredicate range(int col, DataType type, CompareOp op, Object v) {
+        if (type == DataType.INTEGER && v instanceof Integer k) return intRange(col, op, k);
+        return doubleRange(col, op, PredicateCompiler.numeric(v));
+    }
+
+    private static VectorPredicate intRange(int col, CompareOp op, int k) {
+        int lo = Integer.MIN_VALUE, hi = Integer.MAX_VALUE;
+        switch (op) {
+            case EQ, NE -> lo = hi = k;
+            case GE -> lo = k;
+            case LE -> hi = k;
+            case GT -> {
+                if (k == Integer.MAX_VALUE) return (b, sel, n) -> 0;
+                lo = k + 1;
+            }
+            case LT -> {
+                if (k == Integer.MIN_VALUE) return (b, sel, n) -> 0;
+                hi = k - 1;
+            }
+            default -> throw new QueryException(op + " needs a STRING column");
+        }
+        int from = lo, to = hi;
+        boolean negate = op == CompareOp.NE;
+        return (b, sel, n) -> {
+            int[] v = b.ints(col);
+            boolean[] nulls = b.nulls(col);
+            int out = 0;
+            for (int j = 0; j < n; j++) {
+                int i = sel[j], x = v[i];
+                sel[out] = i;
+                out += (((x >= from & x <= to) != negate) & !nulls[i]) | (negate & nulls[i]) ? 1 : 0;
+            }
+            return out;
+        };
+    }
+
+    // double переводится в long с тем же порядком, что у Double.compare (NaN — наибольшее)
+    private static VectorPredicate doubleRange(int col, CompareOp op, double k) {
+        long key = sortable(k), lo = Long.MIN_VALUE, hi = Long.MAX_VALUE;
+        switch (op) {
+            case EQ, NE -> lo = hi = key;
+            case GE -> lo = key;
+            case LE -> hi = key;
+            case GT -> {
+                if (key == Long.MAX_VALUE) return (b, sel, n) -> 0;
+                lo = key + 1;
+            }
+            case LT -> {
+                if (key == Long.MIN_VALUE) return (b, sel, n) -> 0;
+                hi = key - 1;
+            }
+            default -> throw new QueryException(op + " needs a STRING column");
+        }
+        long from = lo, to = hi;
+        boolean negate = op == CompareOp.NE;
+        return (b, sel, n) -> {
+            double[] v = b.doubles(col);
+            boolean[] nulls = b.nulls(col);
+            int out = 0;
+            for (int j = 0; j < n; j++) {
+                int i = sel[j];
+                long x = sortable(v[i]);
+                sel[out] = i;
+                out += (((x >= from & x <= to) != negate) & !nulls[i]) | (negate & nulls[i]) ? 1 : 0;
+            }
+            return out;
+        };
+    }
+
+    static long sortable(double d) {
+        long bits = Double.doubleToLongBits(d);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    private static Function<Object[], VectorPredicate> in(Condition.In in, Table table) {
+        int col = table.columnIndex(in.column());
+        if (col < 0) return PredicateCompiler.constant((b, sel, n) -> 0);
+        DataType type = table.getColumns().get(col).getColumnType();
+        if (type != DataType.INTEGER && type != DataType.DOUBLE) return byRow(PredicateCompiler.prepare(in, table));
+        boolean negate = in.negate();
+        Function<Object[], List<Object>> values = PredicateCompiler.inValues(in, type);
+        if (!PredicateCompiler.hasParams(in)) {
+            return PredicateCompiler.constant(in(col, type, negate, values.apply(PredicateCompiler.NO_ARGS)));
+        }
+        return args -> in(col, type, negate, values.apply(args));
+    }
+
+    private static VectorPredicate in(int col, DataType type, boolean negate, List<Object> values) {
+        if (type == DataType.INTEGER && values.stream().allMatch(v -> v instanceof Integer)) {
+            int[] keys = values.stream().mapToInt(v -> (Integer) v).sorted().toArray();
+            return (b, sel, n) -> {
+                int[] v = b.ints(col);
+                boolean[] nulls = b.nulls(col);
+                int out = 0;
+                for (int j = 0; j < n; j++) {
+                    int i = sel[j];
+                    sel[out] = i;
+                    out += (nulls[i] ? negate : (Arrays.binarySearch(keys, v[i]) >= 0) != negate) ? 1 : 0;
+                }
+                return out;
+            };
+        }
+        double[] keys = values.stream().mapToDouble(PredicateCompiler::numeric).sorted().toArray();
+        return (b, sel, n) -> {
+            double[] v = b.doubles(col);
+            boolean[] nulls = b.nulls(col);
+            int out = 0;
+            for (int j = 0; j < n; j++) {
+                int i = sel[j];
+                sel[out] = i;
+                out += (nulls[i] ? negate : (Arrays.binarySearch(keys, v[i]) >= 0) != negate) ? 1 : 0;
+            }
+            return out;
+        };
+    }
+
+    // словарный предикат умеет работать с пакетом сам, прочие проверяются по строке
+    private static Function<Object[], VectorPredicate> byRow(Function<Object[], Predicate<RowAccessor>> prepared) {
+        return args -> rows(prepared.apply(args));
+    }
+
+    private static VectorPredicate rows(Predicate<RowAccessor> p) {
+        if (p instanceof VectorPredicate v) return v;
+        return (b, sel, n) -> {
+            int out = 0;
+            for (int j = 0; j < n; j++) {
+                if (p.test(b.row(sel[j]))) sel[out++] = sel[j];
+            }
+            return out;
+        };
+    }
+}
@@ -0,0 +1,8 @@
+package Query_Layer;
+
+// Фильтр пакета: оставляет в sel[0, n) только подходящие строки, сохраняя порядок,
+// и возвращает их число
+@FunctionalInterface
+interface VectorPredicate {
+    int filter(Batch batch, int[] sel, int n);
+}
@@ -0,0 +1,67 @@
+package core;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+// Битмап-индекс: на каждое значение колонки — сжатое множество номеров строк.
+// Рассчитан на BOOLEAN и колонки с небольшим числом различных значений.
+public class BitmapIndex extends SecondaryIndex {
+    private final Map<Object, RoaringBitmap> bitmaps = new HashMap<>();
+    private final RoaringBitmap nulls = new RoaringBitmap();
+
+    BitmapIndex(String name, int column, DataType type) {
+        super(name, column, type);
+    }
+
+    public int distinctValues() {
+        return bitmaps.size();
+    }
+
+    // строки с данным ключом; пустой битмап, если таких нет
+    public RoaringBitmap equalTo(Object key) {
+        RoaringBitmap b = bitmaps.get(key);
+        return b == null ? new RoaringBitmap() : b.copy();
+    }
+
+    // строки со значением, отличным от всех ключей, включая строки с NULL
+    public RoaringBitmap notIn(Collection<?> keys) {
+        RoaringBitmap out = nulls.copy();
+        for (Map.Entry<Object, RoaringBitmap> e : bitmaps.entrySet()) {
+            if (!keys.contains(e.getKey())) out = out.or(e.getValue());
+        }
+        return out;
+    }
+
+    public RoaringBitmap nullRows() {
+        return nulls.copy();
+    }
+
+    @Override
+    void add(RowAccessor row, int rowId) {
+        if (row.isNull(column)) {
+            nulls.add(rowId);
+            return;
+        }
+        bitmaps.computeIfAbsent(read(row), k -> new RoaringBitmap()).add(rowId);
+    }
+
+    @Override
+    void remove(RowAccessor row, int rowId) {
+        if (row.isNull(column)) {
+            nulls.remove(rowId);
+            return;
+        }
+        Object key = read(row);
+        RoaringBitmap b = bitmaps.get(key);
+        if (b == null) return;
+        b.remove(rowId);
+        if (b.isEmpty()) bitmaps.remove(key);
+    }
+
+    @Override
+    void clear() {
+        bitmaps.clear();
+        nulls.clear();
+    }
+}
@@ -0,0 +1,154 @@
+package core;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+// Каталог базы на диске: catalog.db со схемами таблиц, именами их файлов и определениями индексов.
+// Таблицы пишутся в новые файлы, каталог — во временный с атомарным переименованием,
+// так что прерванное сохранение оставляет прежнюю версию базы целой. Индексы хранятся только
+// определениями и заполняются при первом обращении, чтобы открытие не читало все страницы.
+final class Catalog {
+    static final String CATALOG_FILE = "catalog.db";
+    static final String TABLE_SUFFIX = ".tbl";
+    private static final int MAGIC = 0x53514C43; // "SQLC"
+    private static final int VERSION = 2;
+
+    private Catalog() {}
+
+    static boolean exists(Path dir) {
+        return Files.isRegularFile(dir.resolve(CATALOG_FILE));
+    }
+
+    // поколение снимка: журнал изменений того же поколения дополняет его, журнал старого уже учтён
+    static long generation(Path dir) throws IOException {
+        if (!exists(dir)) return 0;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(dir.resolve(CATALOG_FILE)))) {
+            return readHeader(in, dir);
+        }
+    }
+
+    private static long readHeader(DataInputStream in, Path dir) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not a catalog file in " + dir);
+        int version = in.readInt();
+        if (version != VERSION) throw new IOException("Unsupported catalog version " + version);
+        return in.readLong();
+    }
+
+    static Map<String, Table> load(Path dir, long memoryLimit) throws IOException {
+        Map<String, Table> tables = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(dir.resolve(CATALOG_FILE))))) {
+            readHeader(in, dir);
+
+            int count = in.readInt();
+            for (int t = 0; t < count; t++) readTable(in, dir, memoryLimit, tables);
+        } catch (IOException | RuntimeException e) {
+            tables.values().forEach(Table::close);
+            throw e;
+        }
+        return tables;
+    }
+
+    private static void readTable(DataInputStream in, Path dir, long memoryLimit, Map<String, Table> tables)
+            throws IOException {
+        String name = in.readUTF();
+        String fileName = in.readUTF();
+        StorageMode mode = StorageMode.valueOf(in.readUTF());
+        int columnCount = in.readInt();
+        List<Column> columns = new ArrayList<>(columnCount);
+        for (int c = 0; c < columnCount; c++) {
+            Column col = new Column(in.readUTF(), DataType.valueOf(in.readUTF()));
+            col.setPrimaryKey(in.readBoolean());
+            columns.add(col);
+        }
+        TableFile file = TableFile.open(dir.resolve(fileName));
+        Table table;
+        try {
+            table = new Table(name, columns, mode, memoryLimit, file);
+        } catch (RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        tables.put(name, table);
+
+        int indexCount = in.readInt();
+        for (int i = 0; i < indexCount; i++) {
+            String indexName = in.readUTF();
+            String column = in.readUTF();
+            table.declareIndex(indexName, column, in.readBoolean());
+        }
+    }
+
+    static void save(Path dir, Collection<Table> tables, long generation) throws IOException {
+        Files.createDirectories(dir);
+        Map<Table, String> files = new HashMap<>();
+        for (Table t : tables) {
+            Path mapped = t.unchangedFile();
+            if (mapped != null && dir.equals(mapped.getParent())) {
+                files.put(t, mapped.getFileName().toString());
+                continue;
+            }
+            // каждый раз новый файл: старый остаётся целым, пока на него ссылается прежний каталог
+            Path file;
+            int n = 1;
+            do {
+                file = dir.resolve(t.getTableName() + "-" + n++ + TABLE_SUFFIX);
+            } while (Files.exists(file));
+            TableFile.write(t, file);
+            files.put(t, file.getFileName().toString());
+        }
+
+        // каталог и файлы таблиц доходят до диска раньше, чем каталог начинает на них ссылаться
+        Path tmp = dir.resolve(CATALOG_FILE + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(generation);
+            out.writeInt(tables.size());
+            for (Table t : tables) {
+                out.writeUTF(t.getTableName());
+                out.writeUTF(files.get(t));
+                out.writeUTF(t.getStorageMode().name());
+                out.writeInt(t.getColumns().size());
+                for (Column c : t.getColumns()) {
+                    out.writeUTF(c.getColumnName());
+                    out.writeUTF(c.getColumnType().name());
+                    out.writeBoolean(c.isPrimaryKey());
+                }
+                Collection<SecondaryIndex> indexes = t.declaredIndexes();
+                out.writeInt(indexes.size());
+                for (SecondaryIndex idx : indexes) {
+                    out.writeUTF(idx.getName());
+                    out.writeUTF(t.getColumns().get(idx.getColumn()).getColumnName());
+                    out.writeBoolean(idx instanceof BitmapIndex);
+                }
+            }
+            out.flush();
+            ch.force(true);
+        }
+        syncDirectory(dir);
+        Files.move(tmp, dir.resolve(CATALOG_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(dir);
+
+        // прежние версии файлов и файлы удалённых таблиц
+        Set<String> keep = new HashSet<>(files.values());
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(dir, "*" + TABLE_SUFFIX)) {
+            for (Path f : stale) {
+                if (!keep.contains(f.getFileName().toString())) Files.delete(f);
+            }
+        }
+    }
+
+    // записи каталога о новых файлах и переименовании; в Windows каталог не открывается как файл
+    private static void syncDirectory(Path dir) throws IOException {
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (AccessDeniedException ignored) {
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package core;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+// Контрольная точка: вся база одним файлом — схемы, флаги ключей, определения индексов и данные
+// колонок типизированными массивами. В отличие от каталога с файлами таблиц, здесь нет страниц:
+// колонки лежат блоками по BLOCK_ROWS строк ([биты NULL][значения]), и при восстановлении блок
+// копируется в массив одним вызовом, без разбора строк и вывода типов, как у CSV.
+//
+// Файл: MAGIC, VERSION, число таблиц; таблица — имя, режим хранения, колонки (имя, тип, ключ),
+// индексы (имя, номер колонки, bitmap), число строк, затем колонки по очереди. Порядок байт little-endian.
+final class Checkpoint {
+    private static final int MAGIC = 0x53514C4B; // "SQLK"
+    private static final int VERSION = 1;
+    private static final int BLOCK_ROWS = 64 * 1024;
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private final FileChannel channel;
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+    private long rowsWritten;
+
+    private Checkpoint(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    // пишет снимки во временный файл рядом с целевым и атомарно подменяет его; возвращает число строк
+    static long write(List<TableSnapshot> tables, Path file) throws IOException {
+        Path target = file.toAbsolutePath().normalize();
+        if (target.getParent() != null) Files.createDirectories(target.getParent());
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        long rows;
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Checkpoint out = new Checkpoint(ch);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(tables.size());
+            for (TableSnapshot t : tables) out.writeTable(t);
+            out.drain();
+            ch.force(true);
+            rows = out.rowsWritten;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return rows;
+    }
+
+    static Map<String, Table> read(Path file, long memoryLimit) throws IOException {
+        Map<String, Table> tables = new LinkedHashMap<>();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+             Arena arena = Arena.ofConfined()) {
+            Reader in = new Reader(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size(), arena), file);
+            if (in.segment.byteSize() < 12 || in.nextInt() != MAGIC) throw new IOException("Not a checkpoint file: " + file);
+            int version = in.nextInt();
+            if (version != VERSION) throw new IOException("Unsupported checkpoint version " + version);
+            int count = in.nextInt();
+            for (int t = 0; t < count; t++) {
+                Table table = readTable(in, memoryLimit);
+                tables.put(table.getTableName(), table);
+            }
+        } catch (IOException | RuntimeException e) {
+            tables.values().forEach(Table::close);
+            if (e instanceof IndexOutOfBoundsException) throw new IOException("Truncated checkpoint file: " + file, e);
+            throw e;
+        }
+        return tables;
+    }
+
+    private void writeTable(TableSnapshot t) throws IOException {
+        putString(t.name());
+        putString(t.mode().name());
+        putInt(t.columns().size());
+        for (Column c : t.columns()) {
+            putString(c.getColumnName());
+            putInt(c.getColumnType().ordinal());
+            putInt(c.isPrimaryKey() ? 1 : 0);
+        }
+        putInt(t.indexes().size());
+        for (SecondaryIndex idx : t.indexes()) {
+            putString(idx.getName());
+            putInt(idx.getColumn());
+            putInt(idx instanceof BitmapIndex ? 1 : 0);
+        }
+        int rows = t.rows();
+        putInt(rows);
+        for (int c = 0; c < t.columns().size(); c++) {
+            for (int from = 0; from < rows; from += BLOCK_ROWS) {
+                int to = Math.min(rows, from + BLOCK_ROWS);
+                BitSet nulls = new BitSet(to - from);
+                Object values = t.values(c, from, to, nulls);
+                putLongs(Arrays.copyOf(nulls.toLongArray(), words(to - from)));
+                switch (values) {
+                    case int[] a -> putInts(a, a.length);
+                    case double[] a -> putDoubles(a);
+                    case boolean[] a -> {
+                        BitSet bits = new BitSet(a.length);
+                        for (int i = 0; i < a.length; i++) if (a[i]) bits.set(i);
+                        putLongs(Arrays.copyOf(bits.toLongArray(), words(a.length)));
+                    }
+                    case String[] a -> {
+                        // смещения строк в общем массиве байт, затем сами байты
+                        byte[][] encoded = new byte[a.length][];
+                        int[] offsets = new int[a.length + 1];
+                        for (int i = 0; i < a.length; i++) {
+                            encoded[i] = a[i] == null ? new byte[0] : a[i].getBytes(StandardCharsets.UTF_8);
+                            offsets[i + 1] = offsets[i] + encoded[i].length;
+                        }
+                        putInts(offsets, offsets.length);
+                        for (byte[] b : encoded) putBytes(b);
+                    }
+                    default -> throw new IllegalStateException("Unexpected column block " + values.getClass());
+                }
+            }
+        }
+        rowsWritten += rows;
+    }
+
+    private static Table readTable(Reader in, long memoryLimit) throws IOException {
+        String name = in.nextString();
+        StorageMode mode = StorageMode.valueOf(in.nextString());
+        int columnCount = in.nextInt();
+        List<Column> columns = new ArrayList<>(columnCount);
+        for (int c = 0; c < columnCount; c++) {
+            String columnName = in.nextString();
+            int type = in.nextInt();
+            if (type < 0 || type >= DataType.values().length) throw new IOException("Bad column type " + type + " in " + in.file);
+            Column col = new Column(columnName, DataType.values()[type]);
+            col.setPrimaryKey(in.nextInt() != 0);
+            columns.add(col);
+        }
+        int indexCount = in.nextInt();
+        String[] indexNames = new String[indexCount];
+        int[] indexColumns = new int[indexCount];
+        boolean[] bitmap = new boolean[indexCount];
+        for (int i = 0; i < indexCount; i++) {
+            indexNames[i] = in.nextString();
+            indexColumns[i] = in.nextInt();
+            bitmap[i] = in.nextInt() != 0;
+        }
+        int rows = in.nextInt();
+        if (rows < 0) throw new IOException("Bad row count " + rows + " in " + in.file);
+
+        // колонки целиком в массивы, затем строки собираются из массивов и кладутся в хранилище
+        Object[] data = new Object[columnCount];
+        long[][] nulls = new long[columnCount][];
+        for (int c = 0; c < columnCount; c++) {
+            nulls[c] = new long[words(rows)];
+            data[c] = switch (columns.get(c).getColumnType()) {
+                case INTEGER -> new int[rows];
+                case DOUBLE -> new double[rows];
+                case BOOLEAN -> new long[words(rows)];
+                case STRING -> new String[rows];
+            };
+            for (int from = 0; from < rows; from += BLOCK_ROWS) {
+                int n = Math.min(rows - from, BLOCK_ROWS);
+                in.longs(nulls[c], from / 64, words(n));
+                switch (data[c]) {
+                    case int[] a -> in.ints(a, from, n);
+                    case double[] a -> in.doubles(a, from, n);
+                    case long[] a -> in.longs(a, from / 64, words(n));
+                    case String[] a -> in.strings(a, from, n);
+                    default -> throw new IllegalStateException();
+                }
+            }
+        }
+
+        Table table = new Table(name, columns, mode, memoryLimit);
+        try {
+            table.bulkLoad(rows, r -> {
+                Value<?>[] vs = new Value<?>[columnCount];
+                for (int c = 0; c < columnCount; c++) {
+                    DataType type = columns.get(c).getColumnType();
+                    boolean isNull = (nulls[c][r >>> 6] & (1L << r)) != 0;
+                    vs[c] = Value.of(isNull ? null : switch (data[c]) {
+                        case int[] a -> a[r];
+                        case double[] a -> a[r];
+                        case long[] a -> (a[r >>> 6] & (1L << r)) != 0;
+                        case String[] a -> a[r];
+                        default -> throw new IllegalStateException();
+                    }, type);
+                }
+                return vs;
+            });
+            for (int i = 0; i < indexCount; i++) {
+                if (indexColumns[i] < 0 || indexColumns[i] >= columnCount) {
+                    throw new IOException("Index " + indexNames[i] + " refers to missing column in " + in.file);
+                }
+                String column = columns.get(indexColumns[i]).getColumnName();
+                if (bitmap[i]) table.createBitmapIndex(indexNames[i], column);
+                else table.createIndex(indexNames[i], column);
+            }
+        } catch (IOException | RuntimeException e) {
+            table.close();
+            throw e;
+        }
+        return table;
+    }
+
+    private static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    private void room(int bytes) throws IOException {
+        if (buf.remaining() < bytes) drain();
+    }
+
+    private void drain() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) channel.write(buf);
+        buf.clear();
+    }
+
+    private void putInt(int v) throws IOException {
+        room(4);
+        buf.putInt(v);
+    }
+
+    private void putInts(int[] a, int n) throws IOException {
+        for (int i = 0; i < n; ) {
+            room(4);
+            int k = Math.min(n - i, buf.remaining() / 4);
+            IntBuffer view = buf.asIntBuffer();
+            view.put(a, i, k);
+            buf.position(buf.position() + 4 * k);
+            i += k;
+        }
+    }
+
+    private void putDoubles(double[] a) throws IOException {
+        for (int i = 0; i < a.length; ) {
+            room(8);
+            int k = Math.min(a.length - i, buf.remaining() / 8);
+            buf.asDoubleBuffer().put(a, i, k);
+            buf.position(buf.position() + 8 * k);
+            i += k;
+        }
+    }
+
+    private void putLongs(long[] a) throws IOException {
+        for (long v : a) {
+            room(8);
+            buf.putLong(v);
+        }
+    }
+
+    private void putBytes(byte[] b) throws IOException {
+        for (int i = 0; i < b.length; ) {
+            room(1);
+            int k = Math.min(b.length - i, buf.remaining());
+            buf.put(b, i, k);
+            i += k;
+        }
+    }
+
+    private void putString(String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        putInt(b.length);
+        putBytes(b);
+    }
+
+    // последовательное чтение отображённого файла; массивы копируются из него целиком
+    private static final class Reader {
+        final MemorySegment segment;
+        final Path file;
+        long pos;
+
+        Reader(MemorySegment segment, Path file) {
+            this.segment = segment;
+            this.file = file;
+        }
+
+        int nextInt() {
+            int v = segment.get(INT, pos);
+            pos += 4;
+            return v;
+        }
+
+        String nextString() throws IOException {
+            int n = nextInt();
+            if (n < 0 || n > segment.byteSize() - pos) throw new IOException("Bad string length in " + file);
+            byte[] b = new byte[n];
+            MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, pos, b, 0, n);
+            pos += n;
+            return new String(b, StandardCharsets.UTF_8);
+        }
+
+        void ints(int[] dst, int at, int n) {
+            MemorySegment.copy(segment, INT, pos, dst, at, n);
+            pos += 4L * n;
+        }
+
+        void doubles(double[] dst, int at, int n) {
+            MemorySegment.copy(segment, DOUBLE, pos, dst, at, n);
+            pos += 8L * n;
+        }
+
+        void longs(long[] dst, int at, int n) {
+            MemorySegment.copy(segment, LONG, pos, dst, at, n);
+            pos += 8L * n;
+        }
+
+        void strings(String[] dst, int at, int n) throws IOException {
+            int[] offsets = new int[n + 1];
+            ints(offsets, 0, n + 1);
+            int total = offsets[n];
+            if (total < 0 || total > segment.byteSize() - pos) throw new IOException("Bad string block in " + file);
+            byte[] bytes = new byte[total];
+            MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, pos, bytes, 0, total);
+            pos += total;
+            for (int i = 0; i < n; i++) dst[at + i] = new String(bytes, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+        }
+    }
+}
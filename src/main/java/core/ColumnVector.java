@@ -0,0 +1,310 @@
+package core;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+abstract class ColumnVector {
+    private static final int INITIAL_CAPACITY = 64;
+
+    protected long[] nulls = new long[1];
+    protected int size;
+
+    static ColumnVector of(DataType type) {
+        return switch (type) {
+            case INTEGER -> new IntVector();
+            case DOUBLE -> new DoubleVector();
+            case BOOLEAN -> new BooleanVector();
+            case STRING -> new StringVector();
+        };
+    }
+
+    abstract DataType type();
+
+    abstract int capacity();
+
+    protected abstract void resize(int capacity);
+
+    protected abstract void setNonNull(int row, Object value);
+
+    protected abstract Object getNonNull(int row);
+
+    protected abstract void move(int from, int to);
+
+    int size() {
+        return size;
+    }
+
+    boolean isNull(int row) {
+        return (nulls[row >>> 6] & (1L << row)) != 0;
+    }
+
+    private void markNull(int row, boolean isNull) {
+        if (isNull) nulls[row >>> 6] |= 1L << row;
+        else nulls[row >>> 6] &= ~(1L << row);
+    }
+
+    void append(Object value) {
+        if (size == capacity()) {
+            int cap = Math.max(INITIAL_CAPACITY, size * 2);
+            resize(cap);
+            nulls = Arrays.copyOf(nulls, (cap + 63) >>> 6);
+        }
+        set(size++, value);
+    }
+
+    void appendNulls(int count) {
+        for (int i = 0; i < count; i++) append(null);
+    }
+
+    void set(int row, Object value) {
+        markNull(row, value == null);
+        if (value != null) setNonNull(row, value);
+    }
+
+    Object get(int row) {
+        return isNull(row) ? null : getNonNull(row);
+    }
+
+    // ячейка как Value; примитивные столбцы берут частые значения из кэша без упаковки
+    Value<?> value(int row) {
+        return Value.of(get(row), type());
+    }
+
+    int getInt(int row) {
+        throw new UnsupportedOperationException(type() + " column has no int accessor");
+    }
+
+    double getDouble(int row) {
+        throw new UnsupportedOperationException(type() + " column has no double accessor");
+    }
+
+    boolean getBoolean(int row) {
+        throw new UnsupportedOperationException(type() + " column has no boolean accessor");
+    }
+
+    String getString(int row) {
+        Object o = get(row);
+        return o == null ? null : String.valueOf(o);
+    }
+
+    // слово битовой карты без NULL заполняется целиком
+    void readNulls(int from, int length, boolean[] out) {
+        for (int i = 0; i < length; ) {
+            int row = from + i;
+            long word = nulls[row >>> 6];
+            int n = Math.min(length - i, 64 - (row & 63));
+            if (word == 0) {
+                Arrays.fill(out, i, i + n, false);
+            } else {
+                for (int k = 0; k < n; k++) out[i + k] = (word & (1L << (row + k))) != 0;
+            }
+            i += n;
+        }
+    }
+
+    void readInts(int from, int length, int[] out) {
+        for (int i = 0; i < length; i++) out[i] = isNull(from + i) ? 0 : getInt(from + i);
+    }
+
+    void readDoubles(int from, int length, double[] out) {
+        for (int i = 0; i < length; i++) out[i] = isNull(from + i) ? 0 : getDouble(from + i);
+    }
+
+    void readCodes(int from, int length, int[] out) {
+        for (int i = 0; i < length; i++) out[i] = getCode(from + i);
+    }
+
+    StringDictionary dictionary() {
+        return null;
+    }
+
+    int getCode(int row) {
+        return StringDictionary.NO_CODE;
+    }
+
+    void remove(BitSet removed) {
+        int w = 0;
+        for (int r = 0; r < size; r++) {
+            if (removed.get(r)) continue;
+            if (w != r) {
+                boolean isNull = isNull(r);
+                if (!isNull) move(r, w);
+                markNull(w, isNull);
+            }
+            w++;
+        }
+        for (int r = w; r < size; r++) markNull(r, false);
+        size = w;
+    }
+
+    static final class IntVector extends ColumnVector {
+        private int[] data = new int[0];
+
+        @Override DataType type() { return DataType.INTEGER; }
+        @Override int capacity() { return data.length; }
+        @Override protected void resize(int capacity) { data = Arrays.copyOf(data, capacity); }
+        @Override protected void setNonNull(int row, Object value) { data[row] = ((Number) value).intValue(); }
+        @Override protected Object getNonNull(int row) { return data[row]; }
+        @Override protected void move(int from, int to) { data[to] = data[from]; }
+        @Override int getInt(int row) { return data[row]; }
+        @Override double getDouble(int row) { return data[row]; }
+        @Override Value<?> value(int row) { return isNull(row) ? Value.nullOf(DataType.INTEGER) : Value.ofInt(data[row]); }
+        @Override void readInts(int from, int length, int[] out) { System.arraycopy(data, from, out, 0, length); }
+
+        @Override
+        void readDoubles(int from, int length, double[] out) {
+            for (int i = 0; i < length; i++) out[i] = data[from + i];
+        }
+    }
+
+    static final class DoubleVector extends ColumnVector {
+        private double[] data = new double[0];
+
+        @Override DataType type() { return DataType.DOUBLE; }
+        @Override int capacity() { return data.length; }
+        @Override protected void resize(int capacity) { data = Arrays.copyOf(data, capacity); }
+        @Override protected void setNonNull(int row, Object value) { data[row] = ((Number) value).doubleValue(); }
+        @Override protected Object getNonNull(int row) { return data[row]; }
+        @Override protected void move(int from, int to) { data[to] = data[from]; }
+        @Override double getDouble(int row) { return data[row]; }
+        @Override Value<?> value(int row) { return isNull(row) ? Value.nullOf(DataType.DOUBLE) : Value.ofDouble(data[row]); }
+        @Override void readDoubles(int from, int length, double[] out) { System.arraycopy(data, from, out, 0, length); }
+    }
+
+    // значения упакованы по 64 в long
+    static final class BooleanVector extends ColumnVector {
+        private long[] bits = new long[0];
+        private int capacity;
+
+        @Override DataType type() { return DataType.BOOLEAN; }
+        @Override int capacity() { return capacity; }
+
+        @Override
+        protected void resize(int capacity) {
+            bits = Arrays.copyOf(bits, (capacity + 63) >>> 6);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected void setNonNull(int row, Object value) {
+            if ((Boolean) value) bits[row >>> 6] |= 1L << row;
+            else bits[row >>> 6] &= ~(1L << row);
+        }
+
+        @Override protected Object getNonNull(int row) { return getBoolean(row); }
+        @Override protected void move(int from, int to) { setNonNull(to, getBoolean(from)); }
+        @Override boolean getBoolean(int row) { return (bits[row >>> 6] & (1L << row)) != 0; }
+        @Override Value<?> value(int row) { return isNull(row) ? Value.nullOf(DataType.BOOLEAN) : Value.ofBoolean(getBoolean(row)); }
+    }
+
+    // Строки кодируются словарём, пока на первых SAMPLE_ROWS строках мало различных значений.
+    // Словарь, коды и значения публикуются вместе одной ссылкой: читатель без блокировок берёт
+    // их за одно чтение и не видит колонку посреди перехода от кодов к строкам.
+    static final class StringVector extends ColumnVector {
+        static final int SAMPLE_ROWS = 4096;
+
+        private record Encoding(StringDictionary dictionary, int[] codes, String[] data) {}
+
+        private volatile Encoding enc = new Encoding(new StringDictionary(), new int[0], null);
+
+        @Override DataType type() { return DataType.STRING; }
+
+        @Override
+        int capacity() {
+            Encoding e = enc;
+            return e.dictionary() != null ? e.codes().length : e.data().length;
+        }
+
+        @Override
+        protected void resize(int capacity) {
+            Encoding e = enc;
+            enc = e.dictionary() != null
+                    ? new Encoding(e.dictionary(), Arrays.copyOf(e.codes(), capacity), null)
+                    : new Encoding(null, null, Arrays.copyOf(e.data(), capacity));
+        }
+
+        @Override
+        protected void setNonNull(int row, Object value) {
+            Encoding e = enc;
+            if (e.dictionary() != null) e.codes()[row] = e.dictionary().encode((String) value);
+            else e.data()[row] = (String) value;
+        }
+
+        @Override
+        protected Object getNonNull(int row) {
+            Encoding e = enc;
+            return e.dictionary() != null ? e.dictionary().get(e.codes()[row]) : e.data()[row];
+        }
+
+        @Override
+        protected void move(int from, int to) {
+            Encoding e = enc;
+            if (e.dictionary() != null) e.codes()[to] = e.codes()[from];
+            else e.data()[to] = e.data()[from];
+        }
+
+        @Override
+        String getString(int row) {
+            return isNull(row) ? null : (String) getNonNull(row);
+        }
+
+        @Override
+        StringDictionary dictionary() {
+            return enc.dictionary();
+        }
+
+        // после перехода к строкам кодов нет: читатель сравнивает сами строки
+        @Override
+        void readCodes(int from, int length, int[] out) {
+            Encoding e = enc;
+            if (e.dictionary() == null) {
+                Arrays.fill(out, 0, length, StringDictionary.NO_CODE);
+                return;
+            }
+            System.arraycopy(e.codes(), from, out, 0, length);
+            for (int i = 0; i < length; i++) {
+                int row = from + i;
+                if ((nulls[row >>> 6] & (1L << row)) != 0) out[i] = -1;
+            }
+        }
+
+        @Override
+        int getCode(int row) {
+            Encoding e = enc;
+            if (isNull(row)) return -1;
+            return e.dictionary() != null ? e.codes()[row] : StringDictionary.NO_CODE;
+        }
+
+        @Override
+        void append(Object value) {
+            super.append(value);
+            Encoding e = enc;
+            if (e.dictionary() != null && size == SAMPLE_ROWS && e.dictionary().size() > SAMPLE_ROWS / 2) decode(e);
+        }
+
+        @Override
+        void set(int row, Object value) {
+            super.set(row, value);
+            String[] data = enc.data();
+            if (value == null && data != null) data[row] = null;
+        }
+
+        @Override
+        void remove(BitSet removed) {
+            int before = size;
+            super.remove(removed);
+            String[] data = enc.data();
+            if (data != null) Arrays.fill(data, size, before, null);
+        }
+
+        // читатели, взявшие прежнюю ссылку, дочитывают по старым кодам: словарь и коды не меняются
+        private void decode(Encoding e) {
+            String[] data = new String[e.codes().length];
+            for (int r = 0; r < size; r++) {
+                if (!isNull(r)) data[r] = e.dictionary().get(e.codes()[r]);
+            }
+            enc = new Encoding(null, null, data);
+            e.dictionary().retire();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package core;
+
+import java.util.*;
+
+final class ColumnarStorage implements TableStorage {
+    private final Schema schema;
+    private final List<ColumnVector> vectors = new ArrayList<>();
+    private int size;
+
+    ColumnarStorage(Schema schema) {
+        this.schema = schema;
+        for (Column c : schema.getColumns()) vectors.add(ColumnVector.of(c.getColumnType()));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void append(Value<?>[] values) {
+        for (int i = 0; i < vectors.size(); i++) {
+            vectors.get(i).append(values[i] == null ? null : values[i].get());
+        }
+        size++;
+    }
+
+    @Override
+    public Value<?> get(int row, int column) {
+        return vector(row, column).value(row);
+    }
+
+    @Override
+    public void set(int row, int column, Value<?> value) {
+        vector(row, column).set(row, value == null ? null : value.get());
+    }
+
+    @Override
+    public boolean isNull(int row, int column) {
+        return vector(row, column).isNull(row);
+    }
+
+    @Override
+    public int getInt(int row, int column) {
+        return vector(row, column).getInt(row);
+    }
+
+    @Override
+    public double getDouble(int row, int column) {
+        return vector(row, column).getDouble(row);
+    }
+
+    @Override
+    public boolean getBoolean(int row, int column) {
+        return vector(row, column).getBoolean(row);
+    }
+
+    @Override
+    public String getString(int row, int column) {
+        return vector(row, column).getString(row);
+    }
+
+    @Override
+    public StringDictionary dictionary(int column) {
+        return vectors.get(column).dictionary();
+    }
+
+    @Override
+    public int getCode(int row, int column) {
+        return vector(row, column).getCode(row);
+    }
+
+    @Override
+    public void readNulls(int column, int from, int length, boolean[] nulls) {
+        range(from, length).get(column).readNulls(from, length, nulls);
+    }
+
+    @Override
+    public void readInts(int column, int from, int length, int[] out) {
+        range(from, length).get(column).readInts(from, length, out);
+    }
+
+    @Override
+    public void readDoubles(int column, int from, int length, double[] out) {
+        range(from, length).get(column).readDoubles(from, length, out);
+    }
+
+    @Override
+    public void readCodes(int column, int from, int length, int[] out) {
+        range(from, length).get(column).readCodes(from, length, out);
+    }
+
+    @Override
+    public Row getRow(int row) {
+        Value<?>[] vs = new Value<?>[vectors.size()];
+        for (int i = 0; i < vs.length; i++) vs[i] = get(row, i);
+        return new Row(schema, vs);
+    }
+
+    @Override
+    public List<Row> rows() {
+        List<Row> out = new ArrayList<>(size);
+        for (int r = 0; r < size; r++) out.add(getRow(r));
+        return Collections.unmodifiableList(out);
+    }
+
+    @Override
+    public void addColumn(Column column) {
+        ColumnVector v = ColumnVector.of(column.getColumnType());
+        v.appendNulls(size);
+        vectors.add(v);
+    }
+
+    @Override
+    public void remove(BitSet removed) {
+        for (ColumnVector v : vectors) v.remove(removed);
+        size -= removed.cardinality();
+    }
+
+    private List<ColumnVector> range(int from, int length) {
+        if (from < 0 || length < 0 || from + length > size) {
+            throw new IndexOutOfBoundsException("Rows " + from + ".." + (from + length) + " out of " + size);
+        }
+        return vectors;
+    }
+
+    private ColumnVector vector(int row, int column) {
+        if (row < 0 || row >= size) throw new IndexOutOfBoundsException("Row " + row + " out of " + size);
+        return vectors.get(column);
+    }
+}
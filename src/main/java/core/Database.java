@@ -1,22 +1,75 @@
 package core;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class Database {
-    private final Map<String, Table> tables = new HashMap<>();
+    // каталог читается без блокировок из любых потоков; создание и удаление таблиц атомарны
+    private final Map<String, Table> tables = new ConcurrentHashMap<>();
+    private StorageMode defaultStorageMode = StorageMode.ROW;
+    private long defaultMemoryLimit = Table.UNLIMITED;
+    private Path directory;
+    private long generation;
+    private WriteAheadLog wal;
+    private long commitDelayMillis = 10;
+    private boolean synchronousCommit;
+    // контрольные точки пишутся по одной в фоновом потоке
+    private final ExecutorService checkpoints = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "checkpoint");
+        t.setDaemon(true);
+        return t;
+    });
+    private CompletableFuture<Long> lastCheckpoint = CompletableFuture.completedFuture(0L);
+    // общие часы коммитов и снимки всех таблиц базы
+    private final TransactionManager transactions = new TransactionManager();
 
     public void createTable(String tableName, List<Column> columns) {
-        if (tables.containsKey(tableName)) {
+        createTable(tableName, columns, defaultStorageMode);
+    }
+
+    public void createTable(String tableName, List<Column> columns, StorageMode storageMode) {
+        createTable(tableName, columns, storageMode, defaultMemoryLimit);
+    }
+
+    void createTable(String tableName, List<Column> columns, StorageMode storageMode, long memoryLimit) {
+        Table t = new Table(tableName, columns, storageMode, memoryLimit);
+        t.attachTransactions(transactions);
+        if (tables.putIfAbsent(tableName, t) != null) {
+            t.close();
             throw new RuntimeException("Table " + tableName + " already exists");
         }
-        tables.put(tableName, new Table(tableName, columns));
+        t.attachLog(wal);
+        if (wal != null) wal.logCreateTable(t, memoryLimit);
+    }
+
+    public StorageMode getDefaultStorageMode() {
+        return defaultStorageMode;
+    }
+
+    public void setDefaultStorageMode(StorageMode defaultStorageMode) {
+        this.defaultStorageMode = Objects.requireNonNull(defaultStorageMode, "defaultStorageMode");
     }
 
     public void dropTable(String tableName) {
-        if (!tables.containsKey(tableName)) {
-            throw new RuntimeException("No table named " + tableName);
-        }
-        tables.remove(tableName);
+        Table t = tables.remove(tableName);
+        if (t == null) throw new RuntimeException("No table named " + tableName);
+        t.close();
+        if (wal != null) wal.logDropTable(tableName);
+    }
+
+    public long getDefaultMemoryLimit() {
+        return defaultMemoryLimit;
+    }
+
+    public void setDefaultMemoryLimit(long defaultMemoryLimit) {
+        if (defaultMemoryLimit <= 0) throw new IllegalArgumentException("Memory limit must be positive");
+        this.defaultMemoryLimit = defaultMemoryLimit;
     }
 
     public Table getTable(String tableName) {
@@ -32,4 +85,216 @@ public class Database {
     public void insert(String tableName, Map<String, Object> values) {
         getTable(tableName).insert(values);
     }
+
+    // Явная транзакция текущего потока: её операторы читают один снимок, а изменения становятся
+    // видны другим все сразу при COMMIT. Вне транзакции каждый оператор коммитится сам.
+    // Создание и удаление таблиц, колонок и индексов в транзакцию не входят.
+    public void begin() {
+        transactions.begin();
+    }
+
+    public void commit() {
+        transactions.commit();
+    }
+
+    public void rollback() {
+        transactions.rollback();
+    }
+
+    public boolean inTransaction() {
+        return transactions.current() != null;
+    }
+
+    // один снимок на несколько чтений, например на соединение таблиц
+    public ReadView openView() {
+        return transactions.openView();
+    }
+
+    // собирает старые версии строк, которые не видит ни один снимок; возвращает их число
+    public int vacuum() {
+        int removed = 0;
+        for (Table t : tables.values()) removed += vacuum(t);
+        return removed;
+    }
+
+    public int vacuum(String tableName) {
+        return vacuum(getTable(tableName));
+    }
+
+    private int vacuum(Table t) {
+        int before = t.size();
+        t.vacuum(true);
+        return before - t.size();
+    }
+
+    public double getVacuumThreshold() {
+        return transactions.vacuumThreshold();
+    }
+
+    // доля мёртвых строк таблицы (0..1), после которой фоновая сборка её переписывает;
+    // до этого удалённые строки только пропускаются при чтении
+    public void setVacuumThreshold(double threshold) {
+        if (!(threshold >= 0 && threshold <= 1)) throw new IllegalArgumentException("Vacuum threshold must be between 0 and 1");
+        transactions.setVacuumThreshold(threshold);
+    }
+
+    TransactionManager transactions() {
+        return transactions;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getCommitDelayMillis() {
+        return commitDelayMillis;
+    }
+
+    public void setCommitDelayMillis(long commitDelayMillis) {
+        if (commitDelayMillis < 0) throw new IllegalArgumentException("Commit delay must not be negative");
+        this.commitDelayMillis = commitDelayMillis;
+        if (wal != null) wal.setDelay(commitDelayMillis);
+    }
+
+    public boolean isSynchronousCommit() {
+        return synchronousCommit;
+    }
+
+    public void setSynchronousCommit(boolean synchronousCommit) {
+        this.synchronousCommit = synchronousCommit;
+        if (wal != null) wal.setSynchronous(synchronousCommit);
+    }
+
+    // Привязывает базу к каталогу. Если там уже сохранена база, текущие таблицы заменяются
+    // сохранёнными (файлы отображаются в память, данные читаются по мере обращения) и к ним
+    // применяется журнал изменений; иначе текущие таблицы сразу сохраняются туда как исходный снимок.
+    // Дальше все изменения пишутся в журнал.
+    public void open(Path dir) throws IOException {
+        Path d = dir.toAbsolutePath().normalize();
+        closeLog();
+        if (Catalog.exists(d)) {
+            long gen = Catalog.generation(d);
+            Map<String, Table> loaded = Catalog.load(d, defaultMemoryLimit);
+            tables.values().forEach(Table::close);
+            tables.clear();
+            putAll(loaded);
+            transactions.holdVacuum(true);
+            try {
+                WriteAheadLog.replay(d, gen, this);
+            } finally {
+                transactions.holdVacuum(false);
+            }
+            generation = gen;
+        } else {
+            checkNoHistory();
+            generation = 1;
+            Catalog.save(d, tables.values(), generation);
+        }
+        directory = d;
+        attachLog(WriteAheadLog.open(d, generation, commitDelayMillis, synchronousCommit));
+    }
+
+    // Снимок всех таблиц нового поколения; журнал после этого начинается заново. Файлы таблиц
+    // хранят только строки без истории версий, поэтому перед записью собираются старые версии
+    public void save() throws IOException {
+        if (directory == null) throw new IllegalStateException("Database is not bound to a directory, use OPEN first");
+        checkNoHistory();
+        if (wal != null) wal.flush();
+        long next = generation + 1;
+        Catalog.save(directory, tables.values(), next);
+        generation = next;
+        if (wal != null) wal.reset(generation);
+    }
+
+    public void save(Path dir) throws IOException {
+        Path d = dir.toAbsolutePath().normalize();
+        if (d.equals(directory)) {
+            save();
+            return;
+        }
+        checkNoHistory();
+        closeLog();
+        generation = Math.max(generation, Catalog.generation(d)) + 1;
+        Catalog.save(d, tables.values(), generation);
+        directory = d;
+        attachLog(WriteAheadLog.open(d, generation, commitDelayMillis, synchronousCommit));
+    }
+
+    // Контрольная точка в один файл. Снимки последнего коммита берутся сразу, сама запись идёт
+    // в фоне, и запросы с изменениями продолжают выполняться; результат — число записанных строк
+    public CompletableFuture<Long> checkpoint(Path file) {
+        List<TableSnapshot> snapshots = new ArrayList<>(tables.size());
+        for (Table t : tables.values()) snapshots.add(t.freeze());
+        CompletableFuture<Long> done = CompletableFuture.supplyAsync(() -> {
+            try {
+                return Checkpoint.write(snapshots, file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                for (TableSnapshot s : snapshots) s.release();
+            }
+        }, checkpoints);
+        lastCheckpoint = done;
+        return done;
+    }
+
+    // Заменяет все таблицы содержимым контрольной точки. Если база привязана к каталогу,
+    // восстановленное состояние сразу сохраняется туда снимком нового поколения
+    public void restore(Path file) throws IOException {
+        awaitCheckpoint();
+        Map<String, Table> loaded = Checkpoint.read(file, defaultMemoryLimit);
+        tables.values().forEach(Table::close);
+        tables.clear();
+        putAll(loaded);
+        if (directory != null) {
+            attachLog(wal);
+            save();
+        }
+    }
+
+    // дожидается фоновой контрольной точки, дописывает журнал на диск и закрывает его
+    public void close() throws IOException {
+        awaitCheckpoint();
+        checkpoints.shutdown();
+        closeLog();
+        transactions.close();
+    }
+
+    private void putAll(Map<String, Table> loaded) {
+        for (Table t : loaded.values()) t.attachTransactions(transactions);
+        tables.putAll(loaded);
+    }
+
+    private void checkNoHistory() {
+        if (transactions.openTransactions() > 0) {
+            throw new IllegalStateException("Cannot save the database while a transaction is open");
+        }
+        for (Table t : tables.values()) {
+            if (!t.vacuum(true)) {
+                throw new IllegalStateException("Cannot save the database: old row versions of table "
+                        + t.getTableName() + " are still read by open snapshots");
+            }
+        }
+    }
+
+    private void awaitCheckpoint() {
+        try {
+            lastCheckpoint.join();
+        } catch (RuntimeException ignored) {
+            // ошибка уже передана тому, кто запускал контрольную точку
+        }
+    }
+
+    private void attachLog(WriteAheadLog log) {
+        wal = log;
+        transactions.attachLog(log);
+        for (Table t : tables.values()) t.attachLog(log);
+    }
+
+    private void closeLog() throws IOException {
+        if (wal == null) return;
+        WriteAheadLog log = wal;
+        attachLog(null);
+        log.close();
+    }
 }
@@ -0,0 +1,189 @@
+package core;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Таблица, открытая из файла: сохранённые строки читаются прямо из отображённого файла,
+// новые строки дописываются в хранилище в памяти. Первое изменение или удаление сохранённых
+// строк переносит всю таблицу в память, после чего файл больше не читается.
+final class DiskStorage implements TableStorage, AutoCloseable {
+    private final Schema schema;
+    private final Supplier<TableStorage> factory;
+    private TableFile file;
+    private int baseRows;
+    private TableStorage memory;
+
+    DiskStorage(Schema schema, TableFile file, Supplier<TableStorage> factory) {
+        if (file.columns() != schema.size()) {
+            throw new IllegalArgumentException("Table file " + file.path() + " has " + file.columns()
+                    + " columns, schema has " + schema.size());
+        }
+        for (int c = 0; c < schema.size(); c++) {
+            if (file.type(c) != schema.get(c).getColumnType()) {
+                throw new IllegalArgumentException("Table file " + file.path() + ": column "
+                        + schema.get(c).getColumnName() + " is " + file.type(c) + " on disk");
+            }
+        }
+        this.schema = schema;
+        this.factory = factory;
+        this.file = file;
+        this.baseRows = file.rows();
+        this.memory = factory.get();
+    }
+
+    boolean isMapped() {
+        return file != null;
+    }
+
+    // файл, полностью совпадающий с содержимым таблицы; null, если были изменения
+    Path unchangedFile() {
+        return file != null && memory.size() == 0 ? file.path() : null;
+    }
+
+    TableStorage memory() {
+        return memory;
+    }
+
+    @Override
+    public int size() {
+        return baseRows + memory.size();
+    }
+
+    @Override
+    public void append(Value<?>[] values) {
+        memory.append(values);
+    }
+
+    @Override
+    public Value<?> get(int row, int column) {
+        if (row < baseRows) return Value.of(file.get(row, column), schema.get(column).getColumnType());
+        return memory.get(row - baseRows, column);
+    }
+
+    @Override
+    public void set(int row, int column, Value<?> value) {
+        materialize(schema.size());
+        memory.set(row, column, value);
+    }
+
+    @Override
+    public boolean isNull(int row, int column) {
+        return row < baseRows ? file.isNull(row, column) : memory.isNull(row - baseRows, column);
+    }
+
+    @Override
+    public int getInt(int row, int column) {
+        return row < baseRows ? file.getInt(row, column) : memory.getInt(row - baseRows, column);
+    }
+
+    @Override
+    public double getDouble(int row, int column) {
+        return row < baseRows ? file.getDouble(row, column) : memory.getDouble(row - baseRows, column);
+    }
+
+    @Override
+    public boolean getBoolean(int row, int column) {
+        return row < baseRows ? file.getBoolean(row, column) : memory.getBoolean(row - baseRows, column);
+    }
+
+    @Override
+    public String getString(int row, int column) {
+        return row < baseRows ? file.getString(row, column) : memory.getString(row - baseRows, column);
+    }
+
+    // у строк из файла кодов словаря нет
+    @Override
+    public StringDictionary dictionary(int column) {
+        return baseRows == 0 ? memory.dictionary(column) : null;
+    }
+
+    @Override
+    public int getCode(int row, int column) {
+        return row < baseRows ? StringDictionary.NO_CODE : memory.getCode(row - baseRows, column);
+    }
+
+    // строки из файла читаются по одной, дописанные — пакетом из хранилища в памяти
+    @Override
+    public void readNulls(int column, int from, int length, boolean[] nulls) {
+        if (from >= baseRows) memory.readNulls(column, from - baseRows, length, nulls);
+        else TableStorage.super.readNulls(column, from, length, nulls);
+    }
+
+    @Override
+    public void readInts(int column, int from, int length, int[] out) {
+        if (from >= baseRows) memory.readInts(column, from - baseRows, length, out);
+        else TableStorage.super.readInts(column, from, length, out);
+    }
+
+    @Override
+    public void readDoubles(int column, int from, int length, double[] out) {
+        if (from >= baseRows) memory.readDoubles(column, from - baseRows, length, out);
+        else TableStorage.super.readDoubles(column, from, length, out);
+    }
+
+    @Override
+    public void readCodes(int column, int from, int length, int[] out) {
+        if (from >= baseRows) memory.readCodes(column, from - baseRows, length, out);
+        else TableStorage.super.readCodes(column, from, length, out);
+    }
+
+    @Override
+    public Row getRow(int row) {
+        if (row >= baseRows) return memory.getRow(row - baseRows);
+        Value<?>[] vs = new Value<?>[schema.size()];
+        for (int i = 0; i < vs.length; i++) vs[i] = get(row, i);
+        return new Row(schema, vs);
+    }
+
+    @Override
+    public List<Row> rows() {
+        if (baseRows == 0) return memory.rows();
+        List<Row> out = new ArrayList<>(size());
+        for (int r = 0; r < size(); r++) out.add(getRow(r));
+        return Collections.unmodifiableList(out);
+    }
+
+    // колонка уже добавлена в схему, поэтому в новом хранилище она есть с самого начала
+    @Override
+    public void addColumn(Column column) {
+        if (file == null) memory.addColumn(column);
+        else materialize(schema.size() - 1);
+    }
+
+    @Override
+    public void remove(BitSet rows) {
+        materialize(schema.size());
+        memory.remove(rows);
+    }
+
+    @Override
+    public void close() {
+        if (file != null) file.close();
+        if (memory instanceof OffHeapStorage s) s.close();
+    }
+
+    // переносит строки файла и дописанные строки в свежее хранилище; known — сколько колонок
+    // есть у старых данных, остальные заполняются NULL. Файл закрывается сразу, поэтому таблица
+    // вызывает перенос только под scanLock на запись, когда ни один вид её не читает
+    private void materialize(int known) {
+        if (file == null) return;
+        TableStorage fresh = factory.get();
+        TableStorage old = memory;
+        for (int r = 0; r < size(); r++) {
+            Value<?>[] vs = new Value<?>[schema.size()];
+            for (int c = 0; c < vs.length; c++) {
+                vs[c] = c < known ? get(r, c) : Value.nullOf(schema.get(c).getColumnType());
+            }
+            fresh.append(vs);
+        }
+        file.close();
+        file = null;
+        baseRows = 0;
+        memory = fresh;
+        if (old instanceof OffHeapStorage s) s.close();
+    }
+}
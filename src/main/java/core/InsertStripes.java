@@ -0,0 +1,87 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Очередь автоматических вставок таблицы, разбитая на полосы по потокам. Поток готовит строку
+// и запись журнала без общих блокировок и кладёт её в свою полосу; затем один из ждущих потоков
+// (тот, кто первым возьмёт combiner) переносит в таблицу все накопившиеся строки за один захват
+// её монитора и коммитит их одной группой. Остальные тем временем только ждут свою строку.
+// Перенос остаётся последовательным: параллельно идут лишь подготовка строк и ожидание записи
+// журнала на диск, так что рост пропускной способности с числом потоков ограничен этим шагом
+// и зависит от доли подготовки в стоимости строки; он не измерялся.
+final class InsertStripes {
+    private static final long WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final Stripe[] stripes;
+    private final int mask;
+    private final ReentrantLock combiner = new ReentrantLock();
+
+    InsertStripes() {
+        int n = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) stripes[i] = new Stripe();
+        mask = n - 1;
+    }
+
+    // ставит строку в очередь и ждёт, пока её не перенесёт combine — этот или другой поток
+    void insert(Pending p, Runnable combine) {
+        Stripe s = stripes[(int) Thread.currentThread().threadId() & mask];
+        synchronized (s) {
+            s.rows.add(p);
+        }
+        while (!p.done) {
+            if (combiner.tryLock()) {
+                try {
+                    if (!p.done) combine.run();
+                } finally {
+                    combiner.unlock();
+                }
+            } else {
+                LockSupport.parkNanos(this, WAIT_NANOS);
+            }
+        }
+    }
+
+    // забирает все строки из всех полос; вызывается под combiner
+    List<Pending> drain() {
+        List<Pending> batch = new ArrayList<>();
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                if (s.rows.isEmpty()) continue;
+                batch.addAll(s.rows);
+                s.rows.clear();
+            }
+        }
+        return batch;
+    }
+
+    private static final class Stripe {
+        final List<Pending> rows = new ArrayList<>();
+    }
+
+    // строка в очереди; результат — позиция записи в журнале или ошибка (например, повтор ключа)
+    static final class Pending {
+        final Value<?>[] values;
+        final Row row;
+        final byte[] frame;
+        final Thread owner = Thread.currentThread();
+        long lsn;
+        RuntimeException error;
+        volatile boolean done;
+
+        Pending(Value<?>[] values, Row row, byte[] frame) {
+            this.values = values;
+            this.row = row;
+            this.frame = frame;
+        }
+
+        void finish() {
+            done = true;
+            LockSupport.unpark(owner);
+        }
+    }
+}
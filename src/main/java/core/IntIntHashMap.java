@@ -0,0 +1,92 @@
+package core;
+
+import java.util.Arrays;
+
+// открытая адресация с линейным пробированием, ключи и значения без упаковки
+final class IntIntHashMap {
+    static final int MISSING = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    IntIntHashMap() {
+        allocate(16);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int get(int key) {
+        int i = slot(key);
+        while (values[i] != MISSING) {
+            if (keys[i] == key) return values[i];
+            i = (i + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    void put(int key, int value) {
+        if ((size + 1) * 2 > keys.length) rehash(keys.length * 2);
+        int i = slot(key);
+        while (values[i] != MISSING) {
+            if (keys[i] == key) { values[i] = value; return; }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+    }
+
+    void remove(int key) {
+        int i = slot(key);
+        while (values[i] != MISSING) {
+            if (keys[i] == key) break;
+            i = (i + 1) & mask;
+        }
+        if (values[i] == MISSING) return;
+        values[i] = MISSING;
+        size--;
+        // сдвигаем хвост кластера, чтобы не оставлять дыр в цепочке пробирования
+        int j = (i + 1) & mask;
+        while (values[j] != MISSING) {
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                values[j] = MISSING;
+                i = j;
+            }
+            j = (j + 1) & mask;
+        }
+    }
+
+    void clear() {
+        Arrays.fill(values, MISSING);
+        size = 0;
+    }
+
+    private int slot(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, MISSING);
+        mask = capacity - 1;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != MISSING) put(oldKeys[i], oldValues[i]);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package core;
+
+import java.util.Arrays;
+
+public class IntList {
+    private int[] data;
+    private int size;
+
+    public IntList() {
+        this(16);
+    }
+
+    public IntList(int capacity) {
+        this.data = new int[Math.max(capacity, 1)];
+    }
+
+    public static IntList range(int from, int to) {
+        IntList l = new IntList(to - from);
+        for (int i = from; i < to; i++) l.data[l.size++] = i;
+        return l;
+    }
+
+    public static IntList of(int... values) {
+        IntList l = new IntList(values.length);
+        System.arraycopy(values, 0, l.data, 0, values.length);
+        l.size = values.length;
+        return l;
+    }
+
+    public void add(int v) {
+        if (size == data.length) data = Arrays.copyOf(data, size * 2);
+        data[size++] = v;
+    }
+
+    public void addAll(IntList other) {
+        if (size + other.size > data.length) data = Arrays.copyOf(data, Math.max(size + other.size, size * 2));
+        System.arraycopy(other.data, 0, data, size, other.size);
+        size += other.size;
+    }
+
+    public int get(int i) {
+        if (i >= size) throw new IndexOutOfBoundsException(i);
+        return data[i];
+    }
+
+    public void set(int i, int v) {
+        if (i >= size) throw new IndexOutOfBoundsException(i);
+        data[i] = v;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void sort() {
+        Arrays.sort(data, 0, size);
+    }
+
+    public IntList subList(int from, int to) {
+        IntList l = new IntList(to - from);
+        System.arraycopy(data, from, l.data, 0, to - from);
+        l.size = to - from;
+        return l;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,86 @@
+package core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+// Шаблон LIKE / ILIKE, разобранный один раз: % — любая последовательность, _ — один символ.
+// Частые формы (точное совпадение, abc%, %abc, %abc%) проверяются строковыми методами,
+// регулярное выражение строится только для остальных.
+public final class LikeMatcher implements Predicate<String> {
+    private static final int CACHE_LIMIT = 256;
+    private static final Map<String, LikeMatcher> CACHE = new ConcurrentHashMap<>();
+
+    private enum Shape { ANY, EXACT, PREFIX, SUFFIX, CONTAINS, REGEX }
+
+    private final Shape shape;
+    private final String text;
+    private final boolean ignoreCase;
+    private final Pattern regex;
+
+    private LikeMatcher(Shape shape, String text, boolean ignoreCase, Pattern regex) {
+        this.shape = shape;
+        this.text = text;
+        this.ignoreCase = ignoreCase;
+        this.regex = regex;
+    }
+
+    public static LikeMatcher compile(String pattern, boolean ignoreCase) {
+        int n = pattern.length();
+        if (pattern.indexOf('_') < 0) {
+            int first = pattern.indexOf('%');
+            if (first < 0) return new LikeMatcher(Shape.EXACT, pattern, ignoreCase, null);
+            String inner = pattern.replace("%", "");
+            if (inner.isEmpty()) return new LikeMatcher(Shape.ANY, "", ignoreCase, null);
+            boolean lead = pattern.charAt(0) == '%', trail = pattern.charAt(n - 1) == '%';
+            int plain = (lead ? 1 : 0) + inner.length() + (trail ? 1 : 0);
+            // других % внутри нет — хватает одного строкового метода
+            if (plain == n) {
+                Shape s = lead && trail ? Shape.CONTAINS : lead ? Shape.SUFFIX : Shape.PREFIX;
+                return new LikeMatcher(s, inner, ignoreCase, null);
+            }
+        }
+        String re = Pattern.quote(pattern)
+                .replace("%", "\\E.*\\Q")
+                .replace("_", "\\E.\\Q");
+        int flags = Pattern.DOTALL | (ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+        return new LikeMatcher(Shape.REGEX, pattern, ignoreCase, Pattern.compile(re, flags));
+    }
+
+    // для сравнений вне скомпилированного запроса (Value.compare): разобранные шаблоны переиспользуются
+    public static LikeMatcher cached(String pattern, boolean ignoreCase) {
+        String key = (ignoreCase ? "i:" : "c:") + pattern;
+        LikeMatcher m = CACHE.get(key);
+        if (m != null) return m;
+        m = compile(pattern, ignoreCase);
+        if (CACHE.size() >= CACHE_LIMIT) CACHE.clear();
+        CACHE.put(key, m);
+        return m;
+    }
+
+    public boolean matches(String s) {
+        if (s == null) return false;
+        return switch (shape) {
+            case ANY -> true;
+            case EXACT -> ignoreCase ? s.equalsIgnoreCase(text) : s.equals(text);
+            case PREFIX -> s.regionMatches(ignoreCase, 0, text, 0, text.length());
+            case SUFFIX -> s.regionMatches(ignoreCase, s.length() - text.length(), text, 0, text.length());
+            case CONTAINS -> ignoreCase ? containsIgnoreCase(s) : s.contains(text);
+            case REGEX -> regex.matcher(s).matches();
+        };
+    }
+
+    @Override
+    public boolean test(String s) {
+        return matches(s);
+    }
+
+    private boolean containsIgnoreCase(String s) {
+        int len = text.length();
+        for (int i = 0, last = s.length() - len; i <= last; i++) {
+            if (s.regionMatches(true, i, text, 0, len)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,335 @@
+package core;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Колонки фиксированной ширины и строки лежат в MemorySegment вне кучи.
+// Память выделяется блоками по CHUNK_ROWS строк, поэтому рост таблицы не копирует данные.
+final class OffHeapStorage implements TableStorage, AutoCloseable {
+    static final int CHUNK_ROWS = 16_384;
+    private static final int STRING_PAGE_BYTES = 1 << 20;
+    private static final int STRING_SLOT_BYTES = 12; // page, offset, length
+
+    private final String tableName;
+    private final Schema schema;
+    private final long memoryLimit;
+    private final Arena arena = Arena.ofShared();
+    private final List<OffHeapColumn> columns = new ArrayList<>();
+    private final List<MemorySegment> stringPages = new ArrayList<>();
+    private int stringPageUsed = STRING_PAGE_BYTES;
+    private long allocated;
+    private int size;
+
+    OffHeapStorage(String tableName, Schema schema, long memoryLimit) {
+        this.tableName = tableName;
+        this.schema = schema;
+        this.memoryLimit = memoryLimit;
+        for (Column c : schema.getColumns()) columns.add(new OffHeapColumn(c.getColumnType()));
+    }
+
+    long allocatedBytes() {
+        return allocated;
+    }
+
+    long memoryLimit() {
+        return memoryLimit;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void append(Value<?>[] values) {
+        int chunk = size / CHUNK_ROWS;
+        for (OffHeapColumn c : columns) c.ensureChunk(chunk);
+        int row = size++;
+        for (int i = 0; i < columns.size(); i++) {
+            columns.get(i).set(row, values[i] == null ? null : values[i].get());
+        }
+    }
+
+    @Override
+    public Value<?> get(int row, int column) {
+        return column(row, column).value(row);
+    }
+
+    @Override
+    public void set(int row, int column, Value<?> value) {
+        column(row, column).set(row, value == null ? null : value.get());
+    }
+
+    @Override
+    public boolean isNull(int row, int column) {
+        return column(row, column).isNull(row);
+    }
+
+    @Override
+    public int getInt(int row, int column) {
+        return column(row, column).getInt(row);
+    }
+
+    @Override
+    public double getDouble(int row, int column) {
+        return column(row, column).getDouble(row);
+    }
+
+    @Override
+    public boolean getBoolean(int row, int column) {
+        return column(row, column).getBoolean(row);
+    }
+
+    @Override
+    public String getString(int row, int column) {
+        OffHeapColumn c = column(row, column);
+        if (c.isNull(row)) return null;
+        return c.type == DataType.STRING ? c.getStringPayload(row) : String.valueOf(c.get(row));
+    }
+
+    @Override
+    public void readNulls(int column, int from, int length, boolean[] nulls) {
+        range(column, from, length).readNulls(from, length, nulls);
+    }
+
+    @Override
+    public void readInts(int column, int from, int length, int[] out) {
+        OffHeapColumn c = range(column, from, length);
+        if (c.type != DataType.INTEGER) {
+            TableStorage.super.readInts(column, from, length, out);
+            return;
+        }
+        // копирование кусками в пределах одного блока памяти
+        for (int i = 0; i < length; ) {
+            int row = from + i;
+            int n = Math.min(length - i, CHUNK_ROWS - row % CHUNK_ROWS);
+            MemorySegment.copy(c.chunk(row), ValueLayout.JAVA_INT, c.offset(row), out, i, n);
+            i += n;
+        }
+    }
+
+    @Override
+    public void readDoubles(int column, int from, int length, double[] out) {
+        OffHeapColumn c = range(column, from, length);
+        if (c.type != DataType.DOUBLE) {
+            TableStorage.super.readDoubles(column, from, length, out);
+            return;
+        }
+        for (int i = 0; i < length; ) {
+            int row = from + i;
+            int n = Math.min(length - i, CHUNK_ROWS - row % CHUNK_ROWS);
+            MemorySegment.copy(c.chunk(row), ValueLayout.JAVA_DOUBLE, c.offset(row), out, i, n);
+            i += n;
+        }
+    }
+
+    @Override
+    public Row getRow(int row) {
+        Value<?>[] vs = new Value<?>[columns.size()];
+        for (int i = 0; i < vs.length; i++) vs[i] = get(row, i);
+        return new Row(schema, vs);
+    }
+
+    @Override
+    public List<Row> rows() {
+        List<Row> out = new ArrayList<>(size);
+        for (int r = 0; r < size; r++) out.add(getRow(r));
+        return Collections.unmodifiableList(out);
+    }
+
+    @Override
+    public void addColumn(Column column) {
+        OffHeapColumn c = new OffHeapColumn(column.getColumnType());
+        if (size > 0) c.ensureChunk((size - 1) / CHUNK_ROWS);
+        for (int r = 0; r < size; r++) c.set(r, null);
+        columns.add(c);
+    }
+
+    // строковые данные удалённых строк не освобождаются до закрытия арены
+    @Override
+    public void remove(BitSet removed) {
+        int w = 0;
+        for (int r = 0; r < size; r++) {
+            if (removed.get(r)) continue;
+            if (w != r) for (OffHeapColumn c : columns) c.move(r, w);
+            w++;
+        }
+        size = w;
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    private OffHeapColumn range(int column, int from, int length) {
+        if (from < 0 || length < 0 || from + length > size) {
+            throw new IndexOutOfBoundsException("Rows " + from + ".." + (from + length) + " out of " + size);
+        }
+        return columns.get(column);
+    }
+
+    private OffHeapColumn column(int row, int column) {
+        if (row < 0 || row >= size) throw new IndexOutOfBoundsException("Row " + row + " out of " + size);
+        return columns.get(column);
+    }
+
+    private MemorySegment allocate(long bytes) {
+        if (allocated + bytes > memoryLimit) {
+            throw new IllegalStateException("Off-heap memory limit of " + memoryLimit
+                    + " bytes exceeded for table " + tableName);
+        }
+        allocated += bytes;
+        return arena.allocate(bytes, 8);
+    }
+
+    private long[] storeString(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (stringPages.isEmpty() || bytes.length > STRING_PAGE_BYTES - stringPageUsed) {
+            stringPages.add(allocate(Math.max(STRING_PAGE_BYTES, bytes.length)));
+            stringPageUsed = 0;
+        }
+        int page = stringPages.size() - 1;
+        int offset = stringPageUsed;
+        MemorySegment.copy(bytes, 0, stringPages.get(page), ValueLayout.JAVA_BYTE, offset, bytes.length);
+        stringPageUsed += bytes.length;
+        return new long[]{page, offset, bytes.length};
+    }
+
+    private final class OffHeapColumn {
+        private final DataType type;
+        private final int width;
+        private final List<MemorySegment> data = new ArrayList<>();
+        private final List<MemorySegment> nulls = new ArrayList<>();
+
+        OffHeapColumn(DataType type) {
+            this.type = type;
+            this.width = switch (type) {
+                case INTEGER -> Integer.BYTES;
+                case DOUBLE -> Double.BYTES;
+                case BOOLEAN -> 1;
+                case STRING -> STRING_SLOT_BYTES;
+            };
+        }
+
+        void ensureChunk(int chunk) {
+            while (data.size() <= chunk) {
+                data.add(allocate((long) CHUNK_ROWS * width));
+                nulls.add(allocate(CHUNK_ROWS / 8));
+            }
+        }
+
+        boolean isNull(int row) {
+            byte b = nulls.get(row / CHUNK_ROWS).get(ValueLayout.JAVA_BYTE, (row % CHUNK_ROWS) >>> 3);
+            return (b & (1 << (row & 7))) != 0;
+        }
+
+        // байт карты без NULL заполняет сразу до восьми строк
+        void readNulls(int from, int length, boolean[] out) {
+            for (int i = 0; i < length; ) {
+                int row = from + i;
+                byte b = nulls.get(row / CHUNK_ROWS).get(ValueLayout.JAVA_BYTE, (row % CHUNK_ROWS) >>> 3);
+                int n = Math.min(length - i, 8 - (row & 7));
+                if (b == 0) {
+                    Arrays.fill(out, i, i + n, false);
+                } else {
+                    for (int k = 0; k < n; k++) out[i + k] = (b & (1 << ((row + k) & 7))) != 0;
+                }
+                i += n;
+            }
+        }
+
+        private void markNull(int row, boolean isNull) {
+            MemorySegment seg = nulls.get(row / CHUNK_ROWS);
+            long off = (row % CHUNK_ROWS) >>> 3;
+            byte b = seg.get(ValueLayout.JAVA_BYTE, off);
+            b = (byte) (isNull ? b | (1 << (row & 7)) : b & ~(1 << (row & 7)));
+            seg.set(ValueLayout.JAVA_BYTE, off, b);
+        }
+
+        private MemorySegment chunk(int row) {
+            return data.get(row / CHUNK_ROWS);
+        }
+
+        private long offset(int row) {
+            return (long) (row % CHUNK_ROWS) * width;
+        }
+
+        void set(int row, Object value) {
+            markNull(row, value == null);
+            if (value == null) return;
+            MemorySegment seg = chunk(row);
+            long off = offset(row);
+            switch (type) {
+                case INTEGER -> seg.set(ValueLayout.JAVA_INT, off, ((Number) value).intValue());
+                case DOUBLE -> seg.set(ValueLayout.JAVA_DOUBLE, off, ((Number) value).doubleValue());
+                case BOOLEAN -> seg.set(ValueLayout.JAVA_BYTE, off, (byte) ((Boolean) value ? 1 : 0));
+                case STRING -> {
+                    long[] ref = storeString((String) value);
+                    seg.set(ValueLayout.JAVA_INT, off, (int) ref[0]);
+                    seg.set(ValueLayout.JAVA_INT, off + 4, (int) ref[1]);
+                    seg.set(ValueLayout.JAVA_INT, off + 8, (int) ref[2]);
+                }
+            }
+        }
+
+        Object get(int row) {
+            if (isNull(row)) return null;
+            return switch (type) {
+                case INTEGER -> getInt(row);
+                case DOUBLE -> getDouble(row);
+                case BOOLEAN -> getBoolean(row);
+                case STRING -> getStringPayload(row);
+            };
+        }
+
+        // без упаковки: частые значения берутся из кэша Value
+        Value<?> value(int row) {
+            if (isNull(row)) return Value.nullOf(type);
+            return switch (type) {
+                case INTEGER -> Value.ofInt(getInt(row));
+                case DOUBLE -> Value.ofDouble(getDouble(row));
+                case BOOLEAN -> Value.ofBoolean(getBoolean(row));
+                case STRING -> Value.of(getStringPayload(row), type);
+            };
+        }
+
+        int getInt(int row) {
+            if (type != DataType.INTEGER) throw new UnsupportedOperationException(type + " column has no int accessor");
+            return chunk(row).get(ValueLayout.JAVA_INT, offset(row));
+        }
+
+        double getDouble(int row) {
+            return switch (type) {
+                case INTEGER -> getInt(row);
+                case DOUBLE -> chunk(row).get(ValueLayout.JAVA_DOUBLE, offset(row));
+                default -> throw new UnsupportedOperationException(type + " column has no double accessor");
+            };
+        }
+
+        boolean getBoolean(int row) {
+            if (type != DataType.BOOLEAN) throw new UnsupportedOperationException(type + " column has no boolean accessor");
+            return chunk(row).get(ValueLayout.JAVA_BYTE, offset(row)) != 0;
+        }
+
+        String getStringPayload(int row) {
+            MemorySegment seg = chunk(row);
+            long off = offset(row);
+            int page = seg.get(ValueLayout.JAVA_INT, off);
+            int start = seg.get(ValueLayout.JAVA_INT, off + 4);
+            int len = seg.get(ValueLayout.JAVA_INT, off + 8);
+            byte[] bytes = new byte[len];
+            MemorySegment.copy(stringPages.get(page), ValueLayout.JAVA_BYTE, start, bytes, 0, len);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        void move(int from, int to) {
+            boolean isNull = isNull(from);
+            markNull(to, isNull);
+            if (!isNull) MemorySegment.copy(chunk(from), offset(from), chunk(to), offset(to), width);
+        }
+    }
+}
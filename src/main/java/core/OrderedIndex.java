@@ -0,0 +1,267 @@
+package core;
+
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+// B+дерево по паре (ключ, rowId): одинаковые ключи упорядочены по номеру строки.
+// NULL в дерево не попадают и хранятся отдельным битсетом.
+// Узлы при удалении не сливаются: при сжатии таблицы индекс всё равно перестраивается.
+public class OrderedIndex extends SecondaryIndex {
+    private static final int ORDER = 64;
+
+    private final BitSet nulls = new BitSet();
+    private Node root = new Leaf();
+    private int size;
+
+    OrderedIndex(String name, int column, DataType type) {
+        super(name, column, type);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public BitSet nullRows() {
+        return (BitSet) nulls.clone();
+    }
+
+    @Override
+    void add(RowAccessor row, int rowId) {
+        if (row.isNull(column)) {
+            nulls.set(rowId);
+            return;
+        }
+        Object key = read(row);
+        Split split = root.insert(key, rowId);
+        if (split != null) {
+            Inner r = new Inner();
+            r.keys[0] = split.key;
+            r.rows[0] = split.row;
+            r.children[0] = root;
+            r.children[1] = split.right;
+            r.count = 1;
+            root = r;
+        }
+        size++;
+    }
+
+    @Override
+    void remove(RowAccessor row, int rowId) {
+        if (row.isNull(column)) {
+            nulls.clear(rowId);
+            return;
+        }
+        if (root.remove(read(row), rowId)) size--;
+    }
+
+    @Override
+    void clear() {
+        root = new Leaf();
+        nulls.clear();
+        size = 0;
+    }
+
+    // Обходит строки с ключом в [lo, hi] (null — граница не задана), пока visitor возвращает true.
+    // При descending ключи идут по убыванию, но строки с равным ключом — по возрастанию rowId.
+    public void scan(Object lo, boolean loInclusive, Object hi, boolean hiInclusive,
+                     boolean descending, IntPredicate visitor) {
+        if (!descending) {
+            Leaf leaf = root.leafFor(lo, loInclusive ? Integer.MIN_VALUE : Integer.MAX_VALUE);
+            int i = lo == null ? 0 : leaf.lowerBound(lo, loInclusive ? Integer.MIN_VALUE : Integer.MAX_VALUE);
+            while (leaf != null) {
+                for (; i < leaf.count; i++) {
+                    if (hi != null) {
+                        int c = compareKeys(leaf.keys[i], hi);
+                        if (c > 0 || (c == 0 && !hiInclusive)) return;
+                    }
+                    if (!visitor.test(leaf.rows[i])) return;
+                }
+                leaf = leaf.next;
+                i = 0;
+            }
+            return;
+        }
+
+        Leaf leaf = hi == null ? root.lastLeaf() : root.leafFor(hi, hiInclusive ? Integer.MAX_VALUE : Integer.MIN_VALUE);
+        int i = hi == null ? leaf.count - 1
+                : leaf.lowerBound(hi, hiInclusive ? Integer.MAX_VALUE : Integer.MIN_VALUE) - 1;
+        IntList run = new IntList();
+        Object runKey = null;
+        while (leaf != null) {
+            for (; i >= 0; i--) {
+                Object k = leaf.keys[i];
+                if (lo != null) {
+                    int c = compareKeys(k, lo);
+                    if (c < 0 || (c == 0 && !loInclusive)) {
+                        emitReversed(run, visitor);
+                        return;
+                    }
+                }
+                if (runKey != null && compareKeys(k, runKey) != 0) {
+                    if (!emitReversed(run, visitor)) return;
+                    run.clear();
+                }
+                runKey = k;
+                run.add(leaf.rows[i]);
+            }
+            leaf = leaf.prev;
+            if (leaf != null) i = leaf.count - 1;
+        }
+        emitReversed(run, visitor);
+    }
+
+    private static boolean emitReversed(IntList run, IntPredicate visitor) {
+        for (int j = run.size() - 1; j >= 0; j--) {
+            if (!visitor.test(run.get(j))) return false;
+        }
+        return true;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareKeys(Object a, Object b) {
+        return ((Comparable) a).compareTo(b);
+    }
+
+    private static int compare(Object k1, int r1, Object k2, int r2) {
+        int c = compareKeys(k1, k2);
+        return c != 0 ? c : Integer.compare(r1, r2);
+    }
+
+    private record Split(Object key, int row, Node right) {}
+
+    private abstract static class Node {
+        final Object[] keys = new Object[ORDER + 1];
+        final int[] rows = new int[ORDER + 1];
+        int count;
+
+        // первая позиция, где запись >= (key, row)
+        int lowerBound(Object key, int row) {
+            int lo = 0, hi = count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(keys[mid], rows[mid], key, row) < 0) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        // первая позиция, где запись > (key, row)
+        int upperBound(Object key, int row) {
+            int lo = 0, hi = count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(keys[mid], rows[mid], key, row) <= 0) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        abstract Split insert(Object key, int row);
+
+        abstract boolean remove(Object key, int row);
+
+        abstract Leaf leafFor(Object key, int row);
+
+        abstract Leaf lastLeaf();
+    }
+
+    private static final class Leaf extends Node {
+        Leaf next;
+        Leaf prev;
+
+        @Override
+        Split insert(Object key, int row) {
+            int pos = lowerBound(key, row);
+            System.arraycopy(keys, pos, keys, pos + 1, count - pos);
+            System.arraycopy(rows, pos, rows, pos + 1, count - pos);
+            keys[pos] = key;
+            rows[pos] = row;
+            count++;
+            if (count <= ORDER) return null;
+
+            Leaf right = new Leaf();
+            int half = count / 2;
+            right.count = count - half;
+            System.arraycopy(keys, half, right.keys, 0, right.count);
+            System.arraycopy(rows, half, right.rows, 0, right.count);
+            for (int i = half; i < count; i++) keys[i] = null;
+            count = half;
+            right.next = next;
+            right.prev = this;
+            if (next != null) next.prev = right;
+            next = right;
+            return new Split(right.keys[0], right.rows[0], right);
+        }
+
+        @Override
+        boolean remove(Object key, int row) {
+            int pos = lowerBound(key, row);
+            if (pos >= count || compare(keys[pos], rows[pos], key, row) != 0) return false;
+            System.arraycopy(keys, pos + 1, keys, pos, count - pos - 1);
+            System.arraycopy(rows, pos + 1, rows, pos, count - pos - 1);
+            keys[--count] = null;
+            return true;
+        }
+
+        @Override
+        Leaf leafFor(Object key, int row) {
+            return this;
+        }
+
+        @Override
+        Leaf lastLeaf() {
+            return this;
+        }
+    }
+
+    private static final class Inner extends Node {
+        final Node[] children = new Node[ORDER + 2];
+
+        private int childIndex(Object key, int row) {
+            return key == null ? 0 : upperBound(key, row);
+        }
+
+        @Override
+        Split insert(Object key, int row) {
+            int ci = upperBound(key, row);
+            Split split = children[ci].insert(key, row);
+            if (split == null) return null;
+
+            System.arraycopy(keys, ci, keys, ci + 1, count - ci);
+            System.arraycopy(rows, ci, rows, ci + 1, count - ci);
+            System.arraycopy(children, ci + 1, children, ci + 2, count - ci);
+            keys[ci] = split.key;
+            rows[ci] = split.row;
+            children[ci + 1] = split.right;
+            count++;
+            if (count <= ORDER) return null;
+
+            int mid = count / 2;
+            Inner right = new Inner();
+            right.count = count - mid - 1;
+            System.arraycopy(keys, mid + 1, right.keys, 0, right.count);
+            System.arraycopy(rows, mid + 1, right.rows, 0, right.count);
+            System.arraycopy(children, mid + 1, right.children, 0, right.count + 1);
+            Split up = new Split(keys[mid], rows[mid], right);
+            for (int i = mid; i < count; i++) keys[i] = null;
+            for (int i = mid + 1; i <= count; i++) children[i] = null;
+            count = mid;
+            return up;
+        }
+
+        @Override
+        boolean remove(Object key, int row) {
+            return children[upperBound(key, row)].remove(key, row);
+        }
+
+        @Override
+        Leaf leafFor(Object key, int row) {
+            return children[childIndex(key, row)].leafFor(key, row);
+        }
+
+        @Override
+        Leaf lastLeaf() {
+            return children[count].lastLeaf();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package core;
+
+import java.util.*;
+
+// INTEGER-ключ из одной колонки хранится в IntIntHashMap, остальные (и составные) — в HashMap
+final class PrimaryKeyIndex {
+    private final int[] columns;
+    private final DataType[] types;
+    private final IntIntHashMap ints;
+    private final Map<Object, Integer> objects;
+
+    PrimaryKeyIndex(Schema schema, int[] columns) {
+        this.columns = columns;
+        this.types = new DataType[columns.length];
+        for (int i = 0; i < columns.length; i++) types[i] = schema.get(columns[i]).getColumnType();
+        boolean intKey = columns.length == 1 && types[0] == DataType.INTEGER;
+        this.ints = intKey ? new IntIntHashMap() : null;
+        this.objects = intKey ? null : new HashMap<>();
+    }
+
+    int[] columns() {
+        return columns;
+    }
+
+    int find(RowAccessor row) {
+        checkNotNull(row);
+        if (ints != null) return ints.get(row.getInt(columns[0]));
+        Integer r = objects.get(keyOf(row));
+        return r == null ? -1 : r;
+    }
+
+    void put(RowAccessor row, int rowId) {
+        checkNotNull(row);
+        if (ints != null) ints.put(row.getInt(columns[0]), rowId);
+        else objects.put(keyOf(row), rowId);
+    }
+
+    void remove(RowAccessor row) {
+        if (ints != null) ints.remove(row.getInt(columns[0]));
+        else objects.remove(keyOf(row));
+    }
+
+    void clear() {
+        if (ints != null) ints.clear();
+        else objects.clear();
+    }
+
+    // поиск по литералу из WHERE, только для ключа из одной колонки
+    int lookup(Object literal) {
+        if (columns.length != 1 || literal == null) return -1;
+        if (ints != null) {
+            if (literal instanceof Integer i) return ints.get(i);
+            if (literal instanceof Number n) {
+                double d = n.doubleValue();
+                return d == (int) d ? ints.get((int) d) : -1;
+            }
+            try { return ints.get(Integer.parseInt(String.valueOf(literal).trim())); }
+            catch (NumberFormatException e) { return -1; }
+        }
+        Object key;
+        try {
+            key = switch (types[0]) {
+                case DOUBLE -> literal instanceof Number n ? n.doubleValue() : Double.parseDouble(String.valueOf(literal));
+                case BOOLEAN -> literal instanceof Boolean b ? b : Boolean.parseBoolean(String.valueOf(literal));
+                case STRING -> String.valueOf(literal);
+                case INTEGER -> throw new IllegalStateException();
+            };
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        Integer r = objects.get(key);
+        return r == null ? -1 : r;
+    }
+
+    private Object keyOf(RowAccessor row) {
+        if (columns.length == 1) return component(row, 0);
+        List<Object> key = new ArrayList<>(columns.length);
+        for (int i = 0; i < columns.length; i++) key.add(component(row, i));
+        return key;
+    }
+
+    private Object component(RowAccessor row, int i) {
+        return switch (types[i]) {
+            case INTEGER -> row.getInt(columns[i]);
+            case DOUBLE -> row.getDouble(columns[i]);
+            case BOOLEAN -> row.getBoolean(columns[i]);
+            case STRING -> row.getString(columns[i]);
+        };
+    }
+
+    private void checkNotNull(RowAccessor row) {
+        for (int c : columns) {
+            if (row.isNull(c)) throw new RuntimeException("Primary key column must not be NULL");
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Снимок, которым читает оператор: внутри транзакции — её снимок, иначе последний коммит на момент
+// открытия. Вложенные открытия в том же потоке возвращают тот же вид; пока он открыт, номера строк
+// затронутых таблиц не меняются — сборщик старых версий ждёт его закрытия, но не блокирует его.
+public final class ReadView implements AutoCloseable {
+    private final TransactionManager owner;
+    private final long snapshot;
+    private final long marker;
+    private final boolean registered;
+    private final List<Table> locked = new ArrayList<>(2);
+    int depth = 1;
+
+    // owner == null — временный вид без регистрации и блокировок
+    ReadView(TransactionManager owner, long snapshot, long marker, boolean registered) {
+        this.owner = owner;
+        this.snapshot = snapshot;
+        this.marker = marker;
+        this.registered = registered;
+    }
+
+    public long getSnapshot() {
+        return snapshot;
+    }
+
+    boolean isRegistered() {
+        return registered;
+    }
+
+    // версия видна, если создана до снимка (или этой транзакцией) и не закончена к нему
+    boolean sees(long begin, long end) {
+        if (begin < 0 ? begin != marker : begin > snapshot) return false;
+        return end < 0 ? end != marker : end > snapshot;
+    }
+
+    void lock(Table table) {
+        if (owner == null || locked.contains(table)) return;
+        table.scanLock().readLock().lock();
+        locked.add(table);
+    }
+
+    void unlockAll() {
+        for (Table t : locked) t.scanLock().readLock().unlock();
+        locked.clear();
+    }
+
+    @Override
+    public void close() {
+        if (owner != null) owner.closeView(this);
+    }
+}
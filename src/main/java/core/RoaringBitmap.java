@@ -0,0 +1,343 @@
+package core;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// Множество неотрицательных int по схеме Roaring: старшие 16 бит выбирают контейнер,
+// младшие хранятся отсортированным массивом (до 4096 значений) или битовой картой на 65536 бит.
+public class RoaringBitmap {
+    private static final int ARRAY_LIMIT = 4096;
+
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    public void add(int x) {
+        char hb = (char) (x >>> 16);
+        int i = find(hb);
+        if (i < 0) {
+            i = -i - 1;
+            insertAt(i, hb, new ArrayContainer());
+        }
+        containers[i] = containers[i].add((char) x);
+    }
+
+    public void remove(int x) {
+        int i = find((char) (x >>> 16));
+        if (i < 0) return;
+        Container c = containers[i].remove((char) x);
+        if (c.cardinality() == 0) removeAt(i);
+        else containers[i] = c;
+    }
+
+    public boolean contains(int x) {
+        int i = find((char) (x >>> 16));
+        return i >= 0 && containers[i].contains((char) x);
+    }
+
+    public long cardinality() {
+        long n = 0;
+        for (int i = 0; i < size; i++) n += containers[i].cardinality();
+        return n;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        keys = new char[4];
+        containers = new Container[4];
+        size = 0;
+    }
+
+    public RoaringBitmap copy() {
+        RoaringBitmap out = new RoaringBitmap();
+        out.keys = Arrays.copyOf(keys, Math.max(size, 4));
+        out.containers = new Container[out.keys.length];
+        for (int i = 0; i < size; i++) out.containers[i] = containers[i].copy();
+        out.size = size;
+        return out;
+    }
+
+    public RoaringBitmap and(RoaringBitmap other) {
+        RoaringBitmap out = new RoaringBitmap();
+        int i = 0, j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) i++;
+            else if (keys[i] > other.keys[j]) j++;
+            else {
+                Container c = containers[i].and(other.containers[j]);
+                if (c.cardinality() > 0) out.insertAt(out.size, keys[i], c);
+                i++;
+                j++;
+            }
+        }
+        return out;
+    }
+
+    public RoaringBitmap or(RoaringBitmap other) {
+        RoaringBitmap out = new RoaringBitmap();
+        int i = 0, j = 0;
+        while (i < size || j < other.size) {
+            if (j >= other.size || (i < size && keys[i] < other.keys[j])) {
+                out.insertAt(out.size, keys[i], containers[i].copy());
+                i++;
+            } else if (i >= size || keys[i] > other.keys[j]) {
+                out.insertAt(out.size, other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                out.insertAt(out.size, keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return out;
+    }
+
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < size; i++) containers[i].forEach(keys[i] << 16, consumer);
+    }
+
+    public IntList toIntList() {
+        IntList out = new IntList((int) Math.min(Integer.MAX_VALUE, Math.max(1, cardinality())));
+        forEach(out::add);
+        return out;
+    }
+
+    private int find(char hb) {
+        return Arrays.binarySearch(keys, 0, size, hb);
+    }
+
+    private void insertAt(int i, char hb, Container c) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = hb;
+        containers[i] = c;
+        size++;
+    }
+
+    private void removeAt(int i) {
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+        containers[--size] = null;
+    }
+
+    private abstract static class Container {
+        abstract Container add(char x);
+
+        abstract Container remove(char x);
+
+        abstract boolean contains(char x);
+
+        abstract int cardinality();
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container copy();
+
+        abstract void forEach(int high, IntConsumer consumer);
+    }
+
+    private static final class ArrayContainer extends Container {
+        char[] content;
+        int card;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] content, int card) {
+            this.content = content;
+            this.card = card;
+        }
+
+        @Override
+        Container add(char x) {
+            int i = Arrays.binarySearch(content, 0, card, x);
+            if (i >= 0) return this;
+            if (card == ARRAY_LIMIT) return toBitmap().add(x);
+            i = -i - 1;
+            if (card == content.length) content = Arrays.copyOf(content, Math.min(ARRAY_LIMIT, card * 2));
+            System.arraycopy(content, i, content, i + 1, card - i);
+            content[i] = x;
+            card++;
+            return this;
+        }
+
+        @Override
+        Container remove(char x) {
+            int i = Arrays.binarySearch(content, 0, card, x);
+            if (i < 0) return this;
+            System.arraycopy(content, i + 1, content, i, card - i - 1);
+            card--;
+            return this;
+        }
+
+        @Override
+        boolean contains(char x) {
+            return Arrays.binarySearch(content, 0, card, x) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return card;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] out = new char[card];
+            int n = 0;
+            if (other instanceof ArrayContainer a) {
+                int i = 0, j = 0;
+                while (i < card && j < a.card) {
+                    if (content[i] < a.content[j]) i++;
+                    else if (content[i] > a.content[j]) j++;
+                    else { out[n++] = content[i]; i++; j++; }
+                }
+            } else {
+                for (int i = 0; i < card; i++) {
+                    if (other.contains(content[i])) out[n++] = content[i];
+                }
+            }
+            return new ArrayContainer(out, n);
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer b) return b.or(this);
+            ArrayContainer a = (ArrayContainer) other;
+            char[] out = new char[card + a.card];
+            int i = 0, j = 0, n = 0;
+            while (i < card || j < a.card) {
+                if (j >= a.card || (i < card && content[i] < a.content[j])) out[n++] = content[i++];
+                else if (i >= card || content[i] > a.content[j]) out[n++] = a.content[j++];
+                else { out[n++] = content[i]; i++; j++; }
+            }
+            ArrayContainer merged = new ArrayContainer(out, n);
+            return n > ARRAY_LIMIT ? merged.toBitmap() : merged;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(content, Math.max(card, 1)), card);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer consumer) {
+            for (int i = 0; i < card; i++) consumer.accept(high | content[i]);
+        }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer b = new BitmapContainer();
+            for (int i = 0; i < card; i++) b.add(content[i]);
+            return b;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        final long[] words;
+        int card;
+
+        BitmapContainer() {
+            this(new long[1024], 0);
+        }
+
+        BitmapContainer(long[] words, int card) {
+            this.words = words;
+            this.card = card;
+        }
+
+        @Override
+        Container add(char x) {
+            long before = words[x >>> 6];
+            words[x >>> 6] |= 1L << x;
+            if (before != words[x >>> 6]) card++;
+            return this;
+        }
+
+        @Override
+        Container remove(char x) {
+            long before = words[x >>> 6];
+            words[x >>> 6] &= ~(1L << x);
+            if (before != words[x >>> 6]) card--;
+            return card <= ARRAY_LIMIT ? toArray() : this;
+        }
+
+        @Override
+        boolean contains(char x) {
+            return (words[x >>> 6] & (1L << x)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return card;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer a) return a.and(this);
+            BitmapContainer b = (BitmapContainer) other;
+            long[] out = new long[1024];
+            int n = 0;
+            for (int i = 0; i < 1024; i++) {
+                out[i] = words[i] & b.words[i];
+                n += Long.bitCount(out[i]);
+            }
+            BitmapContainer r = new BitmapContainer(out, n);
+            return n <= ARRAY_LIMIT ? r.toArray() : r;
+        }
+
+        @Override
+        Container or(Container other) {
+            BitmapContainer r = (BitmapContainer) copy();
+            if (other instanceof ArrayContainer a) {
+                for (int i = 0; i < a.card; i++) r.add(a.content[i]);
+                return r;
+            }
+            BitmapContainer b = (BitmapContainer) other;
+            int n = 0;
+            for (int i = 0; i < 1024; i++) {
+                r.words[i] |= b.words[i];
+                n += Long.bitCount(r.words[i]);
+            }
+            r.card = n;
+            return r;
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), card);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer consumer) {
+            for (int i = 0; i < 1024; i++) {
+                long w = words[i];
+                while (w != 0) {
+                    consumer.accept(high | (i << 6) | Long.numberOfTrailingZeros(w));
+                    w &= w - 1;
+                }
+            }
+        }
+
+        ArrayContainer toArray() {
+            char[] out = new char[Math.max(card, 1)];
+            int n = 0;
+            for (int i = 0; i < 1024; i++) {
+                long w = words[i];
+                while (w != 0) {
+                    out[n++] = (char) ((i << 6) | Long.numberOfTrailingZeros(w));
+                    w &= w - 1;
+                }
+            }
+            return new ArrayContainer(out, n);
+        }
+    }
+}
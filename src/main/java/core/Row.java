@@ -1,30 +1,94 @@
 package core;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
-public class Row {
-    private final Map<String, Value<?>> values;
+public class Row implements RowAccessor {
+    private final Schema schema;
+    private Value<?>[] values;
+
+    Row(Schema schema, Value<?>[] values) {
+        this.schema = schema;
+        this.values = values;
+    }
 
     public Row(Map<String, Value<?>> values) {
-        this.values = new HashMap<>(values);
+        List<Column> cols = new ArrayList<>(values.size());
+        values.forEach((name, v) -> cols.add(new Column(name, v == null ? DataType.STRING : v.getType())));
+        this.schema = new Schema(cols);
+        this.values = values.values().toArray(new Value<?>[0]);
+    }
+
+    public void setValue(int column, Value<?> value) {
+        values[column] = value;
     }
 
     public void setValue(String columnName, Value<?> value) {
-        values.put(columnName, value);
+        int idx = schema.indexOf(columnName);
+        if (idx < 0) throw new IllegalArgumentException("Unknown column: " + columnName);
+        values[idx] = value;
     }
 
+    @Override
+    public Value<?> getValue(int column) {
+        return column < values.length ? values[column] : null;
+    }
+
+    @Override
     public Value<?> getValue(String columnName) {
-        return values.get(columnName);
+        int idx = schema.indexOf(columnName);
+        return idx < 0 ? null : getValue(idx);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        Value<?> v = getValue(column);
+        return v == null || v.get() == null;
+    }
+
+    @Override
+    public int getInt(int column) {
+        return ((Number) values[column].get()).intValue();
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return ((Number) values[column].get()).doubleValue();
+    }
+
+    @Override
+    public boolean getBoolean(int column) {
+        return (Boolean) values[column].get();
+    }
+
+    @Override
+    public String getString(int column) {
+        Object o = values[column].get();
+        return o == null ? null : String.valueOf(o);
+    }
+
+    @Override
+    public int getCode(int column) {
+        return StringDictionary.NO_CODE;
     }
 
     public Map<String, Value<?>> getValues() {
-        return Collections.unmodifiableMap(values);
+        Map<String, Value<?>> out = new LinkedHashMap<>();
+        for (int i = 0; i < values.length; i++) out.put(schema.get(i).getColumnName(), values[i]);
+        return Collections.unmodifiableMap(out);
+    }
+
+    // отдельная строка с теми же значениями: Value неизменяемы, копируется только массив
+    Row copy() {
+        return new Row(schema, values.clone());
+    }
+
+    void addSlot(Value<?> value) {
+        values = Arrays.copyOf(values, values.length + 1);
+        values[values.length - 1] = value;
     }
 
     @Override
     public String toString() {
-        return values.toString();
+        return getValues().toString();
     }
 }
@@ -0,0 +1,19 @@
+package core;
+
+public interface RowAccessor {
+    Value<?> getValue(int column);
+
+    Value<?> getValue(String columnName);
+
+    boolean isNull(int column);
+
+    int getInt(int column);
+
+    double getDouble(int column);
+
+    boolean getBoolean(int column);
+
+    String getString(int column);
+
+    int getCode(int column);
+}
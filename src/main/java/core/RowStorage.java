@@ -0,0 +1,83 @@
+package core;
+
+import java.util.*;
+
+final class RowStorage implements TableStorage {
+    private final Schema schema;
+    private final List<Row> rows = new ArrayList<>();
+
+    RowStorage(Schema schema) {
+        this.schema = schema;
+    }
+
+    @Override
+    public int size() {
+        return rows.size();
+    }
+
+    @Override
+    public void append(Value<?>[] values) {
+        rows.add(new Row(schema, values));
+    }
+
+    @Override
+    public Value<?> get(int row, int column) {
+        return rows.get(row).getValue(column);
+    }
+
+    @Override
+    public void set(int row, int column, Value<?> value) {
+        rows.get(row).setValue(column, value);
+    }
+
+    @Override
+    public boolean isNull(int row, int column) {
+        return rows.get(row).isNull(column);
+    }
+
+    @Override
+    public int getInt(int row, int column) {
+        return rows.get(row).getInt(column);
+    }
+
+    @Override
+    public double getDouble(int row, int column) {
+        return rows.get(row).getDouble(column);
+    }
+
+    @Override
+    public boolean getBoolean(int row, int column) {
+        return rows.get(row).getBoolean(column);
+    }
+
+    @Override
+    public String getString(int row, int column) {
+        return rows.get(row).getString(column);
+    }
+
+    @Override
+    public Row getRow(int row) {
+        // наружу уходит копия: через Row.setValue нельзя менять зафиксированную версию
+        return rows.get(row).copy();
+    }
+
+    @Override
+    public List<Row> rows() {
+        List<Row> out = new ArrayList<>(rows.size());
+        for (Row r : rows) out.add(r.copy());
+        return out;
+    }
+
+    @Override
+    public void addColumn(Column column) {
+        for (Row r : rows) {
+            r.addSlot(Value.nullOf(column.getColumnType()));
+        }
+    }
+
+    @Override
+    public void remove(BitSet removed) {
+        int[] idx = {0};
+        rows.removeIf(r -> removed.get(idx[0]++));
+    }
+}
@@ -0,0 +1,36 @@
+package core;
+
+import java.util.*;
+
+public final class Schema {
+    private final List<Column> columns = new ArrayList<>();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+
+    public Schema(List<Column> columns) {
+        for (Column c : columns) add(c);
+    }
+
+    public int size() {
+        return columns.size();
+    }
+
+    public Column get(int ordinal) {
+        return columns.get(ordinal);
+    }
+
+    public int indexOf(String columnName) {
+        Integer idx = ordinals.get(columnName);
+        return idx == null ? -1 : idx;
+    }
+
+    public List<Column> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    void add(Column column) {
+        if (ordinals.putIfAbsent(column.getColumnName(), columns.size()) != null) {
+            throw new RuntimeException("Column " + column.getColumnName() + " already exists");
+        }
+        columns.add(column);
+    }
+}
@@ -0,0 +1,54 @@
+package core;
+
+// Общая часть вторичных индексов: таблица сама поддерживает их при вставке, обновлении и удалении.
+public abstract class SecondaryIndex {
+    protected final String name;
+    protected final int column;
+    protected final DataType type;
+
+    SecondaryIndex(String name, int column, DataType type) {
+        this.name = name;
+        this.column = column;
+        this.type = type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    // приводит литерал из WHERE к типу ключа; null, если литерал несравним с колонкой
+    public Object keyOf(Object literal) {
+        return keyOf(type, literal);
+    }
+
+    static Object keyOf(DataType type, Object literal) {
+        if (literal == null) return null;
+        return switch (type) {
+            case INTEGER, DOUBLE -> literal instanceof Number n ? n.doubleValue() : null;
+            case STRING -> literal instanceof String s ? s : null;
+            case BOOLEAN -> literal instanceof Boolean b ? b : null;
+        };
+    }
+
+    abstract void add(RowAccessor row, int rowId);
+
+    abstract void remove(RowAccessor row, int rowId);
+
+    abstract void clear();
+
+    protected Object read(RowAccessor row) {
+        return read(row, column, type);
+    }
+
+    static Object read(RowAccessor row, int column, DataType type) {
+        return switch (type) {
+            case INTEGER, DOUBLE -> row.getDouble(column);
+            case STRING -> row.getString(column);
+            case BOOLEAN -> row.getBoolean(column);
+        };
+    }
+}
@@ -0,0 +1,3 @@
+package core;
+
+public enum StorageMode { ROW, COLUMNAR, OFF_HEAP }
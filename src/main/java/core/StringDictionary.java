@@ -0,0 +1,45 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Коды выдаются по порядку и не меняются, пока словарь не выведен из употребления.
+public class StringDictionary {
+    // у значения нет кода: колонка не закодирована словарём (или перестала быть закодированной)
+    public static final int NO_CODE = -2;
+
+    private final List<String> values = new ArrayList<>();
+    private final Map<String, Integer> codes = new HashMap<>();
+    private volatile boolean retired;
+
+    public int size() {
+        return values.size();
+    }
+
+    public String get(int code) {
+        return values.get(code);
+    }
+
+    public int codeOf(String value) {
+        Integer code = codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    public boolean isRetired() {
+        return retired;
+    }
+
+    int encode(String value) {
+        Integer code = codes.get(value);
+        if (code != null) return code;
+        values.add(value);
+        codes.put(value, values.size() - 1);
+        return values.size() - 1;
+    }
+
+    void retire() {
+        retired = true;
+    }
+}
@@ -1,94 +1,888 @@
 package core;
 
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
-public class Table {
+public class Table implements AutoCloseable {
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
     private final String tableName;
-    private final List<Column> columns;
-    private final List<Row> rows;
+    private final Schema schema;
+    private final StorageMode storageMode;
+    private final TableStorage storage;
+    private PrimaryKeyIndex primaryKey;
+    // новый индекс публикуется новой картой: планировщик читает индексы без блокировок
+    private volatile Map<String, SecondaryIndex> indexes = Map.of();
+    private volatile ZoneMap zones;
+    // ключ строится при первом обращении; у таблицы, открытой из файла, так же строятся зоны и индексы
+    private boolean keyLoaded;
+    private volatile boolean zonesLoaded = true;
+    private volatile boolean indexesLoaded = true;
+    private WriteAheadLog wal;
+    // снимки фоновых контрольных точек, которые ещё читают строки прямо из таблицы
+    private final List<TableSnapshot> snapshots = new ArrayList<>();
+
+    // MVCC: изменения дописывают новые версии строк под монитором таблицы, читатели без блокировок
+    // видят опубликованные строки своего снимка. Номера строк меняет только сборка старых версий:
+    // она берёт scanLock на запись и только тогда, когда таблицу никто не читает.
+    private TransactionManager tx = new TransactionManager();
+    private boolean ownsTransactions = true;
+    private volatile Versions versions;   // null — все строки вставлены в момент 0
+    private volatile int published;
+    private final ReentrantReadWriteLock scanLock = new ReentrantReadWriteLock();
+    private boolean closed;
+    // автоматические вставки из многих потоков собираются в группы
+    private final InsertStripes stripes = new InsertStripes();
 
     public Table(String tableName, List<Column> columns) {
+        this(tableName, columns, StorageMode.ROW);
+    }
+
+    public Table(String tableName, List<Column> columns, StorageMode storageMode) {
+        this(tableName, columns, storageMode, UNLIMITED);
+    }
+
+    public Table(String tableName, List<Column> columns, StorageMode storageMode, long memoryLimit) {
+        this(tableName, columns, storageMode, memoryLimit, null);
+    }
+
+    // конструктор не передаёт this наружу: индекс ключа строится при первом обращении
+    Table(String tableName, List<Column> columns, StorageMode storageMode, long memoryLimit, TableFile file) {
+        Schema schema = new Schema(Objects.requireNonNull(columns, "columns"));
         this.tableName = Objects.requireNonNull(tableName, "tableName");
-        this.columns = new ArrayList<>(Objects.requireNonNull(columns, "columns"));
-        this.rows = new ArrayList<>();
+        this.schema = schema;
+        this.storageMode = Objects.requireNonNull(storageMode, "storageMode");
+        this.storage = file == null ? newStorage(storageMode, tableName, schema, memoryLimit)
+                : new DiskStorage(schema, file, () -> newStorage(storageMode, tableName, schema, memoryLimit));
+        this.zones = new ZoneMap(schema);
+        this.published = storage.size();
+        if (file != null) zonesLoaded = false;
+    }
+
+    private static TableStorage newStorage(StorageMode mode, String tableName, Schema schema, long memoryLimit) {
+        return switch (mode) {
+            case ROW -> new RowStorage(schema);
+            case COLUMNAR -> new ColumnarStorage(schema);
+            case OFF_HEAP -> new OffHeapStorage(tableName, schema, memoryLimit);
+        };
     }
 
     public String getTableName() {
         return tableName;
     }
 
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    public long getOffHeapBytes() {
+        return offHeap() instanceof OffHeapStorage s ? s.allocatedBytes() : 0;
+    }
+
+    public long getMemoryLimit() {
+        return offHeap() instanceof OffHeapStorage s ? s.memoryLimit() : UNLIMITED;
+    }
+
+    // строки ещё читаются из отображённого файла таблицы
+    public boolean isMapped() {
+        return storage instanceof DiskStorage d && d.isMapped();
+    }
+
+    Path unchangedFile() {
+        Versions vs = versions;
+        if (vs != null && vs.hidden() > 0) return null;
+        return storage instanceof DiskStorage d ? d.unchangedFile() : null;
+    }
+
+    private TableStorage offHeap() {
+        return storage instanceof DiskStorage d ? d.memory() : storage;
+    }
+
+    // строки, видимые текущему оператору; список — собственная копия вызывающего, его не меняют
+    // ни вставки, ни сборка старых версий после закрытия вида
     public List<Row> getRows() {
-        return rows;
+        try (ReadView v = openView()) {
+            TableCursor c = new TableCursor(this, v);
+            if (c.allVisible()) {
+                List<Row> out = new ArrayList<>(c.limit());
+                for (int r = 0; r < c.limit(); r++) out.add(storage.getRow(r));
+                return out;
+            }
+            List<Row> out = new ArrayList<>();
+            while (c.next()) out.add(storage.getRow(c.rowId()));
+            return out;
+        }
+    }
+
+    // номера строк, видимых текущему оператору
+    public IntList rowIds() {
+        try (ReadView v = openView()) {
+            TableCursor c = new TableCursor(this, v);
+            if (c.allVisible()) return IntList.range(0, c.limit());
+            IntList ids = new IntList();
+            while (c.next()) ids.add(c.rowId());
+            return ids;
+        }
+    }
+
+    public int rowCount() {
+        try (ReadView v = openView()) {
+            TableCursor c = new TableCursor(this, v);
+            if (c.allVisible()) return c.limit();
+            int n = 0;
+            while (c.next()) n++;
+            return n;
+        }
     }
 
     public List<Column> getColumns() {
-        return Collections.unmodifiableList(columns);
+        return schema.getColumns();
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    public int columnIndex(String columnName) {
+        return schema.indexOf(columnName);
+    }
+
+    // граница номеров строк вместе со старыми версиями; видимые строки отбирает курсор
+    public int size() {
+        return published;
+    }
+
+    public TableCursor cursor() {
+        return new TableCursor(this, tx.currentView());
+    }
+
+    // Вид для чтения снимка: пока он открыт, номера строк таблицы не меняются. Вложенные
+    // открытия в одном потоке возвращают тот же вид, закрывать нужно каждое.
+    public ReadView openView() {
+        ReadView v = tx.openView();
+        v.lock(this);
+        return v;
+    }
+
+    Versions versions() {
+        return versions;
+    }
+
+    ReentrantReadWriteLock scanLock() {
+        return scanLock;
+    }
+
+    // таблицы базы делят одни часы коммитов
+    void attachTransactions(TransactionManager manager) {
+        if (ownsTransactions) tx.close();
+        tx = manager;
+        ownsTransactions = false;
+    }
+
+    // как и getRow(rowId, columns, schema), возвращает отдельную строку, а не хранимую версию
+    public Row getRow(int rowId) {
+        return storage.getRow(rowId);
+    }
+
+    // строка только из колонок columns (в их порядке); schema — их общая схема для всей выборки
+    public Row getRow(int rowId, int[] columns, Schema schema) {
+        Value<?>[] vs = new Value<?>[columns.length];
+        for (int i = 0; i < vs.length; i++) vs[i] = storage.get(rowId, columns[i]);
+        return new Row(schema, vs);
+    }
+
+    public Value<?> getValue(int rowId, int column) {
+        return storage.get(rowId, column);
+    }
+
+    public boolean isNull(int rowId, int column) {
+        return storage.isNull(rowId, column);
+    }
+
+    public int getInt(int rowId, int column) {
+        return storage.getInt(rowId, column);
+    }
+
+    public double getDouble(int rowId, int column) {
+        return storage.getDouble(rowId, column);
+    }
+
+    public boolean getBoolean(int rowId, int column) {
+        return storage.getBoolean(rowId, column);
+    }
+
+    public String getString(int rowId, int column) {
+        return storage.getString(rowId, column);
+    }
+
+    public ZoneMap zoneMap() {
+        if (!zonesLoaded) {
+            synchronized (this) {
+                if (!zonesLoaded) rebuildZones();
+            }
+        }
+        return zones;
+    }
+
+    public StringDictionary dictionary(int column) {
+        return storage.dictionary(column);
+    }
+
+    public int getCode(int rowId, int column) {
+        return storage.getCode(rowId, column);
+    }
+
+    // пакетное чтение строк [from, from + length) одной колонки; NULL отмечается в nulls,
+    // значение на его месте не определено. Вызывающий держит открытый вид, как и для getInt.
+    public void readNulls(int column, int from, int length, boolean[] nulls) {
+        storage.readNulls(column, from, length, nulls);
+    }
+
+    public void readInts(int column, int from, int length, int[] out) {
+        storage.readInts(column, from, length, out);
+    }
+
+    public void readDoubles(int column, int from, int length, double[] out) {
+        storage.readDoubles(column, from, length, out);
+    }
+
+    public void readCodes(int column, int from, int length, int[] out) {
+        storage.readCodes(column, from, length, out);
     }
 
     public void insert(Map<String, Object> rawValues) {
-        Map<String, Value<?>> vs = new HashMap<>();
-        for (Column c : columns) {
-            Object raw = rawValues.get(c.getColumnName());
-            Value<?> v = coerceToValue(c, raw);
-            vs.put(c.getColumnName(), v);
+        Value<?>[] vs = new Value<?>[schema.size()];
+        for (int i = 0; i < vs.length; i++) {
+            Column c = schema.get(i);
+            vs[i] = coerceToValue(c, rawValues.get(c.getColumnName()));
         }
-        rows.add(new Row(vs));
+        appendRow(vs);
     }
 
     public void addRow(Row row) {
-        rows.add(row);
+        Value<?>[] vs = new Value<?>[schema.size()];
+        for (int i = 0; i < vs.length; i++) {
+            Column c = schema.get(i);
+            Value<?> v = row.getValue(c.getColumnName());
+            vs[i] = coerceToValue(c, v == null ? null : v.get());
+        }
+        appendRow(vs);
     }
 
-    public List<Row> select(Predicate<Row> predicate) {
-        return rows.stream().filter(predicate).collect(Collectors.toList());
+    // Вставка пачки строк одним оператором: номера колонок и приведение типов разрешаются один раз
+    // на пачку, ключи проверяются до первой записи, строки дописываются за один захват монитора.
+    // Пачка вставляется целиком или не вставляется; не названные колонки получают NULL
+    public int insertBatch(List<String> columnNames, List<Object[]> rows) {
+        int n = schema.size();
+        int[] ordinals = new int[columnNames.size()];
+        List<Function<Object, Value<?>>> coercers = new ArrayList<>(ordinals.length);
+        for (int j = 0; j < ordinals.length; j++) {
+            ordinals[j] = columnIndex(columnNames.get(j));
+            if (ordinals[j] < 0) throw new RuntimeException("No column named " + columnNames.get(j) + " in table " + tableName);
+            coercers.add(coercer(schema.get(ordinals[j])));
+        }
+        List<Value<?>[]> batch = new ArrayList<>(rows.size());
+        for (Object[] raw : rows) {
+            if (raw.length != ordinals.length) {
+                throw new IllegalArgumentException("Expected " + ordinals.length + " values per row, got " + raw.length);
+            }
+            Value<?>[] vs = new Value<?>[n];
+            for (int j = 0; j < ordinals.length; j++) vs[ordinals[j]] = coercers.get(j).apply(raw[j]);
+            for (int c = 0; c < n; c++) {
+                if (vs[c] == null) vs[c] = Value.nullOf(schema.get(c).getColumnType());
+            }
+            batch.add(vs);
+        }
+        appendRows(batch);
+        return batch.size();
     }
 
-    public int update(Predicate<Row> predicate, Map<String, Object> newValues) {
-        int count = 0;
-        for (Row r : rows) {
-            if (predicate.test(r)) {
-                for (Map.Entry<String, Object> e : newValues.entrySet()) {
-                    Column col = findColumn(e.getKey());
-                    if (col == null) continue;
-                    r.setValue(col.getColumnName(), coerceToValue(col, e.getValue()));
-                }
-                count++;
+    public List<Row> select(Predicate<? super RowAccessor> predicate) {
+        try (ReadView v = openView()) {
+            List<Row> out = new ArrayList<>();
+            TableCursor c = new TableCursor(this, v);
+            while (c.next()) {
+                if (predicate.test(c)) out.add(getRow(c.rowId()));
             }
+            return out;
         }
-        return count;
     }
 
-    public int delete(Predicate<Row> predicate) {
-        int before = rows.size();
-        rows.removeIf(predicate);
-        return before - rows.size();
+    public int update(Predicate<? super RowAccessor> predicate, Map<String, Object> newValues) {
+        ReadView v = openView();
+        try {
+            return update(matching(predicate), newValues);
+        } finally {
+            v.close();
+        }
+    }
+
+    // изменение собирается под монитором таблицы, коммит и ожидание журнала идут уже без него:
+    // коммит берёт блокировку часов, а под ней — мониторы таблиц.
+    // Новая версия дописывается в конец, поэтому выборка без ORDER BY отдаёт изменённые строки последними
+    public int update(IntList rowIds, Map<String, Object> newValues) {
+        IntList targets = new IntList(newValues.size());
+        List<Value<?>> coerced = new ArrayList<>(newValues.size());
+        boolean touchesKey = false;
+        for (Map.Entry<String, Object> e : newValues.entrySet()) {
+            int idx = columnIndex(e.getKey());
+            if (idx < 0) continue;
+            targets.add(idx);
+            coerced.add(coerceToValue(schema.get(idx), e.getValue()));
+            touchesKey |= schema.get(idx).isPrimaryKey();
+        }
+        if (rowIds.isEmpty() || targets.isEmpty()) return rowIds.size();
+
+        Transaction t = tx.writer();
+        synchronized (this) {
+            // всё проверяется до первой записи: изменение применяется целиком или не применяется
+            Versions vs = ensureVersions();
+            for (int i = 0; i < rowIds.size(); i++) checkWritable(vs, rowIds.get(i));
+            PrimaryKeyIndex pk = primaryKey();
+            boolean rekey = touchesKey && pk != null;
+            if (rekey) checkKeyUpdate(rowIds, targets, coerced, t);
+
+            // старая версия закрывается, новая дописывается в конец
+            Transaction.Writes w = t.writes(this);
+            for (int i = 0; i < rowIds.size(); i++) {
+                int old = rowIds.get(i);
+                Value<?>[] values = new Value<?>[schema.size()];
+                for (int c = 0; c < values.length; c++) values[c] = storage.get(old, c);
+                for (int j = 0; j < targets.size(); j++) values[targets.get(j)] = coerced.get(j);
+                Row row = new Row(schema, values);
+                vs.setEnd(old, t.marker());
+                w.ended.add(old);
+                appendVersion(values, row, pk == null ? -1 : rekey ? pk.find(row) : old, t, w);
+            }
+            if (wal != null) t.logged(wal.logUpdate(tableName, logId(t), rowIds, targets, coerced));
+        }
+        tx.finish(t);
+        return rowIds.size();
+    }
+
+    public int delete(Predicate<? super RowAccessor> predicate) {
+        ReadView v = openView();
+        try {
+            return delete(matching(predicate));
+        } finally {
+            v.close();
+        }
+    }
+
+    // удалённые строки остаются старыми версиями, пока их может увидеть чей-то снимок
+    public int delete(IntList rowIds) {
+        if (rowIds.isEmpty()) return 0;
+        BitSet removed = new BitSet(size());
+        for (int i = 0; i < rowIds.size(); i++) removed.set(rowIds.get(i));
+        Transaction t = tx.writer();
+        synchronized (this) {
+            Versions vs = ensureVersions();
+            for (int r = removed.nextSetBit(0); r >= 0; r = removed.nextSetBit(r + 1)) checkWritable(vs, r);
+            Transaction.Writes w = t.writes(this);
+            for (int r = removed.nextSetBit(0); r >= 0; r = removed.nextSetBit(r + 1)) {
+                vs.setEnd(r, t.marker());
+                w.ended.add(r);
+            }
+            if (wal != null) t.logged(wal.logDelete(tableName, logId(t), rowIds));
+        }
+        tx.finish(t);
+        return removed.cardinality();
+    }
+
+    public synchronized OrderedIndex createIndex(String indexName, String columnName) {
+        int col = indexColumn(indexName, columnName);
+        return register(new OrderedIndex(indexName, col, schema.get(col).getColumnType()));
+    }
+
+    public synchronized BitmapIndex createBitmapIndex(String indexName, String columnName) {
+        int col = indexColumn(indexName, columnName);
+        return register(new BitmapIndex(indexName, col, schema.get(col).getColumnType()));
+    }
+
+    public Collection<SecondaryIndex> getIndexes() {
+        return indexes().values();
+    }
+
+    // индексы без заполнения: каталогу и контрольной точке нужны только их определения
+    Collection<SecondaryIndex> declaredIndexes() {
+        return indexes.values();
+    }
+
+    // индекс из каталога открытой базы; строки в него попадают при первом обращении к индексам
+    synchronized void declareIndex(String indexName, String columnName, boolean bitmap) {
+        int col = indexColumn(indexName, columnName);
+        DataType type = schema.get(col).getColumnType();
+        publish(bitmap ? new BitmapIndex(indexName, col, type) : new OrderedIndex(indexName, col, type));
+        indexesLoaded = false;
+    }
+
+    public OrderedIndex orderedIndex(int column) {
+        for (SecondaryIndex idx : indexes().values()) {
+            if (idx instanceof OrderedIndex o && o.getColumn() == column) return o;
+        }
+        return null;
     }
 
-    private Column findColumn(String name) {
-        for (Column c : columns) {
-            if (c.getColumnName().equals(name)) return c;
+    public BitmapIndex bitmapIndex(int column) {
+        for (SecondaryIndex idx : indexes().values()) {
+            if (idx instanceof BitmapIndex b && b.getColumn() == column) return b;
         }
         return null;
     }
 
+    public boolean hasPrimaryKey() {
+        return primaryKey() != null;
+    }
+
+    // колонка первичного ключа из одной колонки, иначе -1
+    public int primaryKeyColumn() {
+        PrimaryKeyIndex pk = primaryKey();
+        return pk != null && pk.columns().length == 1 ? pk.columns()[0] : -1;
+    }
+
+    // индекс ключа хранит последнюю версию; старые снимки идут по цепочке предыдущих версий
+    public int lookupPrimaryKey(Object literal) {
+        ReadView v = tx.currentView();
+        synchronized (this) {
+            PrimaryKeyIndex pk = primaryKey();
+            if (pk == null) return -1;
+            int row = pk.lookup(literal);
+            Versions vs = versions;
+            if (vs == null) return row;
+            while (row >= 0 && !v.sees(vs.begin(row), vs.end(row))) row = vs.prev(row);
+            return row;
+        }
+    }
+
+    private IntList matching(Predicate<? super RowAccessor> predicate) {
+        IntList ids = new IntList();
+        TableCursor c = cursor();
+        while (c.next()) {
+            if (predicate.test(c)) ids.add(c.rowId());
+        }
+        return ids;
+    }
+
+    void appendRow(Value<?>[] values) {
+        if (tx.current() == null) {
+            ingest(values);
+            return;
+        }
+        Transaction t = tx.writer();
+        synchronized (this) {
+            Row candidate = new Row(schema, values);
+            PrimaryKeyIndex pk = primaryKey();
+            int prev = -1;
+            if (pk != null) {
+                prev = pk.find(candidate);
+                checkKeyFree(prev, candidate, t);
+            }
+            if (wal != null) t.logged(wal.logInsert(tableName, logId(t), values));
+            appendVersion(values, candidate, prev, t, t.writes(this));
+        }
+    }
+
+    private void appendRows(List<Value<?>[]> batch) {
+        if (batch.isEmpty()) return;
+        Transaction t = tx.batchWriter();
+        long txn = logId(t);
+        Row[] rows = new Row[batch.size()];
+        for (int i = 0; i < rows.length; i++) rows[i] = new Row(schema, batch.get(i));
+        // записи журнала кодируются до захвата монитора
+        WriteAheadLog log = wal;
+        byte[][] frames = null;
+        if (log != null) {
+            frames = new byte[rows.length][];
+            for (int i = 0; i < rows.length; i++) frames[i] = WriteAheadLog.insertFrame(tableName, txn, batch.get(i));
+        }
+        synchronized (this) {
+            PrimaryKeyIndex pk = primaryKey();
+            int[] prevs = new int[rows.length];
+            Arrays.fill(prevs, -1);
+            if (pk != null) {
+                PrimaryKeyIndex seen = new PrimaryKeyIndex(schema, pk.columns());
+                for (int i = 0; i < rows.length; i++) {
+                    if (seen.find(rows[i]) >= 0) throw duplicateKey(rows[i]);
+                    seen.put(rows[i], i);
+                    prevs[i] = pk.find(rows[i]);
+                    checkKeyFree(prevs[i], rows[i], t);
+                }
+            }
+            Transaction.Writes w = t.writes(this);
+            for (int i = 0; i < rows.length; i++) {
+                if (wal != null) {
+                    t.logged(wal.append(wal == log ? frames[i] : WriteAheadLog.insertFrame(tableName, txn, batch.get(i))));
+                }
+                appendVersion(batch.get(i), rows[i], prevs[i], t, w);
+            }
+        }
+        tx.finish(t);
+    }
+
+    // Вставка вне явной транзакции. Строка и запись журнала готовятся в потоке вставки без
+    // блокировок, в монитор таблицы строки разных потоков попадают группой и коммитятся вместе
+    private void ingest(Value<?>[] values) {
+        WriteAheadLog log = wal;
+        InsertStripes.Pending p = new InsertStripes.Pending(values, new Row(schema, values),
+                log == null ? null : WriteAheadLog.insertFrame(tableName, 0, values));
+        stripes.insert(p, this::combine);
+        if (p.error != null) throw p.error;
+        if (log != null) log.awaitCommit(p.lsn);
+    }
+
+    // вызывается одним потоком за раз; ошибка строки (повтор ключа) не мешает остальным
+    private void combine() {
+        List<InsertStripes.Pending> batch = stripes.drain();
+        if (batch.isEmpty()) return;
+        Transaction t = tx.writer();
+        try {
+            synchronized (this) {
+                PrimaryKeyIndex pk = primaryKey();
+                Transaction.Writes w = t.writes(this);
+                for (InsertStripes.Pending p : batch) {
+                    try {
+                        int prev = -1;
+                        if (pk != null) {
+                            prev = pk.find(p.row);
+                            checkKeyFree(prev, p.row, t);
+                        }
+                        if (wal != null) {
+                            p.lsn = wal.append(p.frame != null ? p.frame : WriteAheadLog.insertFrame(tableName, 0, p.values));
+                            t.logged(p.lsn);
+                        }
+                        appendVersion(p.values, p.row, prev, t, w);
+                    } catch (RuntimeException e) {
+                        p.error = e;
+                    }
+                }
+            }
+            tx.publish(t);
+        } finally {
+            for (InsertStripes.Pending p : batch) p.finish();
+        }
+    }
+
+    // Массовая загрузка из контрольной точки: строки кладутся в хранилище как есть, без проверки
+    // ключа и журнала на каждую строку; первичный ключ строится один раз в конце, зоны — лениво
+    synchronized void bulkLoad(int rows, IntFunction<Value<?>[]> row) {
+        for (int r = 0; r < rows; r++) storage.append(row.apply(r));
+        published = storage.size();
+        zonesLoaded = false;
+        rebuildPrimaryKey();
+        if (indexesLoaded) for (SecondaryIndex idx : indexes.values()) fill(idx);
+    }
+
+    // Снимок последнего коммита для фоновой записи: он запоминает номера своих строк и получает
+    // собственную копию перед сборкой старых версий или закрытием таблицы (copy-on-write)
+    synchronized TableSnapshot freeze() {
+        TableCursor c = new TableCursor(this, tx.latestView());
+        IntList ids = new IntList();
+        while (c.next()) ids.add(c.rowId());
+        TableSnapshot s = new TableSnapshot(this, ids);
+        snapshots.add(s);
+        return s;
+    }
+
+    synchronized void release(TableSnapshot snapshot) {
+        snapshots.remove(snapshot);
+    }
+
+    private void detachSnapshots() {
+        for (TableSnapshot s : snapshots) s.detach();
+        snapshots.clear();
+    }
+
+    // коммит: версиям транзакции проставляется его время
+    synchronized void stamp(Transaction.Writes w, long ts) {
+        Versions vs = versions;
+        for (int i = 0; i < w.created.size(); i++) vs.setBegin(w.created.get(i), ts);
+        for (int i = 0; i < w.ended.size(); i++) vs.setEnd(w.ended.get(i), ts);
+    }
+
+    // откат: закрытые версии снова живы, вставленные помечаются отменёнными,
+    // а индекс ключа возвращается к предыдущим версиям
+    synchronized void undo(Transaction.Writes w) {
+        Versions vs = versions;
+        for (int i = 0; i < w.ended.size(); i++) vs.setEnd(w.ended.get(i), Versions.NEVER);
+        for (int i = w.created.size() - 1; i >= 0; i--) {
+            int row = w.created.get(i);
+            vs.setBegin(row, Versions.NEVER);
+            if (primaryKey == null) continue;
+            Row r = storage.getRow(row);
+            if (primaryKey.find(r) != row) continue;
+            if (vs.prev(row) >= 0) primaryKey.put(r, vs.prev(row));
+            else primaryKey.remove(r);
+        }
+    }
+
+    // Фоновая сборка; true — таблица больше не требует внимания. Строки, которые уже не увидит
+    // ни один снимок, сначала только отмечаются мёртвыми (дёшево, по числу удалённых строк);
+    // таблица переписывается, когда доля мёртвых строк доходит до порога
+    boolean autoVacuum() {
+        Versions vs = versions;
+        if (closed || vs == null || vs.hidden() == 0) return true;
+        synchronized (this) {
+            vs.markDead(tx.horizon());
+        }
+        if (vs.marked() < tx.vacuumThreshold() * vs.size()) return vs.hidden() == vs.marked();
+        return vs.pending() == 0 && vacuum(false);
+    }
+
+    // Убирает версии, которые уже не увидит ни один снимок, и сдвигает номера строк. Без wait
+    // сборка идёт, только если таблицу сейчас никто не читает; таблица с незавершёнными
+    // изменениями не собирается, потому что транзакции помнят номера своих строк.
+    // Возвращает true, если старых версий не осталось.
+    boolean vacuum(boolean wait) {
+        if (scanLock.getReadHoldCount() > 0) {
+            if (wait) throw new IllegalStateException("Cannot vacuum table " + tableName + " while reading it");
+            return false;
+        }
+        Lock lock = scanLock.writeLock();
+        if (wait) lock.lock();
+        else if (!lock.tryLock()) return false;
+        try {
+            synchronized (this) {
+                Versions vs = versions;
+                if (closed || vs == null) return true;
+                if (vs.pending() > 0) return false;
+                BitSet dead = vs.dead(tx.horizon());
+                if (!dead.isEmpty()) {
+                    IntList ids = new IntList(dead.cardinality());
+                    for (int r = dead.nextSetBit(0); r >= 0; r = dead.nextSetBit(r + 1)) ids.add(r);
+                    compact(dead);
+                    if (wal != null) wal.logVacuum(tableName, ids);
+                }
+                return vs.hidden() == 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // повтор сборки из журнала
+    synchronized void applyVacuum(IntList rowIds) {
+        BitSet dead = new BitSet(size());
+        for (int i = 0; i < rowIds.size(); i++) dead.set(rowIds.get(i));
+        compact(dead);
+    }
+
+    private void compact(BitSet dead) {
+        detachSnapshots();
+        storage.remove(dead);
+        if (versions != null) versions.remove(dead);
+        published = storage.size();
+        zonesLoaded = false;
+        rebuildPrimaryKey();
+        if (indexesLoaded) for (SecondaryIndex idx : indexes.values()) fill(idx);
+    }
+
+    private Versions ensureVersions() {
+        if (versions == null) versions = new Versions(storage.size());
+        return versions;
+    }
+
+    // вызывается под монитором; читатели видят строку только после публикации
+    private void appendVersion(Value<?>[] values, Row row, int prev, Transaction t, Transaction.Writes w) {
+        Versions vs = ensureVersions();
+        storage.append(values);
+        int rowId = storage.size() - 1;
+        vs.append(t.marker(), prev);
+        w.created.add(rowId);
+        if (zonesLoaded) zones.add(row, rowId);
+        if (primaryKey != null) primaryKey.put(row, rowId);
+        if (indexesLoaded) for (SecondaryIndex idx : indexes.values()) idx.add(row, rowId);
+        published = rowId + 1;
+    }
+
+    // изменить можно только последнюю версию строки, которую никто не закрыл
+    private void checkWritable(Versions vs, int row) {
+        if (vs.end(row) != Versions.NEVER) throw writeConflict();
+    }
+
+    // ключ свободен, если его последняя версия удалена или вставка отменена
+    private void checkKeyFree(int newest, Row candidate, Transaction t) {
+        if (newest < 0 || versions == null) {
+            if (newest >= 0) throw duplicateKey(candidate);
+            return;
+        }
+        long begin = versions.begin(newest);
+        long end = versions.end(newest);
+        if (begin == Versions.NEVER) return;
+        if (end == Versions.NEVER) {
+            if (begin < 0 && begin != t.marker()) throw writeConflict();
+            throw duplicateKey(candidate);
+        }
+        if (end < 0 && end != t.marker()) throw writeConflict();
+    }
+
+    private RuntimeException writeConflict() {
+        return new RuntimeException("Write conflict in table " + tableName
+                + ": row was changed by a concurrent transaction");
+    }
+
+    // записи автоматических транзакций в журнале коммитятся сами
+    private static long logId(Transaction t) {
+        return t.isAutoCommit() && !t.isGrouped() ? 0 : t.getId();
+    }
+
+    // null — изменения таблицы не журналируются
+    void attachLog(WriteAheadLog wal) {
+        this.wal = wal;
+    }
+
+    private int indexColumn(String indexName, String columnName) {
+        if (indexes.containsKey(indexName)) {
+            throw new RuntimeException("Index " + indexName + " already exists on table " + tableName);
+        }
+        int col = columnIndex(columnName);
+        if (col < 0) throw new RuntimeException("No column named " + columnName + " in table " + tableName);
+        return col;
+    }
+
+    // вызывается под монитором: вставки ждут, пока индекс заполняется, и сразу попадают в него
+    private <I extends SecondaryIndex> I register(I idx) {
+        if (indexesLoaded) {
+            fill(idx);
+            publish(idx);
+        } else {
+            publish(idx);
+            indexes();
+        }
+        if (wal != null) wal.logCreateIndex(tableName, idx, schema.get(idx.getColumn()).getColumnName());
+        return idx;
+    }
+
+    private void publish(SecondaryIndex idx) {
+        Map<String, SecondaryIndex> next = new LinkedHashMap<>(indexes);
+        next.put(idx.getName(), idx);
+        indexes = Collections.unmodifiableMap(next);
+    }
+
+    // читатель берёт индексы без блокировок, когда они уже заполнены
+    private Map<String, SecondaryIndex> indexes() {
+        if (!indexesLoaded) {
+            synchronized (this) {
+                if (!indexesLoaded) {
+                    for (SecondaryIndex idx : indexes.values()) fill(idx);
+                    indexesLoaded = true;
+                }
+            }
+        }
+        return indexes;
+    }
+
+    // индексы и зоны охватывают все версии строк
+    private void fill(SecondaryIndex idx) {
+        idx.clear();
+        TableCursor c = new TableCursor(this, null);
+        while (c.next()) idx.add(c, c.rowId());
+    }
+
+    // читатели пользуются прежней картой, пока строится новая
+    private void rebuildZones() {
+        ZoneMap fresh = new ZoneMap(schema);
+        TableCursor c = new TableCursor(this, null);
+        while (c.next()) fresh.add(c, c.rowId());
+        zones = fresh;
+        zonesLoaded = true;
+    }
+
+    private synchronized PrimaryKeyIndex primaryKey() {
+        if (!keyLoaded) rebuildPrimaryKey();
+        return primaryKey;
+    }
+
+    // Новые ключи не должны совпасть ни друг с другом, ни с живыми строками вне изменения;
+    // ключ строки, которую меняет тот же оператор, освобождается вместе с её старой версией
+    private void checkKeyUpdate(IntList rowIds, IntList targets, List<Value<?>> coerced, Transaction t) {
+        BitSet updated = new BitSet(size());
+        for (int i = 0; i < rowIds.size(); i++) updated.set(rowIds.get(i));
+        PrimaryKeyIndex seen = new PrimaryKeyIndex(schema, primaryKey.columns());
+        for (int i = 0; i < rowIds.size(); i++) {
+            int rowId = rowIds.get(i);
+            Value<?>[] vs = new Value<?>[schema.size()];
+            for (int c = 0; c < vs.length; c++) vs[c] = storage.get(rowId, c);
+            for (int j = 0; j < targets.size(); j++) vs[targets.get(j)] = coerced.get(j);
+            Row candidate = new Row(schema, vs);
+            if (seen.find(candidate) >= 0) throw duplicateKey(candidate);
+            seen.put(candidate, i);
+            int existing = primaryKey.find(candidate);
+            if (existing >= 0 && !updated.get(existing)) checkKeyFree(existing, candidate, t);
+        }
+    }
+
+    private RuntimeException duplicateKey(Row row) {
+        StringJoiner key = new StringJoiner(", ");
+        for (int c : primaryKey.columns()) key.add(String.valueOf(row.getValue(c)));
+        return new RuntimeException("Duplicate primary key (" + key + ") in table " + tableName);
+    }
+
+    private void rebuildPrimaryKey() {
+        keyLoaded = true;
+        IntList pkColumns = new IntList();
+        for (int i = 0; i < schema.size(); i++) {
+            if (schema.get(i).isPrimaryKey()) pkColumns.add(i);
+        }
+        if (pkColumns.isEmpty()) {
+            primaryKey = null;
+            return;
+        }
+        primaryKey = new PrimaryKeyIndex(schema, pkColumns.toArray());
+        Versions vs = versions;
+        TableCursor c = new TableCursor(this, null);
+        while (c.next()) {
+            // версии одного ключа идут по возрастанию номеров, в индексе остаётся последняя
+            if (vs != null) {
+                if (vs.begin(c.rowId()) != Versions.NEVER) primaryKey.put(c, c.rowId());
+                continue;
+            }
+            if (primaryKey.find(c) >= 0) throw duplicateKey(getRow(c.rowId()));
+            primaryKey.put(c, c.rowId());
+        }
+    }
+
     private Value<?> coerceToValue(Column col, Object raw) {
         DataType t = col.getColumnType();
-        if (raw == null) return new Value<>(null, t);
+        if (raw == null) return Value.nullOf(t);
 
         try {
             return switch (t) {
-                case INTEGER -> new Value<>(toInteger(raw), DataType.INTEGER);
-                case DOUBLE  -> new Value<>(toDouble(raw), DataType.DOUBLE);
-                case BOOLEAN -> new Value<>(toBoolean(raw), DataType.BOOLEAN);
-                case STRING  -> new Value<>(String.valueOf(raw), DataType.STRING);
+                case INTEGER -> Value.of(toInteger(raw), DataType.INTEGER);
+                case DOUBLE  -> Value.of(toDouble(raw), DataType.DOUBLE);
+                case BOOLEAN -> Value.of(toBoolean(raw), DataType.BOOLEAN);
+                case STRING  -> Value.of(String.valueOf(raw), DataType.STRING);
             };
         } catch (Exception ex) {
-            return new Value<>(String.valueOf(raw), DataType.STRING);
+            throw new IllegalArgumentException("Cannot convert '" + raw + "' to " + t
+                    + " for column " + col.getColumnName(), ex);
         }
     }
 
+    // приведение значений к типу колонки, выбранное один раз
+    private Function<Object, Value<?>> coercer(Column col) {
+        DataType t = col.getColumnType();
+        Function<Object, Object> convert = switch (t) {
+            case INTEGER -> this::toInteger;
+            case DOUBLE -> this::toDouble;
+            case BOOLEAN -> this::toBoolean;
+            case STRING -> String::valueOf;
+        };
+        return raw -> {
+            if (raw == null) return Value.nullOf(t);
+            try {
+                return Value.of(convert.apply(raw), t);
+            } catch (Exception ex) {
+                throw new IllegalArgumentException("Cannot convert '" + raw + "' to " + t
+                        + " for column " + col.getColumnName(), ex);
+            }
+        };
+    }
+
     private Integer toInteger(Object o) {
         if (o instanceof Integer i) return i;
         if (o instanceof Number n) return n.intValue();
@@ -106,12 +900,39 @@ public class Table {
         return Boolean.parseBoolean(String.valueOf(o));
     }
 
+    // схема и хранилище меняются только тогда, когда таблицу никто не читает: у таблицы из файла
+    // новая колонка переносит строки в память и закрывает отображение файла
     public void addColumn(Column column) {
         Objects.requireNonNull(column, "column");
-        this.columns.add(column);
-        for (Row r : rows) {
-            r.setValue(column.getColumnName(), new Value<>(null, column.getColumnType()));
+        if (scanLock.getReadHoldCount() > 0) {
+            throw new IllegalStateException("Cannot alter table " + tableName + " while reading it");
         }
+        Lock lock = scanLock.writeLock();
+        lock.lock();
+        try {
+            synchronized (this) {
+                if (column.isPrimaryKey() && size() > 0) {
+                    throw new RuntimeException("Cannot add PRIMARY KEY column " + column.getColumnName()
+                            + " to non-empty table " + tableName);
+                }
+                schema.add(column);
+                storage.addColumn(column);
+                if (zonesLoaded) zones.addColumn();
+                if (column.isPrimaryKey()) rebuildPrimaryKey();
+                if (wal != null) wal.logAddColumn(tableName, column);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        detachSnapshots();
+        closed = true;
+        if (ownsTransactions) tx.close();
+        if (storage instanceof OffHeapStorage s) s.close();
+        else if (storage instanceof DiskStorage d) d.close();
     }
 
 }
@@ -0,0 +1,121 @@
+package core;
+
+// Курсор по строкам, видимым снимку вида; без вида — по всем физическим строкам. Граница строк
+// фиксируется при создании: строки, опубликованные позже, курсор не видит. Мёртвые строки
+// пропускаются по битовой карте; если кроме них снимку видно всё, отметки версий не читаются.
+public class TableCursor implements RowAccessor {
+    private final Table table;
+    private final ReadView view;
+    private final int limit;
+    private final Versions versions;
+    private final boolean all;
+    private final boolean live;   // скрыты только мёртвые строки
+    private int rowId = -1;
+
+    TableCursor(Table table, ReadView view) {
+        this.table = table;
+        this.view = view;
+        this.limit = table.size();
+        this.versions = table.versions();
+        this.all = view == null || versions == null || versions.visibleToAll(view.getSnapshot());
+        this.live = !all && versions.onlyDeadHidden(view.getSnapshot());
+    }
+
+    private TableCursor(TableCursor other) {
+        this.table = other.table;
+        this.view = other.view;
+        this.limit = other.limit;
+        this.versions = other.versions;
+        this.all = other.all;
+        this.live = other.live;
+    }
+
+    // курсор по тому же снимку и с той же границей для другого потока; вид остаётся открытым
+    // у потока, создавшего исходный курсор, пока копии читают
+    public TableCursor fork() {
+        return new TableCursor(this);
+    }
+
+    public boolean next() {
+        if (all) {
+            if (rowId + 1 >= limit) return false;
+            rowId++;
+            return true;
+        }
+        int r = rowId;
+        while ((r = versions.nextLive(r + 1)) < limit) {
+            if (live || view.sees(versions.begin(r), versions.end(r))) {
+                rowId = r;
+                return true;
+            }
+        }
+        rowId = limit;
+        return false;
+    }
+
+    public void moveTo(int rowId) {
+        this.rowId = rowId;
+    }
+
+    // строка видна снимку курсора (номер строки — из индекса или списка кандидатов)
+    public boolean isVisible(int rowId) {
+        if (rowId >= limit) return false;
+        if (all) return true;
+        if (versions.isDead(rowId)) return false;
+        return live || view.sees(versions.begin(rowId), versions.end(rowId));
+    }
+
+    // все строки до границы видны снимку: проверки видимости можно пропустить
+    public boolean allVisible() {
+        return all;
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    public int rowId() {
+        return rowId;
+    }
+
+    @Override
+    public Value<?> getValue(int column) {
+        return table.getValue(rowId, column);
+    }
+
+    @Override
+    public Value<?> getValue(String columnName) {
+        int idx = table.columnIndex(columnName);
+        return idx < 0 ? null : table.getValue(rowId, idx);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return table.isNull(rowId, column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return table.getInt(rowId, column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return table.getDouble(rowId, column);
+    }
+
+    @Override
+    public boolean getBoolean(int column) {
+        return table.getBoolean(rowId, column);
+    }
+
+    @Override
+    public String getString(int column) {
+        return table.getString(rowId, column);
+    }
+
+    @Override
+    public int getCode(int column) {
+        return table.getCode(rowId, column);
+    }
+}
@@ -0,0 +1,333 @@
+package core;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Файл таблицы: страницы по PAGE_SIZE байт, каждая колонка — своя цепочка страниц.
+// Страница 0 — заголовок, в конце файла — каталог страниц. Файл отображается в память целиком,
+// поэтому данные подгружаются ОС постранично при первом обращении.
+//
+// Страница: int count, битовая карта NULL на count бит, затем значения:
+// INTEGER/DOUBLE/BOOLEAN — фиксированной ширины; STRING — count + 1 смещений int и байты UTF-8.
+final class TableFile implements AutoCloseable {
+    static final int PAGE_SIZE = 8192;
+    private static final int MAGIC = 0x53514C54; // "SQLT"
+    private static final int VERSION = 1;
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private final Path path;
+    private final Arena arena;
+    private final MemorySegment data;
+    private final int rows;
+    private final DataType[] types;
+    private final int[][] firstRows;
+    private final long[][] offsets;
+    private final int[] lastPage;
+
+    private TableFile(Path path, Arena arena, MemorySegment data, int rows, DataType[] types,
+                      int[][] firstRows, long[][] offsets) {
+        this.path = path;
+        this.arena = arena;
+        this.data = data;
+        this.rows = rows;
+        this.types = types;
+        this.firstRows = firstRows;
+        this.offsets = offsets;
+        this.lastPage = new int[types.length];
+    }
+
+    static TableFile open(Path path) throws IOException {
+        Arena arena = Arena.ofShared();
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            MemorySegment data = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size(), arena);
+            if (data.byteSize() < PAGE_SIZE || data.get(INT, 0) != MAGIC) {
+                throw new IOException("Not a table file: " + path);
+            }
+            if (data.get(INT, 4) != VERSION) {
+                throw new IOException("Unsupported table file version " + data.get(INT, 4) + ": " + path);
+            }
+            int rows = data.get(INT, 8);
+            int columns = data.get(INT, 12);
+            long pos = data.get(LONG, 16);
+
+            DataType[] types = new DataType[columns];
+            int[][] firstRows = new int[columns][];
+            long[][] offsets = new long[columns][];
+            for (int c = 0; c < columns; c++) {
+                types[c] = DataType.values()[data.get(INT, pos)];
+                int pages = data.get(INT, pos + 4);
+                pos += 8;
+                firstRows[c] = new int[pages];
+                offsets[c] = new long[pages];
+                for (int p = 0; p < pages; p++) {
+                    firstRows[c][p] = data.get(INT, pos);
+                    offsets[c][p] = data.get(LONG, pos + 4);
+                    pos += 12;
+                }
+            }
+            return new TableFile(path, arena, data, rows, types, firstRows, offsets);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    static void write(Table table, Path path) throws IOException {
+        Schema schema = table.getSchema();
+        int rows = table.size();
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long pos = PAGE_SIZE;
+            ByteBuffer dir = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+            for (int c = 0; c < schema.size(); c++) {
+                DataType type = schema.get(c).getColumnType();
+                List<long[]> pages = new ArrayList<>(); // firstRow, offset
+                int row = 0;
+                while (row < rows) {
+                    int n = type == DataType.STRING ? stringsThatFit(table, c, row) : fixedPerPage(type);
+                    n = Math.min(n, rows - row);
+                    ByteBuffer page = encodePage(table, c, type, row, n);
+                    pages.add(new long[]{row, pos});
+                    page.flip();
+                    while (page.hasRemaining()) ch.write(page, pos + page.position());
+                    pos += page.capacity();
+                    row += n;
+                }
+                dir = ensure(dir, 8 + pages.size() * 12);
+                dir.putInt(type.ordinal()).putInt(pages.size());
+                for (long[] p : pages) dir.putInt((int) p[0]).putLong(p[1]);
+            }
+            dir.flip();
+            long dirPos = pos;
+            while (dir.hasRemaining()) ch.write(dir, dirPos + dir.position());
+
+            ByteBuffer header = ByteBuffer.allocate(PAGE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(schema.size()).putLong(dirPos);
+            header.clear();
+            while (header.hasRemaining()) ch.write(header, header.position());
+            ch.force(true);
+        }
+    }
+
+    Path path() {
+        return path;
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    int columns() {
+        return types.length;
+    }
+
+    DataType type(int column) {
+        return types[column];
+    }
+
+    boolean isNull(int row, int column) {
+        int p = pageIndex(row, column);
+        int i = row - firstRows[column][p];
+        return (data.get(ValueLayout.JAVA_BYTE, offsets[column][p] + 4 + (i >>> 3)) & (1 << (i & 7))) != 0;
+    }
+
+    int getInt(int row, int column) {
+        if (types[column] != DataType.INTEGER) {
+            throw new UnsupportedOperationException(types[column] + " column has no int accessor");
+        }
+        return data.get(INT, valueOffset(row, column, Integer.BYTES));
+    }
+
+    double getDouble(int row, int column) {
+        return switch (types[column]) {
+            case INTEGER -> getInt(row, column);
+            case DOUBLE -> data.get(DOUBLE, valueOffset(row, column, Double.BYTES));
+            default -> throw new UnsupportedOperationException(types[column] + " column has no double accessor");
+        };
+    }
+
+    boolean getBoolean(int row, int column) {
+        if (types[column] != DataType.BOOLEAN) {
+            throw new UnsupportedOperationException(types[column] + " column has no boolean accessor");
+        }
+        return data.get(ValueLayout.JAVA_BYTE, valueOffset(row, column, 1)) != 0;
+    }
+
+    String getString(int row, int column) {
+        if (isNull(row, column)) return null;
+        if (types[column] != DataType.STRING) return String.valueOf(get(row, column));
+        int p = pageIndex(row, column);
+        long page = offsets[column][p];
+        int count = data.get(INT, page);
+        int i = row - firstRows[column][p];
+        long offs = page + 4 + nullBytes(count);
+        long bytes = offs + 4L * (count + 1);
+        int start = data.get(INT, offs + 4L * i);
+        int end = data.get(INT, offs + 4L * (i + 1));
+        byte[] buf = new byte[end - start];
+        MemorySegment.copy(data, ValueLayout.JAVA_BYTE, bytes + start, buf, 0, buf.length);
+        return new String(buf, StandardCharsets.UTF_8);
+    }
+
+    Object get(int row, int column) {
+        if (isNull(row, column)) return null;
+        return switch (types[column]) {
+            case INTEGER -> getInt(row, column);
+            case DOUBLE -> getDouble(row, column);
+            case BOOLEAN -> getBoolean(row, column);
+            case STRING -> getString(row, column);
+        };
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    // номер страницы колонки с данной строкой; последняя найденная страница запоминается,
+    // так что последовательный просмотр обходится без двоичного поиска
+    private int pageIndex(int row, int column) {
+        if (row < 0 || row >= rows) throw new IndexOutOfBoundsException("Row " + row + " out of " + rows);
+        int[] first = firstRows[column];
+        int p = lastPage[column];
+        if (row < first[p] || (p + 1 < first.length && row >= first[p + 1])) {
+            int lo = 0, hi = first.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (first[mid] <= row) lo = mid;
+                else hi = mid - 1;
+            }
+            p = lo;
+            lastPage[column] = p;
+        }
+        return p;
+    }
+
+    private long valueOffset(int row, int column, int width) {
+        int p = pageIndex(row, column);
+        long page = offsets[column][p];
+        int count = data.get(INT, page);
+        return page + 4 + nullBytes(count) + (long) (row - firstRows[column][p]) * width;
+    }
+
+    private static int nullBytes(int count) {
+        return (count + 7) >>> 3;
+    }
+
+    private static int width(DataType type) {
+        return switch (type) {
+            case INTEGER -> Integer.BYTES;
+            case DOUBLE -> Double.BYTES;
+            case BOOLEAN -> 1;
+            case STRING -> throw new IllegalArgumentException("STRING has no fixed width");
+        };
+    }
+
+    // строк фиксированной ширины на страницу: 4 + ceil(n / 8) + n * width <= PAGE_SIZE
+    private static int fixedPerPage(DataType type) {
+        return (PAGE_SIZE - 5) * 8 / (width(type) * 8 + 1);
+    }
+
+    // сколько строк, начиная с row, помещается на одну страницу; строка длиннее страницы
+    // занимает отдельную страницу кратного размера
+    private static int stringsThatFit(Table table, int column, int row) {
+        int n = 0;
+        long bytes = 0;
+        for (int r = row; r < table.size(); r++) {
+            String s = table.getString(r, column);
+            long len = s == null ? 0 : utf8Length(s);
+            long size = 4 + nullBytes(n + 1) + 4L * (n + 2) + bytes + len;
+            if (size > PAGE_SIZE && n > 0) break;
+            bytes += len;
+            n++;
+            if (size > PAGE_SIZE) break;
+        }
+        return Math.max(n, 1);
+    }
+
+    private static ByteBuffer encodePage(Table table, int column, DataType type, int row, int n) {
+        byte[][] strings = null;
+        long size;
+        if (type == DataType.STRING) {
+            strings = new byte[n][];
+            long bytes = 0;
+            for (int i = 0; i < n; i++) {
+                String s = table.getString(row + i, column);
+                strings[i] = s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+                bytes += strings[i].length;
+            }
+            size = 4 + nullBytes(n) + 4L * (n + 1) + bytes;
+        } else {
+            size = 4 + nullBytes(n) + (long) n * width(type);
+        }
+        long pages = Math.max(1, (size + PAGE_SIZE - 1) / PAGE_SIZE);
+        if (pages * PAGE_SIZE > Integer.MAX_VALUE) throw new IllegalStateException("Value too large for a page");
+        ByteBuffer page = ByteBuffer.allocate((int) (pages * PAGE_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+        page.putInt(n);
+        int nullsAt = page.position();
+        page.position(nullsAt + nullBytes(n));
+        for (int i = 0; i < n; i++) {
+            if (table.isNull(row + i, column)) {
+                page.put(nullsAt + (i >>> 3), (byte) (page.get(nullsAt + (i >>> 3)) | (1 << (i & 7))));
+            }
+        }
+        switch (type) {
+            case INTEGER -> {
+                for (int i = 0; i < n; i++) page.putInt(table.isNull(row + i, column) ? 0 : table.getInt(row + i, column));
+            }
+            case DOUBLE -> {
+                for (int i = 0; i < n; i++) page.putDouble(table.isNull(row + i, column) ? 0 : table.getDouble(row + i, column));
+            }
+            case BOOLEAN -> {
+                for (int i = 0; i < n; i++) {
+                    page.put((byte) (!table.isNull(row + i, column) && table.getBoolean(row + i, column) ? 1 : 0));
+                }
+            }
+            case STRING -> {
+                int off = 0;
+                for (int i = 0; i < n; i++) {
+                    page.putInt(off);
+                    off += strings[i].length;
+                }
+                page.putInt(off);
+                for (byte[] s : strings) page.put(s);
+            }
+        }
+        page.position(page.capacity());
+        return page;
+    }
+
+    private static long utf8Length(String s) {
+        long len = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch < 0x80) len++;
+            else if (ch < 0x800) len += 2;
+            else if (Character.isHighSurrogate(ch) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                len += 4;
+                i++;
+            } else len += 3;
+        }
+        return len;
+    }
+
+    private static ByteBuffer ensure(ByteBuffer buf, int extra) {
+        if (buf.remaining() >= extra) return buf;
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + extra))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buf.flip();
+        return bigger.put(buf);
+    }
+}
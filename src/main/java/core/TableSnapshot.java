@@ -0,0 +1,117 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+// Замороженный вид таблицы для фоновой контрольной точки: строки последнего коммита и columns
+// колонок на момент создания. Новые версии строк снимок не задевают, поэтому данные читаются из
+// самой таблицы; перед сборкой старых версий, которая сдвигает номера строк, таблица отдаёт
+// снимку его собственную копию.
+final class TableSnapshot {
+    private final Table table;
+    private final String name;
+    private final StorageMode mode;
+    private final List<Column> columns;
+    private final List<SecondaryIndex> indexes;
+    private final IntList ids;
+    private final int rows;
+    private Object[] copy;    // int[] / double[] / boolean[] / String[] по колонкам
+    private BitSet[] copyNulls;
+
+    // вызывается под блокировкой таблицы
+    TableSnapshot(Table table, IntList ids) {
+        this.table = table;
+        this.name = table.getTableName();
+        this.mode = table.getStorageMode();
+        this.columns = new ArrayList<>(table.getColumns());
+        this.indexes = new ArrayList<>(table.declaredIndexes());
+        this.ids = ids;
+        this.rows = ids.size();
+    }
+
+    String name() {
+        return name;
+    }
+
+    StorageMode mode() {
+        return mode;
+    }
+
+    List<Column> columns() {
+        return columns;
+    }
+
+    List<SecondaryIndex> indexes() {
+        return indexes;
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    // снимок больше не нужен; таблица перестаёт копировать для него строки
+    void release() {
+        table.release(this);
+    }
+
+    // копирует строки снимка, пока таблица их ещё не сдвинула; вызывается под блокировкой таблицы
+    void detach() {
+        if (copy != null) return;
+        Object[] data = new Object[columns.size()];
+        BitSet[] nulls = new BitSet[columns.size()];
+        for (int c = 0; c < data.length; c++) {
+            nulls[c] = new BitSet(rows);
+            data[c] = readLive(c, 0, rows, nulls[c]);
+        }
+        copy = data;
+        copyNulls = nulls;
+    }
+
+    // значения колонки в строках снимка [from, to); биты NULL выставляются в nulls со сдвигом на from
+    Object values(int column, int from, int to, BitSet nulls) {
+        synchronized (table) {
+            if (copy == null) return readLive(column, from, to, nulls);
+        }
+        BitSet src = copyNulls[column];
+        for (int r = src.nextSetBit(from); r >= 0 && r < to; r = src.nextSetBit(r + 1)) nulls.set(r - from);
+        Object all = copy[column];
+        return switch (all) {
+            case int[] a -> Arrays.copyOfRange(a, from, to);
+            case double[] a -> Arrays.copyOfRange(a, from, to);
+            case boolean[] a -> Arrays.copyOfRange(a, from, to);
+            case String[] a -> Arrays.copyOfRange(a, from, to);
+            default -> throw new IllegalStateException("Unexpected column copy " + all.getClass());
+        };
+    }
+
+    private Object readLive(int column, int from, int to, BitSet nulls) {
+        int n = to - from;
+        for (int i = 0; i < n; i++) {
+            if (table.isNull(ids.get(from + i), column)) nulls.set(i);
+        }
+        switch (columns.get(column).getColumnType()) {
+            case INTEGER -> {
+                int[] out = new int[n];
+                for (int i = 0; i < n; i++) if (!nulls.get(i)) out[i] = table.getInt(ids.get(from + i), column);
+                return out;
+            }
+            case DOUBLE -> {
+                double[] out = new double[n];
+                for (int i = 0; i < n; i++) if (!nulls.get(i)) out[i] = table.getDouble(ids.get(from + i), column);
+                return out;
+            }
+            case BOOLEAN -> {
+                boolean[] out = new boolean[n];
+                for (int i = 0; i < n; i++) if (!nulls.get(i)) out[i] = table.getBoolean(ids.get(from + i), column);
+                return out;
+            }
+            default -> {
+                String[] out = new String[n];
+                for (int i = 0; i < n; i++) if (!nulls.get(i)) out[i] = table.getString(ids.get(from + i), column);
+                return out;
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package core;
+
+import java.util.BitSet;
+import java.util.List;
+
+interface TableStorage {
+    int size();
+
+    void append(Value<?>[] values);
+
+    Value<?> get(int row, int column);
+
+    void set(int row, int column, Value<?> value);
+
+    boolean isNull(int row, int column);
+
+    int getInt(int row, int column);
+
+    double getDouble(int row, int column);
+
+    boolean getBoolean(int row, int column);
+
+    String getString(int row, int column);
+
+    default StringDictionary dictionary(int column) {
+        return null;
+    }
+
+    // код словаря, -1 — NULL, StringDictionary.NO_CODE — у значения нет кода
+    default int getCode(int row, int column) {
+        return StringDictionary.NO_CODE;
+    }
+
+    // Пакетное чтение строк [from, from + length) колонки в массивы с нуля; ячейка NULL даёт
+    // nulls[i] = true и неопределённое значение. Колоночные хранилища копируют массивы целиком.
+    default void readNulls(int column, int from, int length, boolean[] nulls) {
+        for (int i = 0; i < length; i++) nulls[i] = isNull(from + i, column);
+    }
+
+    default void readInts(int column, int from, int length, int[] out) {
+        for (int i = 0; i < length; i++) out[i] = isNull(from + i, column) ? 0 : getInt(from + i, column);
+    }
+
+    default void readDoubles(int column, int from, int length, double[] out) {
+        for (int i = 0; i < length; i++) out[i] = isNull(from + i, column) ? 0 : getDouble(from + i, column);
+    }
+
+    // коды словарной колонки, -1 — NULL, NO_CODE — строка без кода
+    default void readCodes(int column, int from, int length, int[] out) {
+        for (int i = 0; i < length; i++) out[i] = getCode(from + i, column);
+    }
+
+    Row getRow(int row);
+
+    List<Row> rows();
+
+    void addColumn(Column column);
+
+    void remove(BitSet rows);
+}
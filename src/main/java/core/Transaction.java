@@ -0,0 +1,72 @@
+package core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Транзакция читает снимок базы на момент начала и видит собственные изменения;
+// другим её изменения становятся видны все сразу в момент коммита
+public final class Transaction {
+    private final long id;
+    private final long snapshot;
+    private final boolean autoCommit;
+    private final boolean grouped;
+    private final Map<Table, Writes> writes = new LinkedHashMap<>();
+    private long lsn;
+
+    Transaction(long id, long snapshot, boolean autoCommit) {
+        this(id, snapshot, autoCommit, false);
+    }
+
+    Transaction(long id, long snapshot, boolean autoCommit, boolean grouped) {
+        this.id = id;
+        this.snapshot = snapshot;
+        this.autoCommit = autoCommit;
+        this.grouped = grouped;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getSnapshot() {
+        return snapshot;
+    }
+
+    // отметка незавершённой транзакции в версиях строк
+    long marker() {
+        return -id;
+    }
+
+    boolean isAutoCommit() {
+        return autoCommit;
+    }
+
+    // автоматическая транзакция из многих записей журнала: журналируется со своим номером
+    // и записью COMMIT, чтобы после сбоя не примениться частично
+    boolean isGrouped() {
+        return grouped;
+    }
+
+    Writes writes(Table table) {
+        return writes.computeIfAbsent(table, t -> new Writes());
+    }
+
+    Map<Table, Writes> writes() {
+        return writes;
+    }
+
+    // позиция последней записи транзакции в журнале
+    void logged(long position) {
+        lsn = Math.max(lsn, position);
+    }
+
+    long lsn() {
+        return lsn;
+    }
+
+    // строки, вставленные транзакцией, и строки, жизнь которых она закончила
+    static final class Writes {
+        final IntList created = new IntList();
+        final IntList ended = new IntList();
+    }
+}
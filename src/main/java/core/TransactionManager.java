@@ -0,0 +1,264 @@
+package core;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Часы коммитов, транзакции потоков, активные снимки и фоновая сборка старых версий.
+// Коммиты упорядочены одной короткой блокировкой, которую берут только пишущие; читатели
+// берут снимок из volatile-отметки последнего полностью применённого коммита и не ждут никого.
+final class TransactionManager implements AutoCloseable {
+    private static final long VACUUM_INTERVAL_MILLIS = 1000;
+
+    private final Object commitLock = new Object();
+    private long clock;                      // под commitLock
+    private volatile long visible;           // коммиты до этой отметки применены целиком
+    private final AtomicLong ids = new AtomicLong();
+    private final TreeMap<Long, Integer> snapshots = new TreeMap<>();   // под собственным монитором
+    private final AtomicInteger open = new AtomicInteger();
+    private final ThreadLocal<Transaction> current = new ThreadLocal<>();
+    private final ThreadLocal<ReadView> views = new ThreadLocal<>();
+    private final Set<Table> dirty = ConcurrentHashMap.newKeySet();
+    private volatile WriteAheadLog wal;
+    private Thread vacuum;
+    private volatile boolean held;
+    private volatile double vacuumThreshold = 0.2;
+    private volatile boolean closed;
+
+    void attachLog(WriteAheadLog wal) {
+        this.wal = wal;
+    }
+
+    // пока повторяется журнал, номера строк не должны сдвигаться фоновой сборкой
+    void holdVacuum(boolean hold) {
+        held = hold;
+    }
+
+    // доля мёртвых строк, после которой фоновая сборка переписывает таблицу
+    double vacuumThreshold() {
+        return vacuumThreshold;
+    }
+
+    void setVacuumThreshold(double threshold) {
+        vacuumThreshold = threshold;
+    }
+
+    Transaction begin() {
+        if (current.get() != null) throw new IllegalStateException("Transaction already in progress");
+        Transaction t = start();
+        current.set(t);
+        return t;
+    }
+
+    // явная транзакция, не привязанная к потоку (для повтора журнала)
+    Transaction start() {
+        open.incrementAndGet();
+        return new Transaction(ids.incrementAndGet(), register(), false);
+    }
+
+    void bind(Transaction t) {
+        current.set(t);
+    }
+
+    void unbind() {
+        current.remove();
+    }
+
+    Transaction current() {
+        return current.get();
+    }
+
+    int openTransactions() {
+        return open.get();
+    }
+
+    // номера транзакций из повторённого журнала не должны совпасть с новыми
+    void advanceIds(long seen) {
+        ids.accumulateAndGet(seen, Math::max);
+    }
+
+    void commit() {
+        Transaction t = required();
+        try {
+            commit(t);
+        } finally {
+            end(t);
+        }
+    }
+
+    void rollback() {
+        Transaction t = required();
+        try {
+            rollback(t);
+        } finally {
+            end(t);
+        }
+    }
+
+    // транзакция для одного изменения: текущая явная или автоматическая на один оператор
+    Transaction writer() {
+        Transaction t = current.get();
+        if (t != null) return t;
+        ReadView v = views.get();
+        return new Transaction(ids.incrementAndGet(), v != null ? v.getSnapshot() : visible, true);
+    }
+
+    // то же для оператора, который пишет в журнал много записей (пачка вставок)
+    Transaction batchWriter() {
+        Transaction t = current.get();
+        if (t != null) return t;
+        ReadView v = views.get();
+        return new Transaction(ids.incrementAndGet(), v != null ? v.getSnapshot() : visible, true, true);
+    }
+
+    // автоматическая транзакция коммитится сразу после своего изменения
+    void finish(Transaction t) {
+        if (t.isAutoCommit()) commit(t);
+    }
+
+    void commit(Transaction t) {
+        publish(t);
+        // изменения уже видны другим, но оператор завершается только после записи журнала на диск
+        WriteAheadLog log = wal;
+        if (log != null) log.awaitCommit(t.lsn());
+    }
+
+    // коммит без ожидания диска; ожидание остаётся вызывающему
+    void publish(Transaction t) {
+        if (t.writes().isEmpty()) return;
+        synchronized (commitLock) {
+            long ts = clock + 1;
+            WriteAheadLog log = wal;
+            if ((!t.isAutoCommit() || t.isGrouped()) && log != null) t.logged(log.logCommit(t.getId()));
+            for (Map.Entry<Table, Transaction.Writes> e : t.writes().entrySet()) e.getKey().stamp(e.getValue(), ts);
+            clock = ts;
+            visible = ts;
+        }
+        for (Map.Entry<Table, Transaction.Writes> e : t.writes().entrySet()) {
+            if (!e.getValue().ended.isEmpty()) scheduleVacuum(e.getKey());
+        }
+    }
+
+    void rollback(Transaction t) {
+        if (t.writes().isEmpty()) return;
+        WriteAheadLog log = wal;
+        if (!t.isAutoCommit() && log != null) log.logRollback(t.getId());
+        for (Map.Entry<Table, Transaction.Writes> e : t.writes().entrySet()) {
+            e.getKey().undo(e.getValue());
+            if (!e.getValue().created.isEmpty()) scheduleVacuum(e.getKey());
+        }
+    }
+
+    // вид текущего оператора; вложенные вызовы в том же потоке получают тот же вид
+    ReadView openView() {
+        ReadView v = views.get();
+        if (v != null) {
+            v.depth++;
+            return v;
+        }
+        Transaction t = current.get();
+        v = t != null ? new ReadView(this, t.getSnapshot(), t.marker(), false)
+                : new ReadView(this, register(), 0, true);
+        views.set(v);
+        return v;
+    }
+
+    // открытый вид потока или временный снимок последнего коммита
+    ReadView currentView() {
+        ReadView v = views.get();
+        if (v != null) return v;
+        Transaction t = current.get();
+        return t != null ? new ReadView(null, t.getSnapshot(), t.marker(), false) : new ReadView(null, visible, 0, false);
+    }
+
+    // временный снимок последнего коммита вне текущей транзакции
+    ReadView latestView() {
+        return new ReadView(null, visible, 0, false);
+    }
+
+    void closeView(ReadView v) {
+        if (--v.depth > 0) return;
+        v.unlockAll();
+        if (v.isRegistered()) release(v.getSnapshot());
+        views.remove();
+    }
+
+    // версии, закончившиеся не позже этой отметки, не нужны ни одному снимку
+    long horizon() {
+        synchronized (snapshots) {
+            return snapshots.isEmpty() ? visible : Math.min(visible, snapshots.firstKey());
+        }
+    }
+
+    @Override
+    public void close() {
+        Thread t;
+        synchronized (this) {
+            closed = true;
+            t = vacuum;
+        }
+        if (t == null) return;
+        LockSupport.unpark(t);
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Transaction required() {
+        Transaction t = current.get();
+        if (t == null) throw new IllegalStateException("No transaction in progress");
+        return t;
+    }
+
+    private void end(Transaction t) {
+        current.remove();
+        open.decrementAndGet();
+        release(t.getSnapshot());
+    }
+
+    private long register() {
+        synchronized (snapshots) {
+            long s = visible;
+            snapshots.merge(s, 1, Integer::sum);
+            return s;
+        }
+    }
+
+    private void release(long snapshot) {
+        synchronized (snapshots) {
+            snapshots.computeIfPresent(snapshot, (k, n) -> n == 1 ? null : n - 1);
+        }
+    }
+
+    private void scheduleVacuum(Table t) {
+        dirty.add(t);
+        synchronized (this) {
+            if (vacuum != null || closed) return;
+            vacuum = new Thread(this::vacuumLoop, "mvcc-vacuum");
+            vacuum.setDaemon(true);
+            vacuum.start();
+        }
+    }
+
+    private void vacuumLoop() {
+        while (!closed) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(VACUUM_INTERVAL_MILLIS));
+            if (held) continue;
+            for (Table t : dirty) {
+                if (closed) return;
+                try {
+                    if (t.autoVacuum()) dirty.remove(t);
+                } catch (RuntimeException e) {
+                    dirty.remove(t);
+                }
+            }
+        }
+    }
+}
@@ -1,19 +1,57 @@
 package core;
 
 import java.util.Objects;
-import java.util.regex.Pattern;
 
-public class Value<T> {
-    private T data;
+// Значение ячейки неизменяемо, поэтому частые значения — NULL каждого типа, небольшие целые
+// и логические — берутся из кэша и разделяются всеми строками
+public final class Value<T> implements Comparable<Value<?>> {
+    private static final int INT_CACHE_LOW = -128;
+    private static final int INT_CACHE_HIGH = 1023;
+
+    private static final Value<?>[] NULLS = new Value<?>[DataType.values().length];
+    private static final Value<?>[] INTS = new Value<?>[INT_CACHE_HIGH - INT_CACHE_LOW + 1];
+    private static final Value<Boolean> TRUE = new Value<>(Boolean.TRUE, DataType.BOOLEAN);
+    private static final Value<Boolean> FALSE = new Value<>(Boolean.FALSE, DataType.BOOLEAN);
+
+    static {
+        for (DataType t : DataType.values()) NULLS[t.ordinal()] = new Value<>(null, t);
+        for (int i = 0; i < INTS.length; i++) INTS[i] = new Value<>(i + INT_CACHE_LOW, DataType.INTEGER);
+    }
+
+    private final T data;
     private final DataType type;
 
-    public Value(T data, DataType type) {
+    private Value(T data, DataType type) {
         this.data = data;
         this.type = type;
     }
 
-    public void setData(T newValue) {
-        this.data = newValue;
+    // то же, что конструктор, но частые значения не создаются заново
+    @SuppressWarnings("unchecked")
+    public static <T> Value<T> of(T data, DataType type) {
+        if (data == null) return (Value<T>) NULLS[type.ordinal()];
+        if (type == DataType.INTEGER && data instanceof Integer i) return (Value<T>) ofInt(i);
+        if (type == DataType.BOOLEAN && data instanceof Boolean b) return (Value<T>) ofBoolean(b);
+        return new Value<>(data, type);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> Value<T> nullOf(DataType type) {
+        return (Value<T>) NULLS[type.ordinal()];
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Value<Integer> ofInt(int v) {
+        if (v >= INT_CACHE_LOW && v <= INT_CACHE_HIGH) return (Value<Integer>) INTS[v - INT_CACHE_LOW];
+        return new Value<>(v, DataType.INTEGER);
+    }
+
+    public static Value<Double> ofDouble(double v) {
+        return new Value<>(v, DataType.DOUBLE);
+    }
+
+    public static Value<Boolean> ofBoolean(boolean v) {
+        return v ? TRUE : FALSE;
     }
 
     public T get() {
@@ -28,6 +66,35 @@ public class Value<T> {
         return type;
     }
 
+    public boolean isNull() {
+        return data == null;
+    }
+
+    // примитивные значения без упаковки; для NULL — 0 / false
+    public int getInt() {
+        return data instanceof Number n ? n.intValue() : 0;
+    }
+
+    public double getDouble() {
+        return data instanceof Number n ? n.doubleValue() : 0.0;
+    }
+
+    public boolean getBoolean() {
+        return data instanceof Boolean b && b;
+    }
+
+    // порядок для сортировки и MIN/MAX за одно сравнение: числа — как числа, NULL — после всех значений
+    @Override
+    public int compareTo(Value<?> other) {
+        Object a = data, b = other == null ? null : other.data;
+        if (a == null || b == null) return a == b ? 0 : a == null ? 1 : -1;
+        if (a instanceof Integer x && b instanceof Integer y) return Integer.compare(x, y);
+        if (a instanceof Number x && b instanceof Number y) return Double.compare(x.doubleValue(), y.doubleValue());
+        if (a instanceof String x && b instanceof String y) return x.compareTo(y);
+        if (a instanceof Boolean x && b instanceof Boolean y) return Boolean.compare(x, y);
+        throw new IllegalArgumentException("Incompatible types in compare: " + type + " vs " + other.type);
+    }
+
     @SuppressWarnings({"rawtypes", "unchecked"})
     public boolean compare(String operator, Value<?> other) {
         if (other == null) {
@@ -38,6 +105,16 @@ public class Value<T> {
             };
         }
 
+        // NULL равен только NULL и отличается от любого значения; упорядочить его нельзя
+        if (this.data == null || other.get() == null) {
+            boolean same = this.data == null && other.get() == null;
+            return switch (operator) {
+                case "=" -> same;
+                case "!=", "<>" -> !same;
+                default -> false;
+            };
+        }
+
         DataType t1 = this.getType();
         DataType t2 = other.getType();
 
@@ -95,18 +172,12 @@ public class Value<T> {
             case ">=" -> a.compareTo(b) >= 0;
             case "<" -> a.compareTo(b) < 0;
             case "<=" -> a.compareTo(b) <= 0;
-            case "LIKE" -> like(a, b); // поддержка % и _
+            case "LIKE" -> LikeMatcher.cached(b, false).matches(a); // поддержка % и _
+            case "ILIKE" -> LikeMatcher.cached(b, true).matches(a);
             default -> throw new IllegalArgumentException("Invalid operator for string comparison: " + operator);
         };
     }
 
-    private static boolean like(String text, String pattern) {
-        String regex = Pattern.quote(pattern)
-                .replace("%", "\\E.*\\Q")
-                .replace("_", "\\E.\\Q");
-        return Pattern.compile("^" + regex + "$").matcher(text).find();
-    }
-
     private boolean compareBooleans(Boolean a, Boolean b, String operator) {
         return switch (operator) {
             case "=" -> Objects.equals(a, b);
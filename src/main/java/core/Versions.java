@@ -0,0 +1,207 @@
+package core;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Версии строк таблицы (MVCC). У каждой физической строки есть отметка начала и конца жизни
+// и ссылка на предыдущую версию с тем же первичным ключом. Отметка >= 0 — время коммита,
+// отрицательная — минус номер ещё не завершённой транзакции. NEVER в конце — версия жива,
+// NEVER в начале — вставка отменена. Массивы растут только под блокировкой таблицы;
+// читатели обращаются к ним без блокировки, только к строкам, уже опубликованным таблицей.
+//
+// Мёртвые строки — те, что уже не увидит ни один снимок, — отмечаются в битовой карте,
+// и курсоры перескакивают их целыми словами, не заглядывая в отметки. Физически их убирает
+// сборка, когда их доля в таблице становится заметной.
+final class Versions {
+    static final long NEVER = Long.MAX_VALUE;
+
+    private long[] begin;
+    private long[] end;
+    private int[] prev;
+    private long[] dead;
+    private int size;
+    // hidden, newest и marked читаются курсорами без блокировки; newest пишется раньше hidden
+    private volatile int hidden;   // строки, видимые не всем: незавершённые, отменённые, удалённые
+    private volatile long newest;  // самое позднее время коммита среди начал
+    private volatile int marked;   // строки, отмеченные в dead
+    private int pending;           // отметки незавершённых транзакций
+    private IntList ending = new IntList();   // закрытые коммитом, ещё не отмеченные мёртвыми
+
+    // строки, которые уже есть в таблице, считаются вставленными в момент 0
+    Versions(int rows) {
+        int cap = Math.max(64, rows);
+        begin = new long[cap];
+        end = new long[cap];
+        prev = new int[cap];
+        dead = new long[(cap + 63) >>> 6];
+        Arrays.fill(end, 0, rows, NEVER);
+        Arrays.fill(prev, 0, rows, -1);
+        size = rows;
+    }
+
+    long begin(int row) {
+        return begin[row];
+    }
+
+    long end(int row) {
+        return end[row];
+    }
+
+    int prev(int row) {
+        return prev[row];
+    }
+
+    int pending() {
+        return pending;
+    }
+
+    int hidden() {
+        return hidden;
+    }
+
+    int marked() {
+        return marked;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // каждая строка видна любому снимку не старше newest
+    boolean visibleToAll(long snapshot) {
+        return hidden == 0 && newest <= snapshot;
+    }
+
+    // скрыты от снимка только мёртвые строки: остальные видимы без проверки отметок
+    boolean onlyDeadHidden(long snapshot) {
+        int h = hidden;
+        return h == marked && newest <= snapshot;
+    }
+
+    boolean isDead(int row) {
+        long[] d = dead;
+        int u = row >>> 6;
+        return u < d.length && (d[u] & (1L << row)) != 0;
+    }
+
+    // первая не мёртвая строка, начиная с from
+    int nextLive(int from) {
+        long[] d = dead;
+        int u = from >>> 6;
+        if (u >= d.length) return from;
+        long word = ~d[u] & (-1L << from);
+        while (word == 0) {
+            if (++u == d.length) return u << 6;
+            word = ~d[u];
+        }
+        return (u << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    // отмечает мёртвыми закрытые строки, которые уже не увидит ни один снимок;
+    // проходит только по строкам, закрытым после прошлой отметки
+    void markDead(long horizon) {
+        IntList rest = new IntList();
+        int n = 0;
+        for (int i = 0; i < ending.size(); i++) {
+            int r = ending.get(i);
+            long e = end[r];
+            if (e == NEVER || e < 0) continue;
+            if (e <= horizon) {
+                if (setDead(r)) n++;
+            } else {
+                rest.add(r);
+            }
+        }
+        ending = rest;
+        if (n > 0) marked += n;
+    }
+
+    void append(long beginStamp, int previous) {
+        if (size == begin.length) {
+            int cap = size * 2;
+            begin = Arrays.copyOf(begin, cap);
+            end = Arrays.copyOf(end, cap);
+            prev = Arrays.copyOf(prev, cap);
+            dead = Arrays.copyOf(dead, (cap + 63) >>> 6);
+        }
+        begin[size] = beginStamp;
+        end[size] = NEVER;
+        prev[size] = previous;
+        if (beginStamp >= 0 && beginStamp != NEVER && beginStamp > newest) newest = beginStamp;
+        if (beginStamp < 0) pending++;
+        if (isHidden(beginStamp, NEVER)) hidden++;
+        size++;
+    }
+
+    // отменённая вставка сразу мертва для всех
+    void setBegin(int row, long stamp) {
+        change(row, stamp, end[row]);
+        if (stamp == NEVER && setDead(row)) marked++;
+    }
+
+    void setEnd(int row, long stamp) {
+        change(row, begin[row], stamp);
+        if (stamp >= 0 && stamp != NEVER) ending.add(row);
+    }
+
+    // версии, которые не увидит ни один снимок не старше horizon
+    BitSet dead(long horizon) {
+        BitSet dead = new BitSet(size);
+        for (int r = 0; r < size; r++) {
+            long e = end[r];
+            if (begin[r] == NEVER || (e >= 0 && e != NEVER && e <= horizon)) dead.set(r);
+        }
+        return dead;
+    }
+
+    // физическое удаление строк: оставшиеся сдвигаются, ссылки на предыдущие версии пересчитываются
+    void remove(BitSet removed) {
+        int[] renumber = new int[size];
+        int kept = 0;
+        for (int r = 0; r < size; r++) renumber[r] = removed.get(r) ? -1 : kept++;
+        int h = 0;
+        pending = 0;
+        long n = 0;
+        ending = new IntList();
+        for (int r = 0; r < size; r++) {
+            int to = renumber[r];
+            if (to < 0) continue;
+            long b = begin[r], e = end[r];
+            begin[to] = b;
+            end[to] = e;
+            prev[to] = prev[r] < 0 ? -1 : renumber[prev[r]];
+            if (isHidden(b, e)) h++;
+            if (b < 0) pending++;
+            if (e < 0) pending++;
+            if (e >= 0 && e != NEVER) ending.add(to);
+            if (b != NEVER && b > n) n = b;
+        }
+        Arrays.fill(dead, 0);
+        size = kept;
+        newest = n;
+        marked = 0;
+        hidden = h;
+    }
+
+    private void change(int row, long b, long e) {
+        if (b >= 0 && b != NEVER && b > newest) newest = b;
+        long ob = begin[row], oe = end[row];
+        begin[row] = b;
+        end[row] = e;
+        // счётчик меняется одной записью, без промежуточных значений
+        int dh = (isHidden(b, e) ? 1 : 0) - (isHidden(ob, oe) ? 1 : 0);
+        if (dh != 0) hidden += dh;
+        pending += (b < 0 ? 1 : 0) + (e < 0 ? 1 : 0) - (ob < 0 ? 1 : 0) - (oe < 0 ? 1 : 0);
+    }
+
+    private boolean setDead(int row) {
+        long bit = 1L << row;
+        if ((dead[row >>> 6] & bit) != 0) return false;
+        dead[row >>> 6] |= bit;
+        return true;
+    }
+
+    private static boolean isHidden(long b, long e) {
+        return b < 0 || b == NEVER || e != NEVER;
+    }
+}
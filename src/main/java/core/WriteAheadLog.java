@@ -0,0 +1,559 @@
+package core;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32C;
+
+// Журнал изменений базы, привязанной к каталогу. Записи копятся в буфере, фоновый поток
+// раз в окно группового коммита пишет их пачкой и делает один fsync на всю пачку.
+// При синхронном коммите оператор ждёт, пока его запись не окажется на диске.
+//
+// Изменения строк несут номер транзакции: 0 — автоматическая, коммитится самой записью;
+// записи явной транзакции применяются только вместе с её записью COMMIT. Сборка старых
+// версий журналируется номерами удалённых строк, чтобы при повторе номера строк совпали.
+//
+// Файл: заголовок (MAGIC, поколение), затем записи [int длина][int CRC32C][тело].
+// Поколение совпадает с поколением каталога; журнал другого поколения уже вошёл в снимок
+// и при открытии отбрасывается. Оборванная запись в конце файла отрезается.
+final class WriteAheadLog implements AutoCloseable {
+    static final String FILE = "wal.log";
+    private static final int MAGIC = 0x53514C57; // "SQLW"
+    private static final int HEADER_BYTES = 12;
+
+    private static final byte CREATE_TABLE = 1;
+    private static final byte DROP_TABLE = 2;
+    private static final byte ADD_COLUMN = 3;
+    private static final byte INSERT = 4;
+    private static final byte UPDATE = 5;
+    private static final byte DELETE = 6;
+    private static final byte CREATE_INDEX = 7;
+    private static final byte COMMIT = 8;
+    private static final byte ROLLBACK = 9;
+    private static final byte VACUUM = 10;
+
+    private final FileChannel channel;
+    private final Object lock = new Object();
+    private final Thread flusher;
+    private byte[] pending = new byte[64 * 1024];
+    private byte[] spare = new byte[64 * 1024];
+    private int pendingSize;
+    private long position;
+    private long appendedLsn;
+    private long durableLsn;
+    private volatile long delayNanos;
+    private volatile boolean synchronous;
+    private IOException failure;
+    private boolean closed;
+
+    private WriteAheadLog(FileChannel channel, long position, long delayMillis, boolean synchronous) {
+        this.channel = channel;
+        this.position = position;
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        this.synchronous = synchronous;
+        this.flusher = new Thread(this::flushLoop, "wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // открывает журнал для дозаписи; журнал чужого поколения и оборванный хвост отбрасываются
+    static WriteAheadLog open(Path dir, long generation, long delayMillis, boolean synchronous) throws IOException {
+        FileChannel ch = FileChannel.open(dir.resolve(FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long end = validEnd(ch, generation);
+            if (end < 0) {
+                ch.truncate(0);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putLong(generation).flip();
+                while (header.hasRemaining()) ch.write(header, header.position());
+                ch.force(true);
+                end = HEADER_BYTES;
+            } else {
+                ch.truncate(end);
+            }
+            return new WriteAheadLog(ch, end, delayMillis, synchronous);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    // применяет к базе записи журнала данного поколения; сами применяемые операции не журналируются
+    static int replay(Path dir, long generation, Database db) throws IOException {
+        Path file = dir.resolve(FILE);
+        if (!Files.isRegularFile(file)) return 0;
+        int applied = 0;
+        TransactionManager tx = db.transactions();
+        Map<Long, Transaction> open = new HashMap<>();
+        long maxId = 0;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (readGeneration(ch) != generation) return 0;
+            long pos = HEADER_BYTES;
+            byte[] body;
+            while ((body = readRecord(ch, pos)) != null) {
+                maxId = Math.max(maxId, apply(new DataInputStream(new ByteArrayInputStream(body)), db, tx, open));
+                pos += 8 + body.length;
+                applied++;
+            }
+        } finally {
+            // транзакции без записи COMMIT не дожили до сбоя
+            for (Transaction t : open.values()) {
+                tx.bind(t);
+                tx.rollback();
+            }
+            tx.advanceIds(maxId);
+        }
+        return applied;
+    }
+
+    void setDelay(long delayMillis) {
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+    }
+
+    void setSynchronous(boolean synchronous) {
+        this.synchronous = synchronous;
+    }
+
+    // начинает журнал заново после сохранения снимка нового поколения
+    void reset(long generation) throws IOException {
+        synchronized (lock) {
+            awaitDurable(appendedLsn);
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putLong(generation).flip();
+            while (header.hasRemaining()) channel.write(header, header.position());
+            channel.force(true);
+            position = HEADER_BYTES;
+        }
+    }
+
+    void logCreateTable(Table t, long memoryLimit) {
+        logDurable(out -> {
+            out.writeByte(CREATE_TABLE);
+            out.writeUTF(t.getTableName());
+            out.writeUTF(t.getStorageMode().name());
+            out.writeLong(memoryLimit);
+            out.writeInt(t.getColumns().size());
+            for (Column c : t.getColumns()) writeColumn(out, c);
+        });
+    }
+
+    void logDropTable(String tableName) {
+        logDurable(out -> {
+            out.writeByte(DROP_TABLE);
+            out.writeUTF(tableName);
+        });
+    }
+
+    void logAddColumn(String tableName, Column column) {
+        logDurable(out -> {
+            out.writeByte(ADD_COLUMN);
+            out.writeUTF(tableName);
+            writeColumn(out, column);
+        });
+    }
+
+    void logCreateIndex(String tableName, SecondaryIndex idx, String column) {
+        logDurable(out -> {
+            out.writeByte(CREATE_INDEX);
+            out.writeUTF(tableName);
+            out.writeUTF(idx.getName());
+            out.writeUTF(column);
+            out.writeBoolean(idx instanceof BitmapIndex);
+        });
+    }
+
+    // записи изменений строк не ждут диска: оператор дожидается этого в awaitCommit после коммита
+    long logInsert(String tableName, long txn, Value<?>[] values) {
+        return append(insertFrame(tableName, txn, values));
+    }
+
+    // готовая запись вставки; кодируется без блокировки журнала, параллельно в потоках вставки
+    static byte[] insertFrame(String tableName, long txn, Value<?>[] values) {
+        return frame(out -> {
+            out.writeByte(INSERT);
+            out.writeUTF(tableName);
+            out.writeLong(txn);
+            out.writeInt(values.length);
+            for (Value<?> v : values) writeValue(out, v == null ? null : v.get());
+        });
+    }
+
+    long logUpdate(String tableName, long txn, IntList rowIds, IntList columns, List<Value<?>> values) {
+        return log(out -> {
+            out.writeByte(UPDATE);
+            out.writeUTF(tableName);
+            out.writeLong(txn);
+            writeIds(out, rowIds);
+            out.writeInt(columns.size());
+            for (int j = 0; j < columns.size(); j++) {
+                out.writeInt(columns.get(j));
+                writeValue(out, values.get(j).get());
+            }
+        });
+    }
+
+    long logDelete(String tableName, long txn, IntList rowIds) {
+        return log(out -> {
+            out.writeByte(DELETE);
+            out.writeUTF(tableName);
+            out.writeLong(txn);
+            writeIds(out, rowIds);
+        });
+    }
+
+    long logCommit(long txn) {
+        return log(out -> {
+            out.writeByte(COMMIT);
+            out.writeLong(txn);
+        });
+    }
+
+    void logRollback(long txn) {
+        log(out -> {
+            out.writeByte(ROLLBACK);
+            out.writeLong(txn);
+        });
+    }
+
+    void logVacuum(String tableName, IntList rowIds) {
+        log(out -> {
+            out.writeByte(VACUUM);
+            out.writeUTF(tableName);
+            writeIds(out, rowIds);
+        });
+    }
+
+    // при синхронном коммите ждёт, пока журнал до позиции lsn не окажется на диске
+    void awaitCommit(long lsn) {
+        if (!synchronous) return;
+        synchronized (lock) {
+            awaitDurable(lsn);
+        }
+    }
+
+    // дожидается записи на диск всего, что уже попало в журнал
+    void flush() {
+        synchronized (lock) {
+            awaitDurable(appendedLsn);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) return;
+            awaitDurable(appendedLsn);
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private interface Encoder {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private void logDurable(Encoder encoder) {
+        awaitCommit(log(encoder));
+    }
+
+    private long log(Encoder encoder) {
+        return append(frame(encoder));
+    }
+
+    // [int длина][int CRC32C][тело]
+    private static byte[] frame(Encoder encoder) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        bytes.write(new byte[8], 0, 8);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            encoder.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] frame = bytes.toByteArray();
+        CRC32C crc = new CRC32C();
+        crc.update(frame, 8, frame.length - 8);
+        ByteBuffer.wrap(frame, 0, 8).order(ByteOrder.BIG_ENDIAN).putInt(frame.length - 8).putInt((int) crc.getValue());
+        return frame;
+    }
+
+    // позиция конца записи в журнале
+    long append(byte[] frame) {
+        synchronized (lock) {
+            if (closed) throw new IllegalStateException("Write-ahead log is closed");
+            if (failure != null) throw new UncheckedIOException("Write-ahead log failed", failure);
+            ensurePending(frame.length);
+            System.arraycopy(frame, 0, pending, pendingSize, frame.length);
+            pendingSize += frame.length;
+            long lsn = appendedLsn += frame.length;
+            lock.notifyAll();
+            return lsn;
+        }
+    }
+
+    private void ensurePending(int extra) {
+        if (pendingSize + extra <= pending.length) return;
+        byte[] bigger = new byte[Math.max(pending.length * 2, pendingSize + extra)];
+        System.arraycopy(pending, 0, bigger, 0, pendingSize);
+        pending = bigger;
+    }
+
+    // вызывается под lock
+    private void awaitDurable(long lsn) {
+        boolean interrupted = false;
+        while (durableLsn < lsn && failure == null) {
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (failure != null) throw new UncheckedIOException("Write-ahead log failed", failure);
+    }
+
+    private void flushLoop() {
+        while (true) {
+            synchronized (lock) {
+                while (pendingSize == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                if (pendingSize == 0) return;
+            }
+            // окно группового коммита: пока ждём, в буфер успевают попасть записи других операторов
+            long delay = delayNanos;
+            if (delay > 0) LockSupport.parkNanos(delay);
+
+            byte[] batch;
+            int size;
+            long upTo;
+            synchronized (lock) {
+                batch = pending;
+                size = pendingSize;
+                upTo = appendedLsn;
+                pending = spare;
+                spare = batch;
+                pendingSize = 0;
+            }
+            try {
+                ByteBuffer buf = ByteBuffer.wrap(batch, 0, size);
+                long pos = position;
+                while (buf.hasRemaining()) pos += channel.write(buf, pos);
+                channel.force(false);
+                synchronized (lock) {
+                    position = pos;
+                    durableLsn = upTo;
+                    lock.notifyAll();
+                }
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    private static long readGeneration(FileChannel ch) throws IOException {
+        if (ch.size() < HEADER_BYTES) return -1;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (header.hasRemaining() && ch.read(header, header.position()) >= 0) { }
+        header.flip();
+        if (header.getInt() != MAGIC) return -1;
+        return header.getLong();
+    }
+
+    // конец последней целой записи; -1, если журнал не того поколения или испорчен заголовок
+    private static long validEnd(FileChannel ch, long generation) throws IOException {
+        if (readGeneration(ch) != generation) return -1;
+        long pos = HEADER_BYTES;
+        byte[] body;
+        while ((body = readRecord(ch, pos)) != null) pos += 8 + body.length;
+        return pos;
+    }
+
+    private static byte[] readRecord(FileChannel ch, long pos) throws IOException {
+        if (ch.size() - pos < 8) return null;
+        ByteBuffer head = ByteBuffer.allocate(8);
+        while (head.hasRemaining() && ch.read(head, pos + head.position()) >= 0) { }
+        head.flip();
+        int length = head.getInt();
+        int checksum = head.getInt();
+        if (length < 0 || ch.size() - pos - 8 < length) return null;
+        ByteBuffer body = ByteBuffer.allocate(length);
+        while (body.hasRemaining() && ch.read(body, pos + 8 + body.position()) >= 0) { }
+        CRC32C crc = new CRC32C();
+        crc.update(body.array());
+        return (int) crc.getValue() == checksum ? body.array() : null;
+    }
+
+    // применяет запись; возвращает номер транзакции из неё (0, если его нет)
+    private static long apply(DataInputStream in, Database db, TransactionManager tx,
+                              Map<Long, Transaction> open) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case CREATE_TABLE -> {
+                String name = in.readUTF();
+                StorageMode mode = StorageMode.valueOf(in.readUTF());
+                long memoryLimit = in.readLong();
+                int n = in.readInt();
+                List<Column> columns = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) columns.add(readColumn(in));
+                db.createTable(name, columns, mode, memoryLimit);
+            }
+            case DROP_TABLE -> db.dropTable(in.readUTF());
+            case ADD_COLUMN -> db.getTable(in.readUTF()).addColumn(readColumn(in));
+            case CREATE_INDEX -> {
+                Table t = db.getTable(in.readUTF());
+                String name = in.readUTF();
+                String column = in.readUTF();
+                if (in.readBoolean()) t.createBitmapIndex(name, column);
+                else t.createIndex(name, column);
+            }
+            case INSERT -> {
+                Table t = db.getTable(in.readUTF());
+                long txn = in.readLong();
+                int n = in.readInt();
+                Value<?>[] values = new Value<?>[n];
+                for (int i = 0; i < n; i++) values[i] = Value.of(readValue(in), t.getColumns().get(i).getColumnType());
+                inTransaction(tx, open, txn, () -> t.appendRow(values));
+                return txn;
+            }
+            case UPDATE -> {
+                Table t = db.getTable(in.readUTF());
+                long txn = in.readLong();
+                IntList rowIds = readIds(in);
+                int n = in.readInt();
+                Map<String, Object> values = new LinkedHashMap<>();
+                for (int i = 0; i < n; i++) {
+                    String column = t.getColumns().get(in.readInt()).getColumnName();
+                    values.put(column, readValue(in));
+                }
+                inTransaction(tx, open, txn, () -> t.update(rowIds, values));
+                return txn;
+            }
+            case DELETE -> {
+                Table t = db.getTable(in.readUTF());
+                long txn = in.readLong();
+                IntList rowIds = readIds(in);
+                inTransaction(tx, open, txn, () -> t.delete(rowIds));
+                return txn;
+            }
+            case COMMIT, ROLLBACK -> {
+                long txn = in.readLong();
+                Transaction t = open.remove(txn);
+                if (t != null) {
+                    tx.bind(t);
+                    if (type == COMMIT) tx.commit();
+                    else tx.rollback();
+                }
+                return txn;
+            }
+            case VACUUM -> db.getTable(in.readUTF()).applyVacuum(readIds(in));
+            default -> throw new IOException("Unknown write-ahead log record type " + type);
+        }
+        return 0;
+    }
+
+    // изменение явной транзакции повторяется внутри неё, автоматической — коммитится сразу
+    private static void inTransaction(TransactionManager tx, Map<Long, Transaction> open, long txn, Runnable op) {
+        if (txn == 0) {
+            op.run();
+            return;
+        }
+        tx.bind(open.computeIfAbsent(txn, id -> tx.start()));
+        try {
+            op.run();
+        } finally {
+            tx.unbind();
+        }
+    }
+
+    private static void writeColumn(DataOutputStream out, Column c) throws IOException {
+        out.writeUTF(c.getColumnName());
+        out.writeUTF(c.getColumnType().name());
+        out.writeBoolean(c.isPrimaryKey());
+    }
+
+    private static Column readColumn(DataInputStream in) throws IOException {
+        Column c = new Column(in.readUTF(), DataType.valueOf(in.readUTF()));
+        c.setPrimaryKey(in.readBoolean());
+        return c;
+    }
+
+    private static void writeIds(DataOutputStream out, IntList ids) throws IOException {
+        out.writeInt(ids.size());
+        for (int i = 0; i < ids.size(); i++) out.writeInt(ids.get(i));
+    }
+
+    private static IntList readIds(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        IntList ids = new IntList(Math.max(n, 1));
+        for (int i = 0; i < n; i++) ids.add(in.readInt());
+        return ids;
+    }
+
+    private static void writeValue(DataOutputStream out, Object v) throws IOException {
+        switch (v) {
+            case null -> out.writeByte(0);
+            case Integer i -> {
+                out.writeByte(1);
+                out.writeInt(i);
+            }
+            case Double d -> {
+                out.writeByte(2);
+                out.writeDouble(d);
+            }
+            case Boolean b -> {
+                out.writeByte(3);
+                out.writeBoolean(b);
+            }
+            case String s -> {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                out.writeByte(4);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            default -> throw new IllegalArgumentException("Unsupported value in log: " + v.getClass().getSimpleName());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        return switch (tag) {
+            case 0 -> null;
+            case 1 -> in.readInt();
+            case 2 -> in.readDouble();
+            case 3 -> in.readBoolean();
+            case 4 -> {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                yield new String(bytes, StandardCharsets.UTF_8);
+            }
+            default -> throw new IOException("Unknown value tag " + tag + " in write-ahead log");
+        };
+    }
+}
@@ -0,0 +1,158 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Статистика по чанкам из CHUNK_ROWS подряд идущих строк: min/max каждой колонки и блум-фильтр
+// для проверки равенства. Зоны учитывают все версии строк, а пересчитываются только при сборке
+// старых версий, поэтому зона может быть шире видимых данных, но никогда не уже.
+public class ZoneMap {
+    public static final int CHUNK_ROWS = 4096;
+    private static final int BLOOM_BITS = 4096;
+
+    private final Schema schema;
+    private final List<Zone[]> chunks = new ArrayList<>();
+
+    ZoneMap(Schema schema) {
+        this.schema = schema;
+    }
+
+    public int chunkCount() {
+        return chunks.size();
+    }
+
+    public Object keyOf(int column, Object literal) {
+        return SecondaryIndex.keyOf(schema.get(column).getColumnType(), literal);
+    }
+
+    // в чанке есть хотя бы одно ненулевое значение колонки
+    public boolean hasValues(int chunk, int column) {
+        return zone(chunk, column).min != null;
+    }
+
+    // в чанке есть хотя бы одна строка с NULL в колонке
+    public boolean hasNulls(int chunk, int column) {
+        return zone(chunk, column).hasNulls;
+    }
+
+    public boolean mayContain(int chunk, int column, Object key) {
+        Zone z = zone(chunk, column);
+        if (z.min == null || compare(key, z.min) < 0 || compare(key, z.max) > 0) return false;
+        return z.bloomHas(key);
+    }
+
+    // есть ли значение, отличное от key; NULL отличается от любого ключа
+    public boolean mayDiffer(int chunk, int column, Object key) {
+        Zone z = zone(chunk, column);
+        return z.hasNulls || z.min != null && (compare(z.min, key) != 0 || compare(z.max, key) != 0);
+    }
+
+    // пересекается ли [min, max] чанка с диапазоном (null — граница не задана)
+    public boolean mayOverlap(int chunk, int column, Object lo, boolean loInclusive, Object hi, boolean hiInclusive) {
+        Zone z = zone(chunk, column);
+        if (z.min == null) return false;
+        if (lo != null) {
+            int c = compare(z.max, lo);
+            if (c < 0 || (c == 0 && !loInclusive)) return false;
+        }
+        if (hi != null) {
+            int c = compare(z.min, hi);
+            if (c > 0 || (c == 0 && !hiInclusive)) return false;
+        }
+        return true;
+    }
+
+    void add(RowAccessor row, int rowId) {
+        for (int col = 0; col < schema.size(); col++) widen(row, rowId, col);
+    }
+
+    void widen(RowAccessor row, int rowId, int column) {
+        int chunk = rowId / CHUNK_ROWS;
+        while (chunks.size() <= chunk) chunks.add(newChunk());
+        if (row.isNull(column)) {
+            chunks.get(chunk)[column].hasNulls = true;
+            return;
+        }
+        chunks.get(chunk)[column].add(SecondaryIndex.read(row, column, schema.get(column).getColumnType()));
+    }
+
+    void addColumn() {
+        int col = schema.size() - 1;
+        for (int i = 0; i < chunks.size(); i++) {
+            Zone[] old = chunks.get(i);
+            Zone[] zs = Arrays.copyOf(old, col + 1);
+            zs[col] = newZone(col);
+            zs[col].hasNulls = true; // у уже записанных строк новая колонка пуста
+            chunks.set(i, zs);
+        }
+    }
+
+    void clear() {
+        chunks.clear();
+    }
+
+    private Zone zone(int chunk, int column) {
+        return chunks.get(chunk)[column];
+    }
+
+    private Zone[] newChunk() {
+        Zone[] zs = new Zone[schema.size()];
+        for (int col = 0; col < zs.length; col++) zs[col] = newZone(col);
+        return zs;
+    }
+
+    private Zone newZone(int column) {
+        // для BOOLEAN min/max и так исчерпывают множество значений
+        return new Zone(schema.get(column).getColumnType() != DataType.BOOLEAN);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compare(Object a, Object b) {
+        return ((Comparable) a).compareTo(b);
+    }
+
+    private static final class Zone {
+        Object min;
+        Object max;
+        boolean hasNulls;
+        long[] bloom; // null — фильтра нет или он переполнился
+        int bloomSet;
+
+        Zone(boolean withBloom) {
+            if (withBloom) bloom = new long[BLOOM_BITS / 64];
+        }
+
+        void add(Object key) {
+            if (min == null || compare(key, min) < 0) min = key;
+            if (max == null || compare(key, max) > 0) max = key;
+            if (bloom == null) return;
+            int h1 = mix(key.hashCode()), h2 = mix(h1) | 1;
+            for (int i = 0; i < 3; i++) {
+                int bit = (h1 + i * h2) & (BLOOM_BITS - 1);
+                long before = bloom[bit >>> 6];
+                bloom[bit >>> 6] |= 1L << bit;
+                if (before != bloom[bit >>> 6]) bloomSet++;
+            }
+            // заполненный больше чем наполовину фильтр почти ничего не отсекает
+            if (bloomSet > BLOOM_BITS / 2) bloom = null;
+        }
+
+        // фильтр может быть сброшен пишущим потоком прямо во время проверки
+        boolean bloomHas(Object key) {
+            long[] bloom = this.bloom;
+            if (bloom == null) return true;
+            int h1 = mix(key.hashCode()), h2 = mix(h1) | 1;
+            for (int i = 0; i < 3; i++) {
+                int bit = (h1 + i * h2) & (BLOOM_BITS - 1);
+                if ((bloom[bit >>> 6] & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        private static int mix(int h) {
+            h *= 0x9E3779B1;
+            return h ^ (h >>> 15);
+        }
+    }
+}